@@ -57,6 +57,10 @@ public final class Constants {
    * The constant for default TCP port.
    */
   public static final int DEFAULT_TCP_PORT = 12201;
+  /**
+   * The constant for default host of relay TCP input used by unix transport on JVM older than 16.
+   */
+  public static final String DEFAULT_FALLBACK_HOST = "localhost";
 
   /**
    * The constant for default loggin facility.
@@ -95,6 +99,18 @@ public final class Constants {
    * The constant for logger facility which wrote the message.
    */
   public static final String FACILITY_ATTRIBUTE = "facility";
+  /**
+   * The constant for marker field of payload truncated to fit transport budget.
+   */
+  public static final String TRUNCATED_ATTRIBUTE = "truncated";
+  /**
+   * The constant for message template, parameters are sent as <code>arg0..n</code> fields.
+   */
+  public static final String TEMPLATE_ATTRIBUTE = "template";
+  /**
+   * The constant for prefix of message parameter field names.
+   */
+  public static final String ARGUMENT_ATTRIBUTE_PREFIX = "arg";
 
   /**
    * The constant for max buffered size of the payload.
@@ -120,4 +136,47 @@ public final class Constants {
    */
   public static final long DEFAULT_RECOVERY_PERIOD_SEC = 20;
 
+  /**
+   * The constant for default size of the sending queue. Zero means events are sent from caller thread.
+   */
+  public static final int DEFAULT_QUEUE_SIZE = 0;
+  /**
+   * The constant for default part of the queue reserved for ERROR and more severe events.
+   */
+  public static final int DEFAULT_RESERVED_QUEUE_DIVISOR = 4;
+  /**
+   * The constant for default maximum size of serialized message. Zero means limit of the transport:
+   * 128 chunks for UDP and no limit for TCP.
+   */
+  public static final int DEFAULT_MAX_MESSAGE_SIZE = 0;
+  /**
+   * The constant for name prefix of threads sending queued events.
+   */
+  public static final String SENDER_THREAD_PREFIX = "gelf4j-sender";
+  /**
+   * The constant for default size of the queue of every fan-out sink when queue size is not set.
+   */
+  public static final int DEFAULT_FAN_OUT_QUEUE_SIZE = 1024;
+  /**
+   * The constant for name prefix of threads opening connection in background.
+   */
+  public static final String CONNECT_THREAD_PREFIX = "gelf4j-connect";
+  /**
+   * The constant for number of events buffered while connection is opened in background.
+   */
+  public static final int OPEN_BUFFER_SIZE = 1024;
+  /**
+   * The constant for default time in milliseconds to deliver queued and buffered events on
+   * shutdown.
+   */
+  public static final long DEFAULT_SHUTDOWN_TIMEOUT = 5000;
+  /**
+   * The constant for default maximum size in bytes of one buffer kept by pooled payload.
+   */
+  public static final int DEFAULT_PAYLOAD_RETAINED_SIZE = 65536;
+  /**
+   * The constant for maximum number of message templates cached encoded.
+   */
+  public static final int TEMPLATE_CACHE_SIZE = 1024;
+
 }
@@ -0,0 +1,176 @@
+package org.graylog2.gelf4j.appenders;
+
+import static org.graylog2.gelf4j.utils.Validations.isValidFieldName;
+
+import java.util.Arrays;
+
+/**
+ * Include, exclude and rename rules of MDC (context data) keys.
+ * <p/>
+ * Rules are given as comma separated lists of names, name ending with <code>*</code> is a prefix
+ * pattern. Renames are comma separated <code>from=to</code> pairs of exact names. Key is logged when
+ * include list is empty or key matches any of includes, and key does not match any of excludes.
+ * Renaming does not include key on its own.
+ * <p/>
+ * Rules are compiled into character trie at configuration time, so each key is checked by a single
+ * walk over its characters without allocations, before any encoding happens.
+ *
+ * @author Andrey Minov
+ */
+public final class FieldFilter {
+  /**
+   * Filter passing all keys as is.
+   */
+  public static final FieldFilter ALLOW_ALL = new FieldFilter(new Node(), false, true);
+
+  private static final int INCLUDE_EXACT = 1;
+  private static final int INCLUDE_PREFIX = 2;
+  private static final int EXCLUDE_EXACT = 4;
+  private static final int EXCLUDE_PREFIX = 8;
+
+  private final Node root;
+  private final boolean hasIncludes;
+  private final boolean allowAll;
+
+  private FieldFilter(Node root, boolean hasIncludes, boolean allowAll) {
+    this.root = root;
+    this.hasIncludes = hasIncludes;
+    this.allowAll = allowAll;
+  }
+
+  /**
+   * Compile filter from configuration values.
+   *
+   * @param includes the comma separated names or prefixes to include, might be null.
+   * @param excludes the comma separated names or prefixes to exclude, might be null.
+   * @param renames  the comma separated <code>from=to</code> pairs, might be null.
+   * @return the compiled filter.
+   * @throws IllegalArgumentException in case rules are malformed or rename target is not valid
+   *                                  GELF field name.
+   */
+  public static FieldFilter compile(String includes, String excludes, String renames) {
+    String[] includeRules = split(includes);
+    String[] excludeRules = split(excludes);
+    String[] renameRules = split(renames);
+    if (includeRules.length == 0 && excludeRules.length == 0 && renameRules.length == 0) {
+      return ALLOW_ALL;
+    }
+    Node root = new Node();
+    for (String rule : includeRules) {
+      addPattern(root, rule, INCLUDE_EXACT, INCLUDE_PREFIX);
+    }
+    for (String rule : excludeRules) {
+      addPattern(root, rule, EXCLUDE_EXACT, EXCLUDE_PREFIX);
+    }
+    for (String rule : renameRules) {
+      int separator = rule.indexOf('=');
+      if (separator <= 0 || separator == rule.length() - 1) {
+        throw new IllegalArgumentException("Rename must be in form from=to: " + rule);
+      }
+      String from = rule.substring(0, separator).trim();
+      String to = rule.substring(separator + 1).trim();
+      if (!isValidFieldName(to)) {
+        throw new IllegalArgumentException("Invalid field name: " + to);
+      }
+      root.insert(from).rename = to;
+    }
+    return new FieldFilter(root, includeRules.length > 0, false);
+  }
+
+  private static String[] split(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return new String[0];
+    }
+    return Arrays.stream(value.split(",")).map(String::trim).filter(v -> !v.isEmpty())
+                 .toArray(String[]::new);
+  }
+
+  private static void addPattern(Node root, String rule, int exact, int prefix) {
+    int star = rule.indexOf('*');
+    if (star < 0) {
+      root.insert(rule).flags |= exact;
+    } else if (star == rule.length() - 1) {
+      root.insert(rule.substring(0, star)).flags |= prefix;
+    } else {
+      throw new IllegalArgumentException("Wildcard is allowed only at the end: " + rule);
+    }
+  }
+
+  /**
+   * Apply rules to the key.
+   *
+   * @param name the key of MDC entry.
+   * @return the name of field to log entry with or null in case entry must be skipped.
+   */
+  public String apply(String name) {
+    if (allowAll) {
+      return name;
+    }
+    boolean included = !hasIncludes;
+    Node node = root;
+    for (int i = 0; ; i++) {
+      if ((node.flags & EXCLUDE_PREFIX) != 0) {
+        return null;
+      }
+      if ((node.flags & INCLUDE_PREFIX) != 0) {
+        included = true;
+      }
+      if (i == name.length()) {
+        break;
+      }
+      node = node.child(name.charAt(i));
+      if (node == null) {
+        return included ? name : null;
+      }
+    }
+    if ((node.flags & EXCLUDE_EXACT) != 0) {
+      return null;
+    }
+    if (!included && (node.flags & INCLUDE_EXACT) == 0) {
+      return null;
+    }
+    return node.rename != null ? node.rename : name;
+  }
+
+  /**
+   * Checks that filter has no rules and passes all keys as is.
+   *
+   * @return true in case filter has no rules.
+   */
+  public boolean isAllowAll() {
+    return allowAll;
+  }
+
+  private static final class Node {
+    private char[] labels = new char[0];
+    private Node[] children = new Node[0];
+    private int flags;
+    private String rename;
+
+    private Node child(char c) {
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] == c) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node insert(String key) {
+      Node node = this;
+      for (int i = 0; i < key.length(); i++) {
+        char c = key.charAt(i);
+        Node next = node.child(c);
+        if (next == null) {
+          next = new Node();
+          node.labels = Arrays.copyOf(node.labels, node.labels.length + 1);
+          node.children = Arrays.copyOf(node.children, node.children.length + 1);
+          node.labels[node.labels.length - 1] = c;
+          node.children[node.children.length - 1] = next;
+        }
+        node = next;
+      }
+      return node;
+    }
+  }
+}
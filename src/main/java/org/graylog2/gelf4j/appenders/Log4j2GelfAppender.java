@@ -2,15 +2,32 @@ package org.graylog2.gelf4j.appenders;
 
 
 import static org.apache.logging.log4j.core.util.Constants.ENABLE_DIRECT_ENCODERS;
+import static org.graylog2.gelf4j.Constants.CONNECT_THREAD_PREFIX;
 import static org.graylog2.gelf4j.Constants.DEFAULT_COMPRESSION_RATE;
 import static org.graylog2.gelf4j.Constants.DEFAULT_FAILURES_TO_OPEN;
+import static org.graylog2.gelf4j.Constants.DEFAULT_FALLBACK_HOST;
+import static org.graylog2.gelf4j.Constants.DEFAULT_FAN_OUT_QUEUE_SIZE;
+import static org.graylog2.gelf4j.Constants.DEFAULT_MAX_MESSAGE_SIZE;
+import static org.graylog2.gelf4j.Constants.DEFAULT_PAYLOAD_RETAINED_SIZE;
+import static org.graylog2.gelf4j.Constants.DEFAULT_QUEUE_SIZE;
 import static org.graylog2.gelf4j.Constants.DEFAULT_RECOVERY_PERIOD_SEC;
+import static org.graylog2.gelf4j.Constants.DEFAULT_RESERVED_QUEUE_DIVISOR;
+import static org.graylog2.gelf4j.Constants.DEFAULT_SHUTDOWN_TIMEOUT;
 import static org.graylog2.gelf4j.Constants.MAX_UDP_DATAGRAM_SIZE;
+import static org.graylog2.gelf4j.Constants.OPEN_BUFFER_SIZE;
+import static org.graylog2.gelf4j.Constants.SENDER_THREAD_PREFIX;
 import static org.graylog2.gelf4j.utils.Validations.checkValid;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
 
 import com.jsoniter.output.EncodingMode;
 import com.jsoniter.output.JsonStream;
@@ -26,20 +43,36 @@ import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
-import org.apache.logging.log4j.core.config.plugins.validation.constraints.ValidHost;
 import org.apache.logging.log4j.core.config.plugins.validation.constraints.ValidPort;
 import org.apache.logging.log4j.core.util.KeyValuePair;
 import org.apache.logging.log4j.status.StatusLogger;
 import org.graylog2.gelf4j.Constants;
 import org.graylog2.gelf4j.appenders.validation.ValidTransport;
 import org.graylog2.gelf4j.cb.CircuitBreakerTransmitter;
+import org.graylog2.gelf4j.concurrent.BackgroundThreadFactory;
+import org.graylog2.gelf4j.concurrent.ThreadMode;
+import org.graylog2.gelf4j.format.PayloadFormat;
+import org.graylog2.gelf4j.format.PayloadFormatter;
 import org.graylog2.gelf4j.message.Payload;
 import org.graylog2.gelf4j.message.PayloadEncoder;
+import org.graylog2.gelf4j.message.PayloadPool;
 import org.graylog2.gelf4j.message.StringBuilderEncoder;
+import org.graylog2.gelf4j.queue.OverflowPolicy;
+import org.graylog2.gelf4j.queue.PriorityLaneTransmitter;
 import org.graylog2.gelf4j.transformers.Log4j2PayloadTransformer;
+import org.graylog2.gelf4j.transmitters.FanOutTransmitter;
+import org.graylog2.gelf4j.transmitters.FrameCompression;
+import org.graylog2.gelf4j.transmitters.Framing;
+import org.graylog2.gelf4j.transmitters.OpenMode;
+import org.graylog2.gelf4j.transmitters.OpenModeTransmitter;
 import org.graylog2.gelf4j.transmitters.PayloadTransmitter;
+import org.graylog2.gelf4j.transmitters.SocketTelemetry;
+import org.graylog2.gelf4j.transmitters.SslContextFactory;
 import org.graylog2.gelf4j.transmitters.TcpTransmitter;
+import org.graylog2.gelf4j.transmitters.TlsTransmitter;
+import org.graylog2.gelf4j.transmitters.TransmitterRegistry;
 import org.graylog2.gelf4j.transmitters.UdpTransmitter;
+import org.graylog2.gelf4j.transmitters.UnixSocketTransmitter;
 
 /**
  * Appender for Log4j version 2 which construct {@link org.graylog2.gelf4j.message.Payload}
@@ -73,7 +106,31 @@ public class Log4j2GelfAppender extends AbstractAppender {
   private boolean useCircuitBreaker;
   private int failuresToOpen;
   private long secondsToRecover;
-
+  private int queueSize;
+  private int reservedQueueSize;
+  private OverflowPolicy overflowPolicy;
+  private String keyStore;
+  private String keyStorePassword;
+  private String trustStore;
+  private String trustStorePassword;
+  private boolean verifyHostname;
+  private String socketPath;
+  private Framing framing;
+  private FrameCompression frameCompression;
+  private boolean adaptiveCompression;
+  private int maxMessageSize;
+  private ThreadMode threadMode;
+  private long shutdownTimeout;
+  private int payloadPoolSize;
+  private int payloadRetainedSize;
+  private PayloadFormatter format;
+  private String fanOut;
+  private int maxSendBufferSize;
+  private OpenMode openMode;
+  private String fallbackHost;
+  private int fallbackPort;
+
+  private PayloadPool payloadPool;
   private Log4j2PayloadTransformer payloadTransformer;
   private PayloadTransmitter payloadTransmitter;
   private LoggingConfiguration configuration;
@@ -82,7 +139,16 @@ public class Log4j2GelfAppender extends AbstractAppender {
                              String type, String hostname, int soTimeout, int port,
                              boolean blocking, int sendBufferSize, boolean useCompression,
                              int compressionLevel, int compressionLimit, boolean useCircuitBreaker,
-                             int failuresToOpen, long secondsToRecover,
+                             int failuresToOpen, long secondsToRecover, int queueSize,
+                             int reservedQueueSize, OverflowPolicy overflowPolicy,
+                             String keyStore, String keyStorePassword, String trustStore,
+                             String trustStorePassword, boolean verifyHostname,
+                             String socketPath, Framing framing,
+                             FrameCompression frameCompression, boolean adaptiveCompression,
+                             int maxMessageSize, ThreadMode threadMode, long shutdownTimeout,
+                             int payloadPoolSize, int payloadRetainedSize,
+                             PayloadFormatter format, String fanOut, int maxSendBufferSize,
+                             OpenMode openMode, String fallbackHost, int fallbackPort,
                              LoggingConfiguration configuration) {
     super(name, filter, layout, !configuration.isLogExceptions());
     this.type = type;
@@ -97,6 +163,29 @@ public class Log4j2GelfAppender extends AbstractAppender {
     this.useCircuitBreaker = useCircuitBreaker;
     this.failuresToOpen = failuresToOpen;
     this.secondsToRecover = secondsToRecover;
+    this.queueSize = queueSize;
+    this.reservedQueueSize = reservedQueueSize;
+    this.overflowPolicy = overflowPolicy;
+    this.keyStore = keyStore;
+    this.keyStorePassword = keyStorePassword;
+    this.trustStore = trustStore;
+    this.trustStorePassword = trustStorePassword;
+    this.verifyHostname = verifyHostname;
+    this.socketPath = socketPath;
+    this.framing = framing;
+    this.frameCompression = frameCompression;
+    this.adaptiveCompression = adaptiveCompression;
+    this.maxMessageSize = maxMessageSize;
+    this.threadMode = threadMode;
+    this.shutdownTimeout = shutdownTimeout;
+    this.payloadPoolSize = payloadPoolSize;
+    this.payloadRetainedSize = payloadRetainedSize;
+    this.format = format;
+    this.fanOut = fanOut;
+    this.maxSendBufferSize = maxSendBufferSize;
+    this.openMode = openMode;
+    this.fallbackHost = fallbackHost;
+    this.fallbackPort = fallbackPort;
     this.configuration = configuration;
   }
 
@@ -108,8 +197,13 @@ public class Log4j2GelfAppender extends AbstractAppender {
   @Override
   public void start() {
     super.start();
-    payloadTransformer = new Log4j2PayloadTransformer(configuration);
-    payloadTransmitter = createTransmitter();
+    // Payload is kept per thread unless pool is configured.
+    payloadPool =
+        payloadPoolSize > 0 ? new PayloadPool(payloadPoolSize, payloadRetainedSize) : null;
+    payloadTransformer = new Log4j2PayloadTransformer(configuration, payloadPool);
+    // Transmitter is shared, so reconfigured appender adopts live connection and queued events.
+    payloadTransmitter = TransmitterRegistry.getInstance()
+        .acquire(transmitterKey(), transmitterSettings(), this::createTransmitter);
     if (payloadTransmitter != null) {
       try {
         payloadTransmitter.open();
@@ -119,16 +213,30 @@ public class Log4j2GelfAppender extends AbstractAppender {
     }
   }
 
+  /**
+   * Stop appender delivering queued and buffered events. Timeout given by logger context is used,
+   * configured shutdown timeout is used when it is not set.
+   */
   @Override
-  public void stop() {
-    super.stop();
+  public boolean stop(long timeout, TimeUnit timeUnit) {
+    setStopping();
+    boolean stopped = super.stop(timeout, timeUnit, false);
     if (payloadTransmitter != null) {
+      long timeoutMs = timeout > 0 ? timeUnit.toMillis(timeout) : shutdownTimeout;
       try {
-        payloadTransmitter.close();
+        long undelivered = payloadTransmitter.shutdown(timeoutMs, TimeUnit.MILLISECONDS);
+        if (undelivered > 0) {
+          LOGGER.warn("{} events were not delivered to Graylog server within {} ms.", undelivered,
+              timeoutMs);
+          stopped = false;
+        }
       } catch (Exception e) {
         LOGGER.error("Cannot close connection to Graylog server.", e);
+        stopped = false;
       }
     }
+    setStopped();
+    return stopped;
   }
 
   @SuppressWarnings("unchecked")
@@ -141,34 +249,194 @@ public class Log4j2GelfAppender extends AbstractAppender {
       }
       Payload payload = payloadTransformer
           .makeMessage((Layout<? extends LogEvent>) getLayout(), event, ENABLE_DIRECT_ENCODERS);
-      if (!checkValid(payload)) {
-        LOGGER.error("Missing required parameters: {}", event);
-        return;
+      try {
+        if (!checkValid(payload)) {
+          LOGGER.error("Missing required parameters: {}", event);
+          return;
+        }
+        payloadTransmitter.transmit(payload);
+        payloadTransmitter.flush();
+      } finally {
+        payloadTransformer.release(payload);
       }
-      payloadTransmitter.transmit(payload);
     } catch (Exception e) {
       LOGGER.error(() -> "Cannot write to Gelf transmitter: " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Gets pool of payloads with pooled count and retained bytes gauges.
+   *
+   * @return the payload pool or null in case payload is kept per thread.
+   */
+  public PayloadPool getPayloadPool() {
+    return payloadPool;
+  }
+
+  /**
+   * Gets telemetry of connections used by the appender, one per fan-out sink.
+   *
+   * @return the socket telemetry, empty in case transport does not collect it.
+   */
+  public List<SocketTelemetry> getSocketTelemetry() {
+    PayloadTransmitter transmitter = payloadTransmitter;
+    return transmitter != null ? transmitter.getSocketTelemetry()
+                               : Collections.<SocketTelemetry>emptyList();
+  }
+
+  private String transmitterKey() {
+    return type + "://" + ("unix".equals(type) ? socketPath : hostname + ":" + port);
+  }
+
+  // All options transmitter is created with, transmitter is reused only when they are not changed.
+  private String transmitterSettings() {
+    return Arrays.asList(soTimeout, blocking, sendBufferSize, useCompression, compressionLevel,
+        compressionLimit, useCircuitBreaker, failuresToOpen, secondsToRecover, queueSize,
+        reservedQueueSize, overflowPolicy, keyStore, trustStore,
+        Objects.hash(keyStorePassword, trustStorePassword), verifyHostname, hostname, port,
+        framing, frameCompression, adaptiveCompression, maxMessageSize, threadMode,
+        formatName(format), fanOut, maxSendBufferSize, openMode, socketPath, fallbackHost,
+        fallbackPort).toString();
+  }
+
+  // Custom formatters are compared by class, so reconfiguration does not reconnect.
+  private static String formatName(PayloadFormatter format) {
+    return format instanceof PayloadFormat ? format.toString() : format.getClass().getName();
+  }
+
   private PayloadTransmitter createTransmitter() {
     PayloadTransmitter delegate = null;
     if ("tcp".equals(type)) {
-      delegate = new TcpTransmitter(hostname, port, soTimeout, blocking, sendBufferSize);
+      if (frameCompression == FrameCompression.BATCH && queueSize <= 0) {
+        LOGGER.warn("Batch frame compression needs queueSize, without queue every event is "
+                    + "compressed into own frame.");
+      }
+      delegate = new TcpTransmitter(hostname, port, soTimeout, blocking, sendBufferSize, framing,
+          frameCompression, compressionLevel, maxMessageSize, format, maxSendBufferSize);
+    }
+    if ("tls".equals(type)) {
+      try {
+        SSLContext sslContext =
+            SslContextFactory.create(keyStore, keyStorePassword, trustStore, trustStorePassword);
+        delegate = new TlsTransmitter(hostname, port, soTimeout, sendBufferSize, sslContext,
+            verifyHostname);
+      } catch (Exception e) {
+        LOGGER.error("Cannot create TLS context for Graylog server.", e);
+      }
+    }
+    if ("unix".equals(type)) {
+      if (socketPath == null || socketPath.isEmpty()) {
+        LOGGER.error("Socket path must be provided for unix transport.");
+        return null;
+      }
+      if (!UnixSocketTransmitter.isUnixDomainSupported()) {
+        LOGGER.warn("Unix domain sockets need JDK 16+, events for {} are sent by TCP to {}:{}.",
+            socketPath, fallbackHost, fallbackPort);
+      }
+      delegate = new UnixSocketTransmitter(socketPath, fallbackHost, fallbackPort, soTimeout,
+          framing);
     }
     if ("udp".equals(type)) {
       delegate =
           new UdpTransmitter(hostname, port, sendBufferSize, useCompression, compressionLevel,
-              compressionLimit);
+              compressionLimit, adaptiveCompression, maxMessageSize, maxSendBufferSize);
     }
     if (delegate == null) {
       return null;
     }
+    delegate = withOpenMode(delegate);
+    if (fanOut != null && !fanOut.trim().isEmpty()) {
+      return createFanOut(delegate);
+    }
+    PayloadTransmitter transmitter = delegate;
     if (useCircuitBreaker) {
-      return new CircuitBreakerTransmitter(failuresToOpen, secondsToRecover, TimeUnit.SECONDS,
-          delegate);
+      transmitter = new CircuitBreakerTransmitter(failuresToOpen, secondsToRecover,
+          TimeUnit.SECONDS, transmitter);
+    }
+    if (queueSize > 0) {
+      int reserved =
+          reservedQueueSize >= 0 ? reservedQueueSize : queueSize / DEFAULT_RESERVED_QUEUE_DIVISOR;
+      transmitter = new PriorityLaneTransmitter(queueSize, reserved, overflowPolicy, transmitter,
+          new BackgroundThreadFactory(SENDER_THREAD_PREFIX, threadMode));
+    }
+    return transmitter;
+  }
+
+  // Every sink gets its own queue and sender thread, so sinks send in parallel and slow or broken
+  // sink does not delay others.
+  private PayloadTransmitter createFanOut(PayloadTransmitter primary) {
+    List<PayloadTransmitter> sinks = new ArrayList<>();
+    sinks.add(primary);
+    for (String sink : fanOut.split(",")) {
+      sink = sink.trim();
+      if (sink.isEmpty()) {
+        continue;
+      }
+      int scheme = sink.indexOf("://");
+      int colon = sink.lastIndexOf(':');
+      if (scheme < 0 || colon <= scheme + 3) {
+        LOGGER.error("Fan-out sink must be given as format://host:port: {}", sink);
+        continue;
+      }
+      try {
+        PayloadFormatter sinkFormat = PayloadFormat.parse(sink.substring(0, scheme));
+        int sinkPort = Integer.parseInt(sink.substring(colon + 1));
+        sinks.add(withOpenMode(new TcpTransmitter(sink.substring(scheme + 3, colon), sinkPort,
+            soTimeout, blocking, sendBufferSize, framingOf(sinkFormat), FrameCompression.NONE,
+            compressionLevel, maxMessageSize, sinkFormat, maxSendBufferSize)));
+      } catch (IllegalArgumentException e) {
+        LOGGER.error("Cannot create fan-out sink {}: {}", sink, e.getMessage());
+      }
+    }
+    int capacity = queueSize > 0 ? queueSize : DEFAULT_FAN_OUT_QUEUE_SIZE;
+    int reserved =
+        reservedQueueSize >= 0 ? reservedQueueSize : capacity / DEFAULT_RESERVED_QUEUE_DIVISOR;
+    List<PayloadTransmitter> queued = new ArrayList<>(sinks.size());
+    for (PayloadTransmitter sink : sinks) {
+      PayloadTransmitter transmitter = sink;
+      if (useCircuitBreaker) {
+        transmitter = new CircuitBreakerTransmitter(failuresToOpen, secondsToRecover,
+            TimeUnit.SECONDS, transmitter);
+      }
+      queued.add(new PriorityLaneTransmitter(capacity, reserved, overflowPolicy, transmitter,
+          new BackgroundThreadFactory(SENDER_THREAD_PREFIX, threadMode)));
+    }
+    return new FanOutTransmitter(queued);
+  }
+
+  // Startup does not wait for connection unless eager blocking mode is set.
+  private PayloadTransmitter withOpenMode(PayloadTransmitter delegate) {
+    if (openMode == OpenMode.EAGER_BLOCKING) {
+      return delegate;
+    }
+    return new OpenModeTransmitter(openMode, OPEN_BUFFER_SIZE, delegate,
+        new BackgroundThreadFactory(CONNECT_THREAD_PREFIX, threadMode));
+  }
+
+  // Log shippers read ECS documents line by line, binary format needs length of message.
+  private static Framing framingOf(PayloadFormatter format) {
+    if (format == PayloadFormat.ECS) {
+      return Framing.NEWLINE_DELIMITED;
+    }
+    if (format == PayloadFormat.BINARY) {
+      return Framing.VARINT;
+    }
+    return Framing.NULL_DELIMITED;
+  }
+
+  // Hostname is not used by unix transport, so it is validated here instead of by annotations.
+  private static boolean isValidHost(String hostname) {
+    if (hostname == null || hostname.isEmpty()) {
+      LOGGER.error("Hostname must be provided");
+      return false;
+    }
+    try {
+      InetAddress.getByName(hostname);
+      return true;
+    } catch (UnknownHostException e) {
+      LOGGER.error("{} is not a valid host name or address: {}", hostname, e.getMessage());
+      return false;
     }
-    return delegate;
   }
 
   public static class Builder implements org.apache.logging.log4j.core.util.Builder<Log4j2GelfAppender> {
@@ -182,9 +450,8 @@ public class Log4j2GelfAppender extends AbstractAppender {
     @ValidTransport
     private String type;
 
+    // Required for all transports except unix, see build().
     @PluginBuilderAttribute
-    @ValidHost
-    @Required(message = "Hostname must be provided")
     private String hostname;
 
     @PluginBuilderAttribute
@@ -221,6 +488,27 @@ public class Log4j2GelfAppender extends AbstractAppender {
     @PluginBuilderAttribute
     private boolean logMdcValues = true;
 
+    @PluginBuilderAttribute
+    private String mdcIncludes;
+
+    @PluginBuilderAttribute
+    private String mdcExcludes;
+
+    @PluginBuilderAttribute
+    private String mdcRenames;
+
+    @PluginBuilderAttribute
+    private boolean preciseTimestamp;
+
+    @PluginBuilderAttribute
+    private boolean logTemplate;
+
+    @PluginBuilderAttribute
+    private boolean logMapValues;
+
+    @PluginBuilderAttribute
+    private boolean inferMapTypes;
+
     @PluginBuilderAttribute
     private boolean blocking;
 
@@ -245,6 +533,75 @@ public class Log4j2GelfAppender extends AbstractAppender {
     @PluginBuilderAttribute
     private long secondsToRecover = DEFAULT_RECOVERY_PERIOD_SEC;
 
+    @PluginBuilderAttribute
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    @PluginBuilderAttribute
+    private int reservedQueueSize = -1;
+
+    @PluginBuilderAttribute
+    private String overflowPolicy;
+
+    @PluginBuilderAttribute
+    private String keyStore;
+
+    @PluginBuilderAttribute(sensitive = true)
+    private String keyStorePassword;
+
+    @PluginBuilderAttribute
+    private String trustStore;
+
+    @PluginBuilderAttribute(sensitive = true)
+    private String trustStorePassword;
+
+    @PluginBuilderAttribute
+    private boolean verifyHostname = true;
+
+    @PluginBuilderAttribute
+    private String socketPath;
+
+    @PluginBuilderAttribute
+    private String framing;
+
+    @PluginBuilderAttribute
+    private String frameCompression;
+
+    @PluginBuilderAttribute
+    private boolean adaptiveCompression;
+
+    @PluginBuilderAttribute
+    private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+    @PluginBuilderAttribute
+    private String threadMode;
+
+    @PluginBuilderAttribute
+    private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+    @PluginBuilderAttribute
+    private int payloadPoolSize;
+
+    @PluginBuilderAttribute
+    private int payloadRetainedSize = DEFAULT_PAYLOAD_RETAINED_SIZE;
+
+    @PluginBuilderAttribute
+    private String format;
+
+    @PluginBuilderAttribute
+    private String fanOut;
+
+    @PluginBuilderAttribute
+    private int maxSendBufferSize;
+
+    @PluginBuilderAttribute
+    private String openMode;
+
+    @PluginBuilderAttribute
+    private String fallbackHost = DEFAULT_FALLBACK_HOST;
+
+    @PluginBuilderAttribute
+    private int fallbackPort = Constants.DEFAULT_TCP_PORT;
+
     @PluginElement("AdditionalField")
     private KeyValuePair[] additionalFields;
 
@@ -335,6 +692,41 @@ public class Log4j2GelfAppender extends AbstractAppender {
       return this;
     }
 
+    public Builder setMdcIncludes(String mdcIncludes) {
+      this.mdcIncludes = mdcIncludes;
+      return this;
+    }
+
+    public Builder setMdcExcludes(String mdcExcludes) {
+      this.mdcExcludes = mdcExcludes;
+      return this;
+    }
+
+    public Builder setMdcRenames(String mdcRenames) {
+      this.mdcRenames = mdcRenames;
+      return this;
+    }
+
+    public Builder setPreciseTimestamp(boolean preciseTimestamp) {
+      this.preciseTimestamp = preciseTimestamp;
+      return this;
+    }
+
+    public Builder setLogTemplate(boolean logTemplate) {
+      this.logTemplate = logTemplate;
+      return this;
+    }
+
+    public Builder setLogMapValues(boolean logMapValues) {
+      this.logMapValues = logMapValues;
+      return this;
+    }
+
+    public Builder setInferMapTypes(boolean inferMapTypes) {
+      this.inferMapTypes = inferMapTypes;
+      return this;
+    }
+
     public Builder setSendBufferSize(int sendBufferSize) {
       this.sendBufferSize = sendBufferSize;
       return this;
@@ -375,18 +767,147 @@ public class Log4j2GelfAppender extends AbstractAppender {
       return this;
     }
 
+    public Builder setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+      return this;
+    }
+
+    public Builder setReservedQueueSize(int reservedQueueSize) {
+      this.reservedQueueSize = reservedQueueSize;
+      return this;
+    }
+
+    public Builder setOverflowPolicy(String overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    public Builder setKeyStore(String keyStore) {
+      this.keyStore = keyStore;
+      return this;
+    }
+
+    public Builder setKeyStorePassword(String keyStorePassword) {
+      this.keyStorePassword = keyStorePassword;
+      return this;
+    }
+
+    public Builder setTrustStore(String trustStore) {
+      this.trustStore = trustStore;
+      return this;
+    }
+
+    public Builder setTrustStorePassword(String trustStorePassword) {
+      this.trustStorePassword = trustStorePassword;
+      return this;
+    }
+
+    public Builder setVerifyHostname(boolean verifyHostname) {
+      this.verifyHostname = verifyHostname;
+      return this;
+    }
+
+    public Builder setSocketPath(String socketPath) {
+      this.socketPath = socketPath;
+      return this;
+    }
+
+    public Builder setFraming(String framing) {
+      this.framing = framing;
+      return this;
+    }
+
+    public Builder setFrameCompression(String frameCompression) {
+      this.frameCompression = frameCompression;
+      return this;
+    }
+
+    public Builder setAdaptiveCompression(boolean adaptiveCompression) {
+      this.adaptiveCompression = adaptiveCompression;
+      return this;
+    }
+
+    public Builder setMaxMessageSize(int maxMessageSize) {
+      this.maxMessageSize = maxMessageSize;
+      return this;
+    }
+
+    public Builder setThreadMode(String threadMode) {
+      this.threadMode = threadMode;
+      return this;
+    }
+
+    public Builder setShutdownTimeout(long shutdownTimeout) {
+      this.shutdownTimeout = shutdownTimeout;
+      return this;
+    }
+
+    public Builder setPayloadPoolSize(int payloadPoolSize) {
+      this.payloadPoolSize = payloadPoolSize;
+      return this;
+    }
+
+    public Builder setPayloadRetainedSize(int payloadRetainedSize) {
+      this.payloadRetainedSize = payloadRetainedSize;
+      return this;
+    }
+
+    public Builder setFormat(String format) {
+      this.format = format;
+      return this;
+    }
+
+    public Builder setFanOut(String fanOut) {
+      this.fanOut = fanOut;
+      return this;
+    }
+
+    public Builder setMaxSendBufferSize(int maxSendBufferSize) {
+      this.maxSendBufferSize = maxSendBufferSize;
+      return this;
+    }
+
+    public Builder setOpenMode(String openMode) {
+      this.openMode = openMode;
+      return this;
+    }
+
+    public Builder setFallbackHost(String fallbackHost) {
+      this.fallbackHost = fallbackHost;
+      return this;
+    }
+
+    public Builder setFallbackPort(int fallbackPort) {
+      this.fallbackPort = fallbackPort;
+      return this;
+    }
+
     @Override
     public Log4j2GelfAppender build() {
+      if (!"unix".equals(type) && !isValidHost(hostname)) {
+        return null;
+      }
       HashMap<String, String> properties = new HashMap<>();
       if (additionalFields != null) {
         Arrays.stream(additionalFields).forEach(v -> properties.put(v.getKey(), v.getValue()));
       }
       LoggingConfiguration configuration =
           new LoggingConfiguration(facility, logExceptions, logThread, logLine, logFile, logMethod,
-              logClass, logLogger, logMdcValues, false, properties);
+              logClass, logLogger, logMdcValues, false, properties,
+              FieldFilter.compile(mdcIncludes, mdcExcludes, mdcRenames), preciseTimestamp,
+              logTemplate, logMapValues, inferMapTypes);
+      PayloadFormatter formatter = PayloadFormat.parse(format);
       return new Log4j2GelfAppender(name, filter, layout, type, hostname, soTimeout, port, blocking,
           sendBufferSize, useCompression, compressionLevel, compressionLimit, useCircuitBreaker,
-          failuresToOpen, secondsToRecover, configuration);
+          failuresToOpen, secondsToRecover, queueSize, reservedQueueSize,
+          OverflowPolicy.parse(overflowPolicy), keyStore, keyStorePassword, trustStore,
+          trustStorePassword, verifyHostname, socketPath,
+          framing == null || framing.trim().isEmpty() ? framingOf(formatter)
+                                                      : Framing.parse(framing),
+          FrameCompression.parse(frameCompression), adaptiveCompression,
+          maxMessageSize, ThreadMode.parse(threadMode), shutdownTimeout,
+          payloadPoolSize, payloadRetainedSize, formatter, fanOut, maxSendBufferSize,
+          OpenMode.parse(openMode), fallbackHost, fallbackPort, configuration);
     }
   }
 }
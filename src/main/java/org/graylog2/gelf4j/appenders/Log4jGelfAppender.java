@@ -1,17 +1,29 @@
 package org.graylog2.gelf4j.appenders;
 
 import static com.jsoniter.JsonIterator.deserialize;
+import static org.graylog2.gelf4j.Constants.CONNECT_THREAD_PREFIX;
 import static org.graylog2.gelf4j.Constants.DEFAULT_COMPRESSION_RATE;
 import static org.graylog2.gelf4j.Constants.DEFAULT_FACILITY;
 import static org.graylog2.gelf4j.Constants.DEFAULT_FAILURES_TO_OPEN;
+import static org.graylog2.gelf4j.Constants.DEFAULT_FALLBACK_HOST;
+import static org.graylog2.gelf4j.Constants.DEFAULT_MAX_MESSAGE_SIZE;
+import static org.graylog2.gelf4j.Constants.DEFAULT_PAYLOAD_RETAINED_SIZE;
+import static org.graylog2.gelf4j.Constants.DEFAULT_QUEUE_SIZE;
 import static org.graylog2.gelf4j.Constants.DEFAULT_RECOVERY_PERIOD_SEC;
+import static org.graylog2.gelf4j.Constants.DEFAULT_RESERVED_QUEUE_DIVISOR;
+import static org.graylog2.gelf4j.Constants.DEFAULT_SHUTDOWN_TIMEOUT;
 import static org.graylog2.gelf4j.Constants.DEFAULT_SO_TIMEOUT;
 import static org.graylog2.gelf4j.Constants.DEFAULT_TCP_PORT;
 import static org.graylog2.gelf4j.Constants.MAX_UDP_DATAGRAM_SIZE;
+import static org.graylog2.gelf4j.Constants.OPEN_BUFFER_SIZE;
+import static org.graylog2.gelf4j.Constants.SENDER_THREAD_PREFIX;
 import static org.graylog2.gelf4j.utils.Validations.checkValid;
 import static org.graylog2.gelf4j.utils.Validations.isEmpty;
 
 import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -19,16 +31,31 @@ import com.jsoniter.output.EncodingMode;
 import com.jsoniter.output.JsonStream;
 import com.jsoniter.spi.TypeLiteral;
 import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.ErrorCode;
 import org.apache.log4j.spi.LoggingEvent;
 import org.graylog2.gelf4j.cb.CircuitBreakerTransmitter;
+import org.graylog2.gelf4j.concurrent.BackgroundThreadFactory;
+import org.graylog2.gelf4j.concurrent.ThreadMode;
+import org.graylog2.gelf4j.format.PayloadFormat;
 import org.graylog2.gelf4j.message.Payload;
 import org.graylog2.gelf4j.message.PayloadEncoder;
+import org.graylog2.gelf4j.message.PayloadPool;
 import org.graylog2.gelf4j.message.StringBuilderEncoder;
+import org.graylog2.gelf4j.queue.OverflowPolicy;
+import org.graylog2.gelf4j.queue.PriorityLaneTransmitter;
 import org.graylog2.gelf4j.transformers.Log4j1PayloadTransformer;
+import org.graylog2.gelf4j.transmitters.FrameCompression;
+import org.graylog2.gelf4j.transmitters.Framing;
+import org.graylog2.gelf4j.transmitters.OpenMode;
+import org.graylog2.gelf4j.transmitters.OpenModeTransmitter;
 import org.graylog2.gelf4j.transmitters.PayloadTransmitter;
+import org.graylog2.gelf4j.transmitters.SocketTelemetry;
+import org.graylog2.gelf4j.transmitters.SslContextFactory;
 import org.graylog2.gelf4j.transmitters.TcpTransmitter;
+import org.graylog2.gelf4j.transmitters.TlsTransmitter;
 import org.graylog2.gelf4j.transmitters.UdpTransmitter;
+import org.graylog2.gelf4j.transmitters.UnixSocketTransmitter;
 
 /**
  * Appender for Log4j version 1 which construct {@link org.graylog2.gelf4j.message.Payload} from
@@ -38,6 +65,7 @@ import org.graylog2.gelf4j.transmitters.UdpTransmitter;
  * @author Andrey Minov
  */
 public class Log4jGelfAppender extends AppenderSkeleton {
+  private static final String UNIX_PREFIX = "unix:";
 
   static {
     JsonStream.setMode(EncodingMode.DYNAMIC_MODE);
@@ -46,6 +74,7 @@ public class Log4jGelfAppender extends AppenderSkeleton {
   }
 
   private PayloadTransmitter payloadTransmitter;
+  private PayloadPool payloadPool;
   private Log4j1PayloadTransformer payloadTransformer;
   private boolean isOpen;
   // Log4j appender properties.
@@ -61,6 +90,9 @@ public class Log4jGelfAppender extends AppenderSkeleton {
   private boolean logClass;
   private boolean logLogger;
   private boolean logMdcValues;
+  private String mdcIncludes;
+  private String mdcExcludes;
+  private String mdcRenames;
   private boolean logNdc;
   private boolean blocking;
   private int sendBufferSize;
@@ -70,6 +102,26 @@ public class Log4jGelfAppender extends AppenderSkeleton {
   private boolean useCircuitBreaker;
   private int failuresToOpen;
   private long secondsToRecover;
+  private int queueSize;
+  private int reservedQueueSize;
+  private String overflowPolicy;
+  private String keyStore;
+  private String keyStorePassword;
+  private String trustStore;
+  private String trustStorePassword;
+  private boolean verifyHostname;
+  private String framing;
+  private String frameCompression;
+  private boolean adaptiveCompression;
+  private int maxMessageSize;
+  private String threadMode;
+  private long shutdownTimeout;
+  private int payloadPoolSize;
+  private int payloadRetainedSize;
+  private int maxSendBufferSize;
+  private String openMode;
+  private String fallbackHost;
+  private int fallbackPort;
 
   private Map<String, String> additionalFields;
 
@@ -84,6 +136,14 @@ public class Log4jGelfAppender extends AppenderSkeleton {
     this.compressionLimit = MAX_UDP_DATAGRAM_SIZE;
     this.failuresToOpen = DEFAULT_FAILURES_TO_OPEN;
     this.secondsToRecover = DEFAULT_RECOVERY_PERIOD_SEC;
+    this.queueSize = DEFAULT_QUEUE_SIZE;
+    this.reservedQueueSize = -1;
+    this.verifyHostname = true;
+    this.maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+    this.shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+    this.payloadRetainedSize = DEFAULT_PAYLOAD_RETAINED_SIZE;
+    this.fallbackHost = DEFAULT_FALLBACK_HOST;
+    this.fallbackPort = DEFAULT_TCP_PORT;
   }
 
   @Override
@@ -97,11 +157,22 @@ public class Log4jGelfAppender extends AppenderSkeleton {
     int serverPort = isEmpty(port) ? DEFAULT_TCP_PORT : Integer.parseInt(port);
     int soTimeoutMs = isEmpty(soTimeout) ? DEFAULT_SO_TIMEOUT : Integer.parseInt(soTimeout);
 
+    FieldFilter mdcFilter;
+    try {
+      mdcFilter = FieldFilter.compile(mdcIncludes, mdcExcludes, mdcRenames);
+    } catch (IllegalArgumentException e) {
+      errorHandler.error("Invalid MDC rules: " + e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+      return;
+    }
     // Construct logging information and pass it to logger message converter
     LoggingConfiguration configuration =
         new LoggingConfiguration(facility, logExceptions, logThread, logLine, logFile, logMethod,
-            logClass, logLogger, logMdcValues, logNdc, additionalFields);
-    payloadTransformer = new Log4j1PayloadTransformer(configuration);
+            logClass, logLogger, logMdcValues, logNdc, additionalFields, mdcFilter, false,
+            false, false, false);
+    // Payload is kept per thread unless pool is configured.
+    payloadPool =
+        payloadPoolSize > 0 ? new PayloadPool(payloadPoolSize, payloadRetainedSize) : null;
+    payloadTransformer = new Log4j1PayloadTransformer(configuration, payloadPool);
     try {
       payloadTransmitter = createTransmitter(serverPort, soTimeoutMs);
       payloadTransmitter.open();
@@ -120,11 +191,16 @@ public class Log4jGelfAppender extends AppenderSkeleton {
         return;
       }
       Payload payload = payloadTransformer.makeMessage(layout, event);
-      if (!checkValid(payload)) {
-        errorHandler.error("Missing required parameters!", null, ErrorCode.WRITE_FAILURE, event);
-        return;
+      try {
+        if (!checkValid(payload)) {
+          errorHandler.error("Missing required parameters!", null, ErrorCode.WRITE_FAILURE, event);
+          return;
+        }
+        payloadTransmitter.transmit(payload);
+        payloadTransmitter.flush();
+      } finally {
+        payloadTransformer.release(payload);
       }
-      payloadTransmitter.transmit(payload);
     } catch (Exception e) {
       errorHandler.error("Cannot write to Gelf transmitter.", e, ErrorCode.WRITE_FAILURE, event);
     }
@@ -134,7 +210,12 @@ public class Log4jGelfAppender extends AppenderSkeleton {
   public void close() {
     if (payloadTransmitter != null) {
       try {
-        payloadTransmitter.close();
+        // Deliver queued and buffered events before exit.
+        long undelivered = payloadTransmitter.shutdown(shutdownTimeout, TimeUnit.MILLISECONDS);
+        if (undelivered > 0) {
+          LogLog.warn(undelivered + " events were not delivered to Graylog server within "
+                      + shutdownTimeout + " ms.");
+        }
       } catch (IOException e) {
         errorHandler.error(e.getMessage(), e, ErrorCode.CLOSE_FAILURE);
       }
@@ -194,6 +275,18 @@ public class Log4jGelfAppender extends AppenderSkeleton {
     this.logMdcValues = logMdcValues;
   }
 
+  public void setMdcIncludes(String mdcIncludes) {
+    this.mdcIncludes = mdcIncludes;
+  }
+
+  public void setMdcExcludes(String mdcExcludes) {
+    this.mdcExcludes = mdcExcludes;
+  }
+
+  public void setMdcRenames(String mdcRenames) {
+    this.mdcRenames = mdcRenames;
+  }
+
   public void setLogNdc(boolean logNdc) {
     this.logNdc = logNdc;
   }
@@ -244,25 +337,161 @@ public class Log4jGelfAppender extends AppenderSkeleton {
     this.secondsToRecover = secondsToRecover;
   }
 
-  private PayloadTransmitter createTransmitter(int serverPort, int soTimeoutMs) {
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  public void setReservedQueueSize(int reservedQueueSize) {
+    this.reservedQueueSize = reservedQueueSize;
+  }
+
+  public void setOverflowPolicy(String overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public void setKeyStore(String keyStore) {
+    this.keyStore = keyStore;
+  }
+
+  public void setKeyStorePassword(String keyStorePassword) {
+    this.keyStorePassword = keyStorePassword;
+  }
+
+  public void setTrustStore(String trustStore) {
+    this.trustStore = trustStore;
+  }
+
+  public void setTrustStorePassword(String trustStorePassword) {
+    this.trustStorePassword = trustStorePassword;
+  }
+
+  public void setVerifyHostname(boolean verifyHostname) {
+    this.verifyHostname = verifyHostname;
+  }
+
+  public void setFraming(String framing) {
+    this.framing = framing;
+  }
+
+  public void setFrameCompression(String frameCompression) {
+    this.frameCompression = frameCompression;
+  }
+
+  public void setAdaptiveCompression(boolean adaptiveCompression) {
+    this.adaptiveCompression = adaptiveCompression;
+  }
+
+  public void setMaxMessageSize(int maxMessageSize) {
+    this.maxMessageSize = maxMessageSize;
+  }
+
+  public void setThreadMode(String threadMode) {
+    this.threadMode = threadMode;
+  }
+
+  public void setShutdownTimeout(long shutdownTimeout) {
+    this.shutdownTimeout = shutdownTimeout;
+  }
+
+  /**
+   * Gets pool of payloads with pooled count and retained bytes gauges.
+   *
+   * @return the payload pool or null in case payload is kept per thread.
+   */
+  public PayloadPool getPayloadPool() {
+    return payloadPool;
+  }
+
+  /**
+   * Gets telemetry of connection used by the appender.
+   *
+   * @return the socket telemetry, empty in case transport does not collect it.
+   */
+  public List<SocketTelemetry> getSocketTelemetry() {
+    PayloadTransmitter transmitter = payloadTransmitter;
+    return transmitter != null ? transmitter.getSocketTelemetry()
+                               : Collections.<SocketTelemetry>emptyList();
+  }
+
+  public void setPayloadPoolSize(int payloadPoolSize) {
+    this.payloadPoolSize = payloadPoolSize;
+  }
+
+  public void setPayloadRetainedSize(int payloadRetainedSize) {
+    this.payloadRetainedSize = payloadRetainedSize;
+  }
+
+  public void setMaxSendBufferSize(int maxSendBufferSize) {
+    this.maxSendBufferSize = maxSendBufferSize;
+  }
+
+  public void setOpenMode(String openMode) {
+    this.openMode = openMode;
+  }
+
+  public void setFallbackHost(String fallbackHost) {
+    this.fallbackHost = fallbackHost;
+  }
+
+  public void setFallbackPort(int fallbackPort) {
+    this.fallbackPort = fallbackPort;
+  }
+
+  private PayloadTransmitter createTransmitter(int serverPort, int soTimeoutMs)
+      throws GeneralSecurityException, IOException {
     PayloadTransmitter delegate = null;
     if (graylogHost.matches("tcp:.+")) {
+      if (FrameCompression.parse(frameCompression) == FrameCompression.BATCH && queueSize <= 0) {
+        LogLog.warn("Batch frame compression needs queueSize, without queue every event is "
+                    + "compressed into own frame.");
+      }
       delegate = new TcpTransmitter(graylogHost.substring(4), serverPort, soTimeoutMs, blocking,
-          sendBufferSize);
+          sendBufferSize, Framing.parse(framing), FrameCompression.parse(frameCompression),
+          compressionLevel, maxMessageSize, PayloadFormat.GELF, maxSendBufferSize);
+    }
+    if (graylogHost.matches("tls:.+")) {
+      delegate = new TlsTransmitter(graylogHost.substring(4), serverPort, soTimeoutMs,
+          sendBufferSize,
+          SslContextFactory.create(keyStore, keyStorePassword, trustStore, trustStorePassword),
+          verifyHostname);
+    }
+    if (graylogHost.startsWith(UNIX_PREFIX) && graylogHost.length() > UNIX_PREFIX.length()) {
+      String socketPath = graylogHost.substring(UNIX_PREFIX.length());
+      if (!UnixSocketTransmitter.isUnixDomainSupported()) {
+        LogLog.warn("Unix domain sockets need JDK 16+, events for " + socketPath
+                    + " are sent by TCP to " + fallbackHost + ":" + fallbackPort + ".");
+      }
+      delegate = new UnixSocketTransmitter(socketPath, fallbackHost, fallbackPort, soTimeoutMs,
+          Framing.parse(framing));
     }
     if (graylogHost.matches("udp:.+")) {
       delegate =
           new UdpTransmitter(graylogHost.substring(4), serverPort, sendBufferSize, useCompression,
-              compressionLevel, compressionLimit);
+              compressionLevel, compressionLimit, adaptiveCompression, maxMessageSize,
+              maxSendBufferSize);
     }
     if (delegate == null) {
       throw new IllegalStateException(
           "Graylog hostname has not supported protocol type:" + graylogHost);
     }
+    // Startup does not wait for connection unless eager blocking mode is set.
+    OpenMode mode = OpenMode.parse(openMode);
+    PayloadTransmitter transmitter = delegate;
+    if (mode != OpenMode.EAGER_BLOCKING) {
+      transmitter = new OpenModeTransmitter(mode, OPEN_BUFFER_SIZE, transmitter,
+          new BackgroundThreadFactory(CONNECT_THREAD_PREFIX, ThreadMode.parse(threadMode)));
+    }
     if (useCircuitBreaker) {
-      return new CircuitBreakerTransmitter(failuresToOpen, secondsToRecover, TimeUnit.SECONDS,
-          delegate);
+      transmitter = new CircuitBreakerTransmitter(failuresToOpen, secondsToRecover,
+          TimeUnit.SECONDS, transmitter);
+    }
+    if (queueSize > 0) {
+      int reserved =
+          reservedQueueSize >= 0 ? reservedQueueSize : queueSize / DEFAULT_RESERVED_QUEUE_DIVISOR;
+      transmitter = new PriorityLaneTransmitter(queueSize, reserved,
+          OverflowPolicy.parse(overflowPolicy), transmitter,
+          new BackgroundThreadFactory(SENDER_THREAD_PREFIX, ThreadMode.parse(threadMode)));
     }
-    return delegate;
+    return transmitter;
   }
 }
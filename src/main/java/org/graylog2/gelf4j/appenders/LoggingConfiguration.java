@@ -21,25 +21,38 @@ public class LoggingConfiguration {
   private boolean logMdcValues;
   private boolean logNdc;
   private Map<String, String> externalFields;
+  private FieldFilter mdcFilter;
+  private boolean preciseTimestamp;
+  private boolean logTemplate;
+  private boolean logMapValues;
+  private boolean inferMapTypes;
 
   /**
    * Instantiates a new Logging configuration.
    *
-   * @param facility       the facility from which log event is came
-   * @param logExceptions  true in case exceptions must be logged
-   * @param logThread      true in case thread name must be logged.
-   * @param logLine        true in case logging line should be logged.
-   * @param logFile        true in case logging file should be logged.
-   * @param logMethod      true in case logging method should be logged.
-   * @param logClass       true in case logging class should be logged.
-   * @param logLogger      true in case logger name should be logged.
-   * @param logMdcValues   true in case MDC keys and values should be logged.
-   * @param logNdc         true in case NDC should be logged.
-   * @param externalFields the external fields used during logging.
+   * @param facility         the facility from which log event is came
+   * @param logExceptions    true in case exceptions must be logged
+   * @param logThread        true in case thread name must be logged.
+   * @param logLine          true in case logging line should be logged.
+   * @param logFile          true in case logging file should be logged.
+   * @param logMethod        true in case logging method should be logged.
+   * @param logClass         true in case logging class should be logged.
+   * @param logLogger        true in case logger name should be logged.
+   * @param logMdcValues     true in case MDC keys and values should be logged.
+   * @param logNdc           true in case NDC should be logged.
+   * @param externalFields   the external fields used during logging.
+   * @param mdcFilter        the include, exclude and rename rules of MDC keys.
+   * @param preciseTimestamp true in case timestamp should be logged with microseconds.
+   * @param logTemplate      true in case message template and parameters should be logged.
+   * @param logMapValues     true in case entries of map messages should be logged as fields.
+   * @param inferMapTypes    true in case numbers and booleans should be detected in map message
+   *                         values.
    */
   LoggingConfiguration(String facility, boolean logExceptions, boolean logThread, boolean logLine,
                        boolean logFile, boolean logMethod, boolean logClass, boolean logLogger,
-                       boolean logMdcValues, boolean logNdc, Map<String, String> externalFields) {
+                       boolean logMdcValues, boolean logNdc, Map<String, String> externalFields,
+                       FieldFilter mdcFilter, boolean preciseTimestamp, boolean logTemplate,
+                       boolean logMapValues, boolean inferMapTypes) {
     this.facility = facility;
     this.logExceptions = logExceptions;
     this.logThread = logThread;
@@ -51,6 +64,11 @@ public class LoggingConfiguration {
     this.logMdcValues = logMdcValues;
     this.logNdc = logNdc;
     this.externalFields = externalFields;
+    this.mdcFilter = mdcFilter == null ? FieldFilter.ALLOW_ALL : mdcFilter;
+    this.preciseTimestamp = preciseTimestamp;
+    this.logTemplate = logTemplate;
+    this.logMapValues = logMapValues;
+    this.inferMapTypes = inferMapTypes;
   }
 
   /**
@@ -151,4 +169,49 @@ public class LoggingConfiguration {
   public Map<String, String> getExternalFields() {
     return externalFields;
   }
+
+  /**
+   * The rules which MDC keys should be logged and under which names.
+   *
+   * @return the MDC keys filter.
+   */
+  public FieldFilter getMdcFilter() {
+    return mdcFilter;
+  }
+
+  /**
+   * True in case timestamp should be logged with microseconds when logging framework provides them.
+   *
+   * @return true in case of microsecond timestamp.
+   */
+  public boolean isPreciseTimestamp() {
+    return preciseTimestamp;
+  }
+
+  /**
+   * True in case template of parameterized message should be logged with parameters as fields.
+   *
+   * @return true in case of template logging.
+   */
+  public boolean isLogTemplate() {
+    return logTemplate;
+  }
+
+  /**
+   * True in case entries of map and structured data messages should be logged as fields.
+   *
+   * @return true in case of map values logging.
+   */
+  public boolean isLogMapValues() {
+    return logMapValues;
+  }
+
+  /**
+   * True in case values of map message looking like numbers or booleans should be sent typed.
+   *
+   * @return true in case of type inference.
+   */
+  public boolean isInferMapTypes() {
+    return inferMapTypes;
+  }
 }
@@ -14,7 +14,7 @@ import org.apache.logging.log4j.status.StatusLogger;
 class TransportValidator implements ConstraintValidator<ValidTransport> {
   private static final Logger LOGGER = StatusLogger.getLogger();
 
-  private static final Pattern TRANSPORTS_SUPPORTED = Pattern.compile("(tcp|udp)");
+  private static final Pattern TRANSPORTS_SUPPORTED = Pattern.compile("(tcp|udp|tls|unix)");
 
   private ValidTransport annotation;
 
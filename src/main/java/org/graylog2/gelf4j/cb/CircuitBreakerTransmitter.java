@@ -5,13 +5,15 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
-import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.graylog2.gelf4j.message.Payload;
 import org.graylog2.gelf4j.transmitters.PayloadTransmitter;
+import org.graylog2.gelf4j.transmitters.SocketTelemetry;
+import org.graylog2.gelf4j.utils.Platform;
 
 /**
  * CircuitBreaker.
@@ -62,7 +64,7 @@ public class CircuitBreakerTransmitter implements PayloadTransmitter {
   @Override
   public void transmit(Payload payload) throws Exception {
     State initialState = getInitialState();
-    if (EnumSet.of(State.CLOSED, State.PARTIALLY_OPEN).contains(initialState)) {
+    if (initialState != State.OPEN) {
       try {
         delegate.transmit(payload);
         markClosed();
@@ -76,17 +78,45 @@ public class CircuitBreakerTransmitter implements PayloadTransmitter {
     throw new CircuitOpenException("Circuit is open and request cannot be processed");
   }
 
+  @Override
+  public void flush() throws IOException {
+    if (state.get() == State.OPEN) {
+      return;
+    }
+    try {
+      delegate.flush();
+    } catch (IOException e) {
+      processException();
+      throw e;
+    }
+  }
+
   @Override
   public void close() throws IOException {
     delegate.close();
   }
 
+  @Override
+  public long shutdown(long timeout, TimeUnit unit) throws IOException {
+    return delegate.shutdown(timeout, unit);
+  }
+
   @Override
   public void open() throws IOException {
     delegate.open();
   }
 
+  @Override
+  public List<SocketTelemetry> getSocketTelemetry() {
+    return delegate.getSocketTelemetry();
+  }
+
   private State getInitialState() {
+    // Closed is the usual state, read it without writing shared state on every event.
+    State current = Platform.getAcquire(state);
+    if (current == State.CLOSED) {
+      return current;
+    }
     // put it here as function must be side-affect-free (values must not be changed inside function).
     // be aware that it will bring one more volative get operation overhead.
     long stopShapshot = stopTime;
@@ -104,6 +134,9 @@ public class CircuitBreakerTransmitter implements PayloadTransmitter {
   }
 
   private void markClosed() {
+    if (Platform.getAcquire(state) == State.CLOSED) {
+      return;
+    }
     State prev = state.getAndSet(State.CLOSED);
     if (prev != State.CLOSED) {
       failCounter.set(0);
@@ -0,0 +1,96 @@
+package org.graylog2.gelf4j.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of threads for all background tasks the appender owns.
+ * <p/>
+ * Library is compiled for Java 8, so virtual threads builder
+ * <code>Thread.ofVirtual().name(prefix, 0).factory()</code> is looked up by reflection once.
+ * On older runtimes or with {@link ThreadMode#PLATFORM} mode daemon platform threads are created.
+ * Blocking transmitters are guarded by {@link java.util.concurrent.locks.ReentrantLock} rather than
+ * monitors, so virtual threads are not pinned to carrier while waiting for network.
+ *
+ * @author Andrey Minov
+ */
+public class BackgroundThreadFactory implements ThreadFactory {
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method FACTORY;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builder.getMethod("name", String.class, long.class);
+      factory = builder.getMethod("factory");
+    } catch (ReflectiveOperationException e) {
+      // Runtime is older than JDK 21, fallback to platform threads.
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+  }
+
+  private final String prefix;
+  private final ThreadFactory virtualFactory;
+  private final AtomicInteger counter;
+
+  /**
+   * Instantiates a new background thread factory.
+   *
+   * @param prefix the prefix of thread names, followed by dash and thread number.
+   * @param mode   the kind of created threads.
+   */
+  public BackgroundThreadFactory(String prefix, ThreadMode mode) {
+    this.prefix = prefix;
+    this.virtualFactory =
+        mode == ThreadMode.VIRTUAL && isVirtualSupported() ? createVirtualFactory(prefix) : null;
+    this.counter = new AtomicInteger();
+  }
+
+  /**
+   * Checks that current runtime supports virtual threads.
+   *
+   * @return true in case JDK 21+ virtual threads are available.
+   */
+  public static boolean isVirtualSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  private static ThreadFactory createVirtualFactory(String prefix) {
+    try {
+      Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 0L);
+      return (ThreadFactory) FACTORY.invoke(builder);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      // Should not happen on JDK 21+, platform threads still work.
+      return null;
+    }
+  }
+
+  /**
+   * Checks that factory creates virtual threads.
+   *
+   * @return true in case threads are virtual.
+   */
+  public boolean isVirtual() {
+    return virtualFactory != null;
+  }
+
+  @Override
+  public Thread newThread(Runnable task) {
+    if (virtualFactory != null) {
+      return virtualFactory.newThread(task);
+    }
+    Thread thread = new Thread(task, prefix + "-" + counter.getAndIncrement());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
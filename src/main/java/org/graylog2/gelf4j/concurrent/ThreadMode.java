@@ -0,0 +1,31 @@
+package org.graylog2.gelf4j.concurrent;
+
+/**
+ * Kind of threads running background tasks of appender, i.e. sending queued events.
+ *
+ * @author Andrey Minov
+ */
+public enum ThreadMode {
+  /**
+   * Daemon platform threads.
+   */
+  PLATFORM,
+  /**
+   * Virtual threads in case runtime supports them (JDK 21+), daemon platform threads otherwise.
+   */
+  VIRTUAL;
+
+  /**
+   * Parse thread mode from configuration value ignoring case.
+   *
+   * @param value the configuration value, might be null.
+   * @return the thread mode or {@link #VIRTUAL} in case value is empty.
+   * @throws IllegalArgumentException when value is not known mode.
+   */
+  public static ThreadMode parse(String value) {
+    if (value == null || value.isEmpty()) {
+      return VIRTUAL;
+    }
+    return valueOf(value.trim().toUpperCase());
+  }
+}
@@ -0,0 +1,119 @@
+package org.graylog2.gelf4j.format;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Formatter of payload into compact binary message for own relays which do not need JSON.
+ * <p/>
+ * Layout: version byte (1), timestamp seconds and fraction as varints, number of fraction digits
+ * byte, level byte, then host, short message, full message, facility and file as strings, line as
+ * varint, template as string (JSON string bytes, empty when absent) and varint count of additional
+ * fields. Each field is name string, type byte of {@link AdditionalFields} and value: string,
+ * zigzag varint for long, 8 bytes big endian for double, 1 byte for boolean, nothing for null.
+ * Strings are varint length followed by UTF-8 bytes.
+ *
+ * @author Andrey Minov
+ */
+final class BinaryFormatter {
+  static final byte VERSION = 1;
+
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+  private static final int BUFFER_SIZE = 512;
+
+  private static final ThreadLocal<ByteArrayOutputStream> OUTPUTS =
+      ThreadLocal.withInitial(() -> new ByteArrayOutputStream(BUFFER_SIZE));
+  private static final ThreadLocal<Payload> COPIES = ThreadLocal.withInitial(Payload::new);
+
+  private BinaryFormatter() {
+  }
+
+  static byte[] format(Payload payload) {
+    ByteArrayOutputStream output = OUTPUTS.get();
+    output.reset();
+    Payload copy = COPIES.get();
+    try {
+      if (payload.getContextData() != null) {
+        // Context data is referenced by payload, materialize it into additional fields.
+        copy.copyFrom(payload);
+        payload = copy;
+      }
+      write(output, payload);
+      return output.toByteArray();
+    } finally {
+      copy.clear();
+    }
+  }
+
+  private static void write(ByteArrayOutputStream output, Payload payload) {
+    output.write(VERSION);
+    writeVarint(output, payload.getTimestampSeconds());
+    writeVarint(output, payload.getTimestampFraction());
+    output.write(payload.getTimestampDigits());
+    output.write(payload.getLevel());
+    writeString(output, payload.getHost());
+    ByteBuffer buffer = payload.getShortMessageBuffer();
+    if (buffer != null && buffer.limit() > 0) {
+      writeVarint(output, buffer.limit());
+      output.write(buffer.array(), 0, buffer.limit());
+    } else {
+      writeString(output, payload.getShortMessage());
+    }
+    writeString(output, payload.getFullMessage());
+    writeString(output, payload.getFacility());
+    writeString(output, payload.getFile());
+    writeVarint(output, payload.getLine());
+    byte[] template = payload.getTemplate();
+    if (template != null) {
+      writeVarint(output, template.length);
+      output.write(template, 0, template.length);
+    } else {
+      writeVarint(output, 0);
+    }
+    AdditionalFields fields = payload.getAdditionalFields();
+    writeVarint(output, fields.size());
+    for (int i = 0; i < fields.size(); i++) {
+      writeString(output, fields.getName(i));
+      byte type = fields.getType(i);
+      output.write(type);
+      switch (type) {
+        case AdditionalFields.STRING:
+          writeString(output, fields.getString(i));
+          break;
+        case AdditionalFields.LONG:
+          long value = fields.getLong(i);
+          writeVarint(output, (value << 1) ^ (value >> 63));
+          break;
+        case AdditionalFields.DOUBLE:
+          long bits = Double.doubleToLongBits(fields.getDouble(i));
+          for (int shift = 56; shift >= 0; shift -= 8) {
+            output.write((int) (bits >>> shift));
+          }
+          break;
+        case AdditionalFields.BOOLEAN:
+          output.write(fields.getBoolean(i) ? 1 : 0);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private static void writeString(ByteArrayOutputStream output, CharSequence value) {
+    byte[] bytes = value.toString().getBytes(CHARSET);
+    writeVarint(output, bytes.length);
+    output.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeVarint(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+}
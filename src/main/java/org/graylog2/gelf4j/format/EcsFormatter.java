@@ -0,0 +1,172 @@
+package org.graylog2.gelf4j.format;
+
+import static org.graylog2.gelf4j.Constants.CLASS_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.FILE_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.LINE_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.LOGGER_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.METHOD_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.TEMPLATE_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.THREAD_ATTRIBUTE;
+import static org.graylog2.gelf4j.utils.Validations.isEmpty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Instant;
+
+import com.jsoniter.output.JsonStream;
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Formatter of payload into <a href="https://www.elastic.co/guide/en/ecs/current/">Elastic Common
+ * Schema</a> JSON document.
+ * <p/>
+ * GELF fields are mapped to ECS fields: timestamp to <code>@timestamp</code>, syslog level to
+ * <code>log.level</code> and <code>log.syslog.severity.code</code>, short message to
+ * <code>message</code>, full message to <code>error.stack_trace</code> and location, thread and
+ * logger fields to their <code>log.origin</code>, <code>process</code> and <code>log</code>
+ * counterparts. Other additional fields are written without underscore prefix.
+ *
+ * @author Andrey Minov
+ */
+final class EcsFormatter {
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+  private static final String ECS_VERSION = "1.6.0";
+  private static final String[] LEVELS =
+      {null, "alert", "critical", "error", "warning", "notice", "info", "debug"};
+  private static final int BUFFER_SIZE = 1024;
+
+  private static final ThreadLocal<EcsFormatter> FORMATTERS =
+      ThreadLocal.withInitial(EcsFormatter::new);
+
+  private final ByteArrayOutputStream output;
+  private final JsonStream stream;
+  // Context data is referenced by payload, it is materialized into additional fields of copy.
+  private final Payload copy;
+
+  private EcsFormatter() {
+    this.output = new ByteArrayOutputStream(BUFFER_SIZE);
+    this.stream = new JsonStream(output, BUFFER_SIZE);
+    this.copy = new Payload();
+  }
+
+  static byte[] format(Payload payload) throws IOException {
+    EcsFormatter formatter = FORMATTERS.get();
+    formatter.output.reset();
+    try {
+      formatter.write(payload.getContextData() != null ? formatter.copy(payload) : payload);
+      formatter.stream.flush();
+      return formatter.output.toByteArray();
+    } finally {
+      formatter.copy.clear();
+    }
+  }
+
+  private Payload copy(Payload payload) {
+    copy.copyFrom(payload);
+    return copy;
+  }
+
+  private void write(Payload payload) throws IOException {
+    stream.writeObjectStart();
+    stream.writeObjectField("@timestamp");
+    stream.writeVal(timestamp(payload));
+    if (payload.getLevel() > 0 && payload.getLevel() < LEVELS.length) {
+      stream.writeMore();
+      stream.writeObjectField("log.level");
+      stream.writeVal(LEVELS[payload.getLevel()]);
+      stream.writeMore();
+      stream.writeObjectField("log.syslog.severity.code");
+      stream.writeVal(payload.getLevel());
+    }
+    stream.writeMore();
+    stream.writeObjectField("message");
+    stream.writeVal(shortMessage(payload));
+    stream.writeMore();
+    stream.writeObjectField("ecs.version");
+    stream.writeVal(ECS_VERSION);
+    writeString("host.hostname", payload.getHost());
+    writeString("error.stack_trace", payload.getFullMessage());
+    writeString("log.syslog.facility.name", payload.getFacility());
+    writeString("log.origin.file.name", payload.getFile());
+    if (payload.getLine() > 0) {
+      stream.writeMore();
+      stream.writeObjectField("log.origin.file.line");
+      stream.writeVal(payload.getLine());
+    }
+    byte[] template = payload.getTemplate();
+    if (template != null) {
+      stream.writeMore();
+      stream.writeObjectField(TEMPLATE_ATTRIBUTE);
+      stream.write(template, 0, template.length);
+    }
+    AdditionalFields fields = payload.getAdditionalFields();
+    for (int i = 0; i < fields.size(); i++) {
+      stream.writeMore();
+      stream.writeObjectField(fieldName(fields.getName(i)));
+      switch (fields.getType(i)) {
+        case AdditionalFields.STRING:
+          stream.writeVal(fields.getString(i).toString());
+          break;
+        case AdditionalFields.LONG:
+          stream.writeVal(fields.getLong(i));
+          break;
+        case AdditionalFields.DOUBLE:
+          stream.writeVal(fields.getDouble(i));
+          break;
+        case AdditionalFields.BOOLEAN:
+          stream.writeVal(fields.getBoolean(i));
+          break;
+        default:
+          stream.writeNull();
+      }
+    }
+    stream.writeObjectEnd();
+  }
+
+  private void writeString(String name, CharSequence value) throws IOException {
+    if (!isEmpty(value)) {
+      stream.writeMore();
+      stream.writeObjectField(name);
+      stream.writeVal(value.toString());
+    }
+  }
+
+  private static String timestamp(Payload payload) {
+    int digits = payload.getTimestampDigits();
+    long nanos = digits == 0 ? 0
+                 : payload.getTimestampFraction() * (digits == 3 ? 1_000_000L : 1_000L);
+    return digits == 0 ? Instant.now().toString()
+           : Instant.ofEpochSecond(payload.getTimestampSeconds(), nanos).toString();
+  }
+
+  // Short message might be already encoded into bytes by layout.
+  private static String shortMessage(Payload payload) {
+    ByteBuffer buffer = payload.getShortMessageBuffer();
+    if (buffer != null && buffer.limit() > 0) {
+      return new String(buffer.array(), 0, buffer.limit(), CHARSET);
+    }
+    return payload.getShortMessage().toString();
+  }
+
+  private static String fieldName(String name) {
+    switch (name) {
+      case THREAD_ATTRIBUTE:
+        return "process.thread.name";
+      case LOGGER_ATTRIBUTE:
+        return "log.logger";
+      case FILE_ATTRIBUTE:
+        return "log.origin.file.name";
+      case LINE_ATTRIBUTE:
+        return "log.origin.file.line";
+      case METHOD_ATTRIBUTE:
+        return "log.origin.function";
+      case CLASS_ATTRIBUTE:
+        return "log.origin.class";
+      default:
+        return name;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.graylog2.gelf4j.format;
+
+import java.io.IOException;
+
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadSerializer;
+
+/**
+ * Built-in formats of payload.
+ *
+ * @author Andrey Minov
+ */
+public enum PayloadFormat implements PayloadFormatter {
+  /**
+   * GELF 1.1 JSON, the only format Graylog inputs accept.
+   */
+  GELF {
+    @Override
+    public byte[] format(Payload payload) {
+      return PayloadSerializer.serialize(payload);
+    }
+  },
+  /**
+   * Elastic Common Schema JSON document, sent one per line (NDJSON) to log shippers.
+   */
+  ECS {
+    @Override
+    public byte[] format(Payload payload) throws IOException {
+      return EcsFormatter.format(payload);
+    }
+  },
+  /**
+   * Compact binary format for own relays, see {@link BinaryFormatter} for layout.
+   */
+  BINARY {
+    @Override
+    public byte[] format(Payload payload) throws IOException {
+      return BinaryFormatter.format(payload);
+    }
+  };
+
+
+  /**
+   * Parse formatter from configuration value: <code>gelf</code>, <code>ecs</code>,
+   * <code>binary</code>, ignoring case, or class name of custom {@link PayloadFormatter}.
+   *
+   * @param value the configuration value, might be null.
+   * @return the formatter or {@link #GELF} in case value is empty.
+   * @throws IllegalArgumentException when value is neither known format nor formatter class.
+   */
+  public static PayloadFormatter parse(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return GELF;
+    }
+    switch (value.trim().toLowerCase()) {
+      case "gelf":
+        return GELF;
+      case "ecs":
+      case "ndjson":
+        return ECS;
+      case "binary":
+        return BINARY;
+      default:
+        return load(value.trim());
+    }
+  }
+
+  private static PayloadFormatter load(String className) {
+    try {
+      Class<?> type = Class.forName(className);
+      if (!PayloadFormatter.class.isAssignableFrom(type)) {
+        throw new IllegalArgumentException(className + " is not a payload formatter");
+      }
+      return (PayloadFormatter) type.getConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("Unknown format: " + className, e);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.graylog2.gelf4j.format;
+
+import java.io.IOException;
+
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Formatter of {@link Payload} into bytes of the wire format of logging backend.
+ * <p/>
+ * Built-in formats are listed in {@link PayloadFormat}. Custom formatter is plugged in by its class
+ * name, it must have public constructor without arguments and be thread safe as one instance is
+ * used by all transmitter threads.
+ *
+ * @author Andrey Minov
+ */
+public interface PayloadFormatter {
+  /**
+   * Format payload. Payload might reference context data of logging event, so it must not be kept
+   * after this call.
+   *
+   * @param payload the payload to format.
+   * @return the formatted message without framing.
+   * @throws IOException in case payload cannot be formatted.
+   */
+  byte[] format(Payload payload) throws IOException;
+}
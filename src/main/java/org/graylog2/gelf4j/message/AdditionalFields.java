@@ -0,0 +1,374 @@
+package org.graylog2.gelf4j.message;
+
+import java.util.Arrays;
+
+/**
+ * Typed additional fields of GELF message.
+ * <p/>
+ * Fields are kept in parallel arrays in order of insertion, values of primitive types are stored
+ * without boxing and string values are copied into reused string builders, so filling fields of
+ * thread local payload does not allocate after warm up. Adding field with already existed name
+ * overrides its value and type. Names are looked up by scan, when there are more than 16 fields,
+ * i.e. for large MDC, open addressing index of names is used.
+ * <p/>
+ * Not thread safe, same as {@link Payload}.
+ *
+ * @author Andrey Minov
+ */
+public class AdditionalFields {
+  /**
+   * Type of string field.
+   */
+  public static final byte STRING = 0;
+  /**
+   * Type of integer number field.
+   */
+  public static final byte LONG = 1;
+  /**
+   * Type of floating point number field.
+   */
+  public static final byte DOUBLE = 2;
+  /**
+   * Type of boolean field.
+   */
+  public static final byte BOOLEAN = 3;
+  /**
+   * Type of field with null value.
+   */
+  public static final byte NULL = 4;
+
+  private static final int INITIAL_CAPACITY = 8;
+  // Longer numbers might overflow long and are sent as strings.
+  private static final int MAX_LONG_DIGITS = 18;
+  private static final int INDEX_THRESHOLD = 16;
+
+  private String[] names;
+  private byte[] types;
+  private long[] longs;
+  private double[] doubles;
+  private StringBuilder[] strings;
+  private int size;
+  // Field positions plus one by hash of name with linear probing, 0 is empty bucket.
+  private int[] table;
+
+  public AdditionalFields() {
+    this.names = new String[INITIAL_CAPACITY];
+    this.types = new byte[INITIAL_CAPACITY];
+    this.longs = new long[INITIAL_CAPACITY];
+    this.doubles = new double[INITIAL_CAPACITY];
+    this.strings = new StringBuilder[INITIAL_CAPACITY];
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int hash(String name) {
+    int hash = name.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Put string field, null value is sent as JSON null.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the value of the field.
+   */
+  public void put(String name, CharSequence value) {
+    if (value == null) {
+      types[slot(name)] = NULL;
+      return;
+    }
+    int index = slot(name);
+    types[index] = STRING;
+    StringBuilder builder = strings[index];
+    if (builder == null) {
+      builder = new StringBuilder(value.length());
+      strings[index] = builder;
+    }
+    builder.setLength(0);
+    builder.append(value);
+  }
+
+  /**
+   * Put integer number field.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the value of the field.
+   */
+  public void put(String name, long value) {
+    int index = slot(name);
+    types[index] = LONG;
+    longs[index] = value;
+  }
+
+  /**
+   * Put floating point number field. NaN and infinite values are not valid JSON numbers and are sent
+   * as JSON null.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the value of the field.
+   */
+  public void put(String name, double value) {
+    int index = slot(name);
+    types[index] = Double.isNaN(value) || Double.isInfinite(value) ? NULL : DOUBLE;
+    doubles[index] = value;
+  }
+
+  /**
+   * Put boolean field.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the value of the field.
+   */
+  public void put(String name, boolean value) {
+    int index = slot(name);
+    types[index] = BOOLEAN;
+    longs[index] = value ? 1 : 0;
+  }
+
+  /**
+   * Put field of value with unknown type, i.e. from MDC. Numbers and booleans keep their type,
+   * other values are sent as strings.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the value of the field.
+   */
+  public void put(String name, Object value) {
+    if (value instanceof Long || value instanceof Integer || value instanceof Short
+        || value instanceof Byte) {
+      put(name, ((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      put(name, ((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      put(name, ((Boolean) value).booleanValue());
+    } else if (value instanceof CharSequence) {
+      put(name, (CharSequence) value);
+    } else {
+      put(name, value == null ? null : value.toString());
+    }
+  }
+
+  /**
+   * Put field from its text representation, detecting numbers and booleans. Integers with leading
+   * zeros are kept as strings as they are usually identifiers or codes rather than numbers.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the text value of the field.
+   */
+  public void putInferred(String name, String value) {
+    if (value == null) {
+      put(name, (CharSequence) null);
+      return;
+    }
+    switch (inferType(value)) {
+      case LONG:
+        put(name, Long.parseLong(value));
+        break;
+      case DOUBLE:
+        put(name, Double.parseDouble(value));
+        break;
+      case BOOLEAN:
+        put(name, value.length() == 4);
+        break;
+      default:
+        put(name, value);
+    }
+  }
+
+  private static byte inferType(String value) {
+    int length = value.length();
+    if ("true".equals(value) || "false".equals(value)) {
+      return BOOLEAN;
+    }
+    int start = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+    int digits = 0;
+    int dot = -1;
+    for (int i = start; i < length; i++) {
+      char c = value.charAt(i);
+      if (isDigit(c)) {
+        digits++;
+      } else if (c == '.' && dot < 0) {
+        dot = i;
+      } else {
+        return STRING;
+      }
+    }
+    if (digits == 0 || dot == start || dot == length - 1) {
+      return STRING;
+    }
+    if (digits > 1 && value.charAt(start) == '0' && dot != start + 1) {
+      return STRING;
+    }
+    if (dot >= 0) {
+      return DOUBLE;
+    }
+    return digits <= MAX_LONG_DIGITS ? LONG : STRING;
+  }
+
+  private int slot(String name) {
+    int index = indexOf(name);
+    if (index >= 0) {
+      return index;
+    }
+    if (size == names.length) {
+      int capacity = size * 2;
+      names = Arrays.copyOf(names, capacity);
+      types = Arrays.copyOf(types, capacity);
+      longs = Arrays.copyOf(longs, capacity);
+      doubles = Arrays.copyOf(doubles, capacity);
+      strings = Arrays.copyOf(strings, capacity);
+    }
+    index = size++;
+    names[index] = name;
+    // Table is at most half full, so probing stops quickly.
+    if (table == null ? size > INDEX_THRESHOLD : table.length < names.length * 2) {
+      table = new int[names.length * 2];
+      for (int i = 0; i < size; i++) {
+        addToTable(i);
+      }
+    } else if (table != null) {
+      addToTable(index);
+    }
+    return index;
+  }
+
+  private void addToTable(int index) {
+    int mask = table.length - 1;
+    int bucket = hash(names[index]) & mask;
+    while (table[bucket] != 0) {
+      bucket = (bucket + 1) & mask;
+    }
+    table[bucket] = index + 1;
+  }
+
+  /**
+   * Gets index of the field.
+   *
+   * @param name the name of the field.
+   * @return the index of the field or -1 in case field is absent.
+   */
+  public int indexOf(String name) {
+    if (table != null) {
+      int mask = table.length - 1;
+      for (int bucket = hash(name) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+        int index = table[bucket] - 1;
+        if (names[index].equals(name)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+    for (int i = 0; i < size; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public String getName(int index) {
+    return names[index];
+  }
+
+  /**
+   * Gets type of the field, one of {@link #STRING}, {@link #LONG}, {@link #DOUBLE},
+   * {@link #BOOLEAN} or {@link #NULL}.
+   *
+   * @param index the index of the field.
+   * @return the type of the field.
+   */
+  public byte getType(int index) {
+    return types[index];
+  }
+
+  public long getLong(int index) {
+    return longs[index];
+  }
+
+  public double getDouble(int index) {
+    return doubles[index];
+  }
+
+  public boolean getBoolean(int index) {
+    return longs[index] != 0;
+  }
+
+  public StringBuilder getString(int index) {
+    return strings[index];
+  }
+
+  /**
+   * Copy all fields of the other instance into this one, reusing string builders.
+   *
+   * @param other the fields to copy.
+   */
+  public void copyFrom(AdditionalFields other) {
+    clear();
+    for (int i = 0; i < other.size; i++) {
+      switch (other.types[i]) {
+        case STRING:
+          put(other.names[i], other.strings[i]);
+          break;
+        case LONG:
+          put(other.names[i], other.longs[i]);
+          break;
+        case DOUBLE:
+          put(other.names[i], other.doubles[i]);
+          break;
+        case BOOLEAN:
+          put(other.names[i], other.longs[i] != 0);
+          break;
+        default:
+          put(other.names[i], (CharSequence) null);
+      }
+    }
+  }
+
+  /**
+   * Gets approximate number of bytes retained by string builders kept for reuse.
+   *
+   * @return the number of bytes.
+   */
+  int retainedSize() {
+    int retained = 0;
+    for (StringBuilder builder : strings) {
+      if (builder != null) {
+        retained += builder.capacity() * 2;
+      }
+    }
+    return retained;
+  }
+
+  /**
+   * Drop string builders which retain more than given number of bytes, fields must be cleared.
+   *
+   * @param maxSize the maximum number of bytes retained by one builder.
+   */
+  void shrink(int maxSize) {
+    for (int i = 0; i < strings.length; i++) {
+      if (strings[i] != null && strings[i].capacity() * 2 > maxSize) {
+        strings[i] = null;
+      }
+    }
+  }
+
+  /**
+   * Remove all fields, string builders are kept for reuse.
+   */
+  public void clear() {
+    Arrays.fill(names, 0, size, null);
+    size = 0;
+    if (table != null) {
+      Arrays.fill(table, 0);
+    }
+  }
+}
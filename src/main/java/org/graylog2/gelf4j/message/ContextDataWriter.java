@@ -0,0 +1,44 @@
+package org.graylog2.gelf4j.message;
+
+import java.io.IOException;
+
+import com.jsoniter.output.JsonStream;
+
+/**
+ * Writer of logging framework context data (i.e. MDC) referenced by {@link Payload}.
+ * <p/>
+ * Context data is not copied into {@link AdditionalFields} of the payload, instead it is streamed
+ * directly into output by {@link PayloadEncoder}. Context data type is specific to logging framework,
+ * so payload keeps it as object and delegates iteration to the writer.
+ *
+ * @author Andrey Minov
+ */
+public interface ContextDataWriter {
+  /**
+   * Checks that all keys of context data are valid names of additional fields.
+   *
+   * @param contextData the context data of the logging event.
+   * @return true in case all names are valid.
+   */
+  boolean checkNames(Object contextData);
+
+  /**
+   * Write context data entries as additional fields, each preceded by comma. Entries with names
+   * present in payload additional fields are skipped, explicitly added fields take precedence.
+   *
+   * @param contextData the context data of the logging event.
+   * @param fields      the additional fields of the payload.
+   * @param stream      the output stream.
+   * @throws IOException in case of output errors.
+   */
+  void write(Object contextData, AdditionalFields fields, JsonStream stream) throws IOException;
+
+  /**
+   * Copy context data entries into additional fields, when payload must outlive logging event.
+   * Entries with names present in additional fields are skipped.
+   *
+   * @param contextData the context data of the logging event.
+   * @param fields      the fields to copy entries into.
+   */
+  void copyTo(Object contextData, AdditionalFields fields);
+}
@@ -1,8 +1,6 @@
 package org.graylog2.gelf4j.message;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.graylog2.gelf4j.Constants;
 
@@ -134,14 +132,20 @@ public class Payload {
   private StringBuilder host;
   private StringBuilder shortMessage;
   private StringBuilder fullMessage;
-  private double timestamp;
+  // Timestamp is kept as seconds and decimal fraction to avoid floating point formatting.
+  private long timestampSeconds;
+  private int timestampFraction;
+  private int timestampDigits;
   private int level;
   private StringBuilder facility;
   private int line;
   private StringBuilder file;
-  private Map<String, String> additionalFields;
+  private AdditionalFields additionalFields;
+  private Object contextData;
+  private ContextDataWriter contextDataWriter;
   // In case message use bufferization we have to use buffers for message.
   private ByteBuffer shortMessageBuffer;
+  private byte[] template;
 
 
   public Payload() {
@@ -151,6 +155,7 @@ public class Payload {
     this.fullMessage = new StringBuilder();
     this.facility = new StringBuilder();
     this.file = new StringBuilder();
+    this.additionalFields = new AdditionalFields();
   }
 
   public StringBuilder getVersion() {
@@ -186,11 +191,75 @@ public class Payload {
   }
 
   public double getTimestamp() {
-    return timestamp;
+    return timestampSeconds + timestampFraction / (timestampDigits == 3 ? 1e3 : 1e6);
   }
 
+  /**
+   * Sets the timestamp in UNIX time with up to microsecond precision.
+   *
+   * @param timestamp the timestamp in seconds.
+   */
   public void setTimestamp(double timestamp) {
-    this.timestamp = timestamp;
+    long seconds = (long) Math.floor(timestamp);
+    long micros = Math.round((timestamp - seconds) * 1_000_000);
+    if (micros == 1_000_000) {
+      seconds++;
+      micros = 0;
+    }
+    if (micros % 1000 == 0) {
+      setTimestamp(seconds, (int) (micros / 1000), 3);
+    } else {
+      setTimestamp(seconds, (int) micros, 6);
+    }
+  }
+
+  /**
+   * Sets the timestamp with millisecond precision.
+   *
+   * @param epochMillis the milliseconds since epoch.
+   */
+  public void setTimestampMillis(long epochMillis) {
+    setTimestamp(epochMillis / 1000, (int) (epochMillis % 1000), 3);
+  }
+
+  /**
+   * Sets the timestamp with microsecond precision.
+   *
+   * @param epochSecond  the seconds since epoch.
+   * @param nanoOfSecond the nanoseconds of the second, truncated to microseconds.
+   */
+  public void setTimestampMicros(long epochSecond, int nanoOfSecond) {
+    setTimestamp(epochSecond, nanoOfSecond / 1000, 6);
+  }
+
+  private void setTimestamp(long seconds, int fraction, int digits) {
+    this.timestampSeconds = seconds;
+    this.timestampFraction = fraction;
+    this.timestampDigits = digits;
+  }
+
+  public long getTimestampSeconds() {
+    return timestampSeconds;
+  }
+
+  /**
+   * Gets fractional part of the timestamp as decimal number of {@link #getTimestampDigits()}
+   * digits.
+   *
+   * @return the fraction of second.
+   */
+  public int getTimestampFraction() {
+    return timestampFraction;
+  }
+
+  /**
+   * Gets number of fractional digits of the timestamp: 3 for milliseconds, 6 for microseconds or
+   * 0 in case timestamp is not set.
+   *
+   * @return the number of digits.
+   */
+  public int getTimestampDigits() {
+    return timestampDigits;
   }
 
   public int getLevel() {
@@ -201,13 +270,53 @@ public class Payload {
     this.level = level;
   }
 
-  public void addAdditionalField(String name, String value) {
-    if (additionalFields == null) {
-      additionalFields = new HashMap<>();
-    }
+  public void addAdditionalField(String name, CharSequence value) {
     additionalFields.put(name, value);
   }
 
+  public void addAdditionalField(String name, long value) {
+    additionalFields.put(name, value);
+  }
+
+  public void addAdditionalField(String name, double value) {
+    additionalFields.put(name, value);
+  }
+
+  public void addAdditionalField(String name, boolean value) {
+    additionalFields.put(name, value);
+  }
+
+  /**
+   * Add field of value with unknown type keeping numbers and booleans typed,
+   * see {@link AdditionalFields#put(String, Object)}.
+   *
+   * @param name  the name of the field without underscore prefix.
+   * @param value the value of the field.
+   */
+  public void addAdditionalField(String name, Object value) {
+    additionalFields.put(name, value);
+  }
+
+  /**
+   * Reference context data of logging event to be written by encoder without copying into
+   * additional fields. Reference is valid only until event is processed by appender.
+   *
+   * @param writer      the writer of the context data.
+   * @param contextData the context data of the logging event.
+   */
+  public void setContextData(ContextDataWriter writer, Object contextData) {
+    this.contextDataWriter = writer;
+    this.contextData = contextData;
+  }
+
+  public Object getContextData() {
+    return contextData;
+  }
+
+  public ContextDataWriter getContextDataWriter() {
+    return contextDataWriter;
+  }
+
   public ByteBuffer getShortMessageBuffer() {
     return shortMessageBuffer;
   }
@@ -222,7 +331,20 @@ public class Payload {
     shortMessageBuffer.flip();
   }
 
-  public Map<String, String> getAdditionalFields() {
+  public byte[] getTemplate() {
+    return template;
+  }
+
+  /**
+   * Sets message template already encoded as JSON string, see {@link TemplateCache}.
+   *
+   * @param template the UTF-8 bytes of quoted and escaped template, not copied.
+   */
+  public void setTemplate(byte[] template) {
+    this.template = template;
+  }
+
+  public AdditionalFields getAdditionalFields() {
     return additionalFields;
   }
 
@@ -253,19 +375,99 @@ public class Payload {
     this.file.append(file);
   }
 
+  /**
+   * Copy all values of the other payload into this one, reusing buffers of this payload.
+   * Used when payload must outlive thread local instance it was created in, i.e. when queued.
+   *
+   * @param other the payload to copy values from.
+   */
+  public void copyFrom(Payload other) {
+    clear();
+    version.append(other.version);
+    host.append(other.host);
+    shortMessage.append(other.shortMessage);
+    fullMessage.append(other.fullMessage);
+    timestampSeconds = other.timestampSeconds;
+    timestampFraction = other.timestampFraction;
+    timestampDigits = other.timestampDigits;
+    level = other.level;
+    facility.append(other.facility);
+    line = other.line;
+    file.append(other.file);
+    additionalFields.copyFrom(other.additionalFields);
+    // Encoded templates are shared and never modified.
+    template = other.template;
+    // Event context data might be reused by logging framework, materialize it.
+    if (other.contextData != null) {
+      other.contextDataWriter.copyTo(other.contextData, additionalFields);
+    }
+    ByteBuffer otherBuffer = other.shortMessageBuffer;
+    if (otherBuffer != null && otherBuffer.limit() > 0) {
+      if (shortMessageBuffer == null || otherBuffer.limit() > shortMessageBuffer.capacity()) {
+        shortMessageBuffer =
+            ByteBuffer.allocate(Math.max(otherBuffer.limit(), Constants.MESSAGE_BUFFER_SIZE));
+      }
+      shortMessageBuffer.clear();
+      shortMessageBuffer.put(otherBuffer.array(), 0, otherBuffer.limit());
+      shortMessageBuffer.flip();
+    } else if (shortMessageBuffer != null) {
+      shortMessageBuffer.limit(0);
+    }
+  }
+
+  /**
+   * Gets approximate number of bytes retained by buffers of this payload kept for reuse.
+   *
+   * @return the number of bytes.
+   */
+  public int getRetainedSize() {
+    int chars = version.capacity() + host.capacity() + shortMessage.capacity()
+                + fullMessage.capacity() + facility.capacity() + file.capacity();
+    int buffer = shortMessageBuffer != null ? shortMessageBuffer.capacity() : 0;
+    return chars * 2 + buffer + additionalFields.retainedSize();
+  }
+
+  /**
+   * Release buffers which grew bigger than given size, i.e. after huge stack trace, so they are not
+   * retained while payload is reused. Payload must be cleared.
+   *
+   * @param maxSize the maximum number of bytes retained by one buffer.
+   */
+  public void shrink(int maxSize) {
+    shrink(version, maxSize);
+    shrink(host, maxSize);
+    shrink(shortMessage, maxSize);
+    shrink(fullMessage, maxSize);
+    shrink(facility, maxSize);
+    shrink(file, maxSize);
+    if (shortMessageBuffer != null && shortMessageBuffer.capacity() > maxSize) {
+      shortMessageBuffer = null;
+    }
+    additionalFields.shrink(maxSize);
+  }
+
+  private static void shrink(StringBuilder builder, int maxSize) {
+    if (builder.capacity() * 2 > maxSize) {
+      builder.setLength(0);
+      builder.trimToSize();
+    }
+  }
+
   public void clear() {
     host.setLength(0);
     shortMessage.setLength(0);
     fullMessage.setLength(0);
-    timestamp = 0;
+    timestampSeconds = 0;
+    timestampFraction = 0;
+    timestampDigits = 0;
     line = 0;
     file.setLength(0);
     facility.setLength(0);
     level = 0;
     version.setLength(0);
-
-    if (additionalFields != null) {
-      additionalFields.clear();
-    }
+    additionalFields.clear();
+    contextData = null;
+    contextDataWriter = null;
+    template = null;
   }
 }
@@ -7,13 +7,13 @@ import static org.graylog2.gelf4j.Constants.HOST;
 import static org.graylog2.gelf4j.Constants.LEVEL;
 import static org.graylog2.gelf4j.Constants.LINE;
 import static org.graylog2.gelf4j.Constants.SHORT_MESSAGE;
+import static org.graylog2.gelf4j.Constants.TEMPLATE_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.TIMESTAMP;
 import static org.graylog2.gelf4j.Constants.VERSION;
 import static org.graylog2.gelf4j.utils.Validations.isEmpty;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import com.jsoniter.any.Any;
 import com.jsoniter.output.JsonStream;
@@ -26,6 +26,10 @@ import com.jsoniter.spi.Encoder;
  */
 public class PayloadEncoder implements Encoder {
   private static final byte VALUE = '"';
+  private static final byte PREFIX = '_';
+  private static final byte SEPARATOR = ':';
+  private static final byte POINT = '.';
+  private static final byte ZERO = '0';
 
   @Override
   public void encode(Object obj, JsonStream stream) throws IOException {
@@ -60,10 +64,10 @@ public class PayloadEncoder implements Encoder {
       stream.writeVal(fullMessage);
     }
     // timestamp
-    if (payload.getTimestamp() > 0) {
+    if (payload.getTimestampDigits() > 0 && payload.getTimestampSeconds() > 0) {
       stream.writeMore();
       stream.writeObjectField(TIMESTAMP);
-      stream.writeVal(payload.getTimestamp());
+      writeTimestamp(stream, payload);
     }
     // level
     if (payload.getLevel() > 0) {
@@ -91,18 +95,103 @@ public class PayloadEncoder implements Encoder {
       stream.writeObjectField(FILE);
       stream.writeVal(file);
     }
+    // template is escaped once and cached
+    byte[] template = payload.getTemplate();
+    if (template != null) {
+      stream.writeMore();
+      writeAdditionalName(stream, TEMPLATE_ATTRIBUTE);
+      stream.write(template, 0, template.length);
+    }
     // additional properties
-    Map<String, String> additionalFields = payload.getAdditionalFields();
-    if (additionalFields != null && !additionalFields.isEmpty()) {
-      for (Map.Entry<String, String> entry : additionalFields.entrySet()) {
-        stream.writeMore();
-        stream.writeObjectField("_" + entry.getKey());
-        stream.writeVal(entry.getValue());
+    AdditionalFields additionalFields = payload.getAdditionalFields();
+    for (int i = 0; i < additionalFields.size(); i++) {
+      stream.writeMore();
+      writeAdditionalName(stream, additionalFields.getName(i));
+      switch (additionalFields.getType(i)) {
+        case AdditionalFields.STRING:
+          stream.writeVal(additionalFields.getString(i));
+          break;
+        case AdditionalFields.LONG:
+          stream.writeVal(additionalFields.getLong(i));
+          break;
+        case AdditionalFields.DOUBLE:
+          stream.writeVal(additionalFields.getDouble(i));
+          break;
+        case AdditionalFields.BOOLEAN:
+          stream.writeVal(additionalFields.getBoolean(i));
+          break;
+        default:
+          stream.writeNull();
       }
     }
+    // context data streamed without copying
+    if (payload.getContextData() != null) {
+      payload.getContextDataWriter().write(payload.getContextData(), additionalFields, stream);
+    }
     stream.writeObjectEnd();
   }
 
+  /**
+   * Write additional field preceded by comma. Numbers and booleans are written as JSON values,
+   * other objects as strings.
+   *
+   * @param stream the output stream.
+   * @param name   the name of the field without underscore prefix, must be valid field name.
+   * @param value  the value of the field.
+   * @throws IOException in case of output errors.
+   */
+  public static void writeAdditionalField(JsonStream stream, String name, Object value)
+      throws IOException {
+    stream.writeMore();
+    writeAdditionalName(stream, name);
+    if (value == null) {
+      stream.writeNull();
+    } else if (value instanceof String) {
+      stream.writeVal((String) value);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+               || value instanceof Byte) {
+      stream.writeVal(((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      double number = ((Number) value).doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        stream.writeNull();
+      } else {
+        stream.writeVal(number);
+      }
+    } else if (value instanceof Boolean) {
+      stream.writeVal(((Boolean) value).booleanValue());
+    } else {
+      stream.writeVal(value.toString());
+    }
+  }
+
+  // Names are validated to contain only ASCII word characters, dots and dashes, so they are written
+  // as is without escaping and without concatenation with underscore prefix.
+  private static void writeAdditionalName(JsonStream stream, String name) throws IOException {
+    stream.write(VALUE, PREFIX);
+    stream.writeRaw(name);
+    stream.write(VALUE, SEPARATOR);
+  }
+
+  // Seconds are written as integer and fraction as fixed number of digits, jsoniter formatting of
+  // doubles is slow and produces exponent notation for timestamps.
+  private static void writeTimestamp(JsonStream stream, Payload payload) throws IOException {
+    stream.writeVal(payload.getTimestampSeconds());
+    int fraction = payload.getTimestampFraction();
+    if (payload.getTimestampDigits() == 6) {
+      int high = fraction / 1000;
+      stream.write(POINT, digit(high / 100), digit(high / 10), digit(high));
+      fraction %= 1000;
+      stream.write(digit(fraction / 100), digit(fraction / 10), digit(fraction));
+    } else {
+      stream.write(POINT, digit(fraction / 100), digit(fraction / 10), digit(fraction));
+    }
+  }
+
+  private static byte digit(int value) {
+    return (byte) (ZERO + value % 10);
+  }
+
   @Override
   public Any wrap(Object obj) {
     return Any.wrap(obj);
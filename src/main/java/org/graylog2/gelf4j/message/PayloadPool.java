@@ -0,0 +1,119 @@
+package org.graylog2.gelf4j.message;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of payloads, alternative to thread local payload for applications with many short
+ * living or virtual threads where payload per thread takes too much memory or leaks with threads
+ * of container pools.
+ * <p/>
+ * Pool is split into stripes selected by thread id, so threads mostly do not contend on the same
+ * slots. Payload is taken from and returned to the stripe of current thread with compare and set,
+ * new payload is created when stripe is empty and returned payload is left to GC when stripe is
+ * full. Buffers of returned payload which grew bigger than retained size are released, so one
+ * huge message does not stay in memory for the lifetime of the pool.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Andrey Minov
+ */
+public class PayloadPool {
+  private static final int STRIPES =
+      Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2;
+
+  private final int maxRetainedSize;
+  private final int stripeMask;
+  private final int stripeSize;
+  private final AtomicReferenceArray<Payload> slots;
+  private final AtomicInteger pooled;
+  private final AtomicLong retainedBytes;
+
+  /**
+   * Instantiates a new payload pool.
+   *
+   * @param capacity        the maximum number of pooled payloads.
+   * @param maxRetainedSize the maximum number of bytes retained by one buffer of pooled payload.
+   */
+  public PayloadPool(int capacity, int maxRetainedSize) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Pool capacity must be positive: " + capacity);
+    }
+    int stripes = Math.min(STRIPES, Integer.highestOneBit(capacity));
+    this.maxRetainedSize = maxRetainedSize;
+    this.stripeMask = stripes - 1;
+    this.stripeSize = capacity / stripes;
+    this.slots = new AtomicReferenceArray<>(stripes * stripeSize);
+    this.pooled = new AtomicInteger();
+    this.retainedBytes = new AtomicLong();
+  }
+
+  private int stripeStart() {
+    // Thread ids are sequential, spread them over stripes.
+    long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return ((int) (id >>> 32) & stripeMask) * stripeSize;
+  }
+
+  /**
+   * Take cleared payload from the pool or create new one.
+   *
+   * @return the payload, must be returned with {@link #release(Payload)} when it is sent.
+   */
+  public Payload acquire() {
+    int start = stripeStart();
+    for (int i = start; i < start + stripeSize; i++) {
+      Payload payload = slots.get(i);
+      if (payload != null && slots.compareAndSet(i, payload, null)) {
+        pooled.decrementAndGet();
+        retainedBytes.addAndGet(-payload.getRetainedSize());
+        return payload;
+      }
+    }
+    return new Payload();
+  }
+
+  /**
+   * Return payload into the pool. Payload is cleared, so it does not reference event data, and
+   * its big buffers are released.
+   *
+   * @param payload the payload which must not be used after this call.
+   */
+  public void release(Payload payload) {
+    payload.clear();
+    payload.shrink(maxRetainedSize);
+    int size = payload.getRetainedSize();
+    int start = stripeStart();
+    for (int i = start; i < start + stripeSize; i++) {
+      if (slots.get(i) == null) {
+        // Count before publishing, so gauges never go negative when payload is taken at once.
+        pooled.incrementAndGet();
+        retainedBytes.addAndGet(size);
+        if (slots.compareAndSet(i, null, payload)) {
+          return;
+        }
+        pooled.decrementAndGet();
+        retainedBytes.addAndGet(-size);
+      }
+    }
+    // Stripe is full, payload is left to GC.
+  }
+
+  /**
+   * Gets number of payloads in the pool.
+   *
+   * @return the number of pooled payloads.
+   */
+  public int getPooled() {
+    return pooled.get();
+  }
+
+  /**
+   * Gets approximate number of bytes retained by buffers of pooled payloads.
+   *
+   * @return the number of bytes.
+   */
+  public long getRetainedBytes() {
+    return retainedBytes.get();
+  }
+}
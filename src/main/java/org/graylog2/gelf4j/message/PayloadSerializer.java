@@ -0,0 +1,36 @@
+package org.graylog2.gelf4j.message;
+
+import java.io.ByteArrayOutputStream;
+
+import com.jsoniter.output.JsonStream;
+
+/**
+ * Serializer of payloads to JSON bytes.
+ * <p>
+ * {@link JsonStream#serialize(Object)} returns String which is then encoded to bytes again, so
+ * JSON is copied twice. Here it is written into buffer reused by the thread and copied once.
+ * jsoniter escapes non ASCII characters, so written bytes are valid UTF-8.
+ * </p>
+ *
+ * @author Andrey Minov
+ */
+public final class PayloadSerializer {
+  private static final ThreadLocal<ByteArrayOutputStream> BUFFER =
+      ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1024));
+
+  private PayloadSerializer() {
+  }
+
+  /**
+   * Serialize object to JSON.
+   *
+   * @param value the payload or other object with registered encoder.
+   * @return the serialized UTF-8 bytes.
+   */
+  public static byte[] serialize(Object value) {
+    ByteArrayOutputStream buffer = BUFFER.get();
+    buffer.reset();
+    JsonStream.serialize(value, buffer);
+    return buffer.toByteArray();
+  }
+}
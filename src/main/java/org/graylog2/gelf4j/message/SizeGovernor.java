@@ -0,0 +1,234 @@
+package org.graylog2.gelf4j.message;
+
+import static org.graylog2.gelf4j.Constants.TRUNCATED_ATTRIBUTE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Governor of serialized payload size according to transport budget.
+ * <p/>
+ * When payload exceeds the budget it is truncated instead of being dropped: first frames of
+ * <code>full_message</code> stack trace are removed, keeping exception and cause lines and top
+ * frames of each cause, then <code>short_message</code> is cut at UTF-8 character boundary.
+ * Truncated payload is marked with <code>_truncated</code> field and counted.
+ * <p/>
+ * Not thread safe, must be guarded by transmitter lock. Counter might be read from any thread.
+ *
+ * @author Andrey Minov
+ */
+public class SizeGovernor {
+  /**
+   * Number of times payload is truncated and serialized again before giving up.
+   */
+  public static final int MAX_ATTEMPTS = 3;
+
+  // Room for truncated marker field and for truncated frames line of each cause.
+  private static final int MARKER_RESERVE = 24;
+  private static final int SECTION_MARKER_RESERVE = 32;
+  // Short message is never cut completely, it is required by GELF.
+  private static final int MIN_SHORT_MESSAGE = 64;
+
+  private final int maxSize;
+  private final AtomicLong truncated;
+  private final StringBuilder scratch;
+
+  /**
+   * Instantiates a new size governor.
+   *
+   * @param maxSize the maximum size of serialized payload in bytes.
+   */
+  public SizeGovernor(int maxSize) {
+    this.maxSize = maxSize;
+    this.truncated = new AtomicLong();
+    this.scratch = new StringBuilder();
+  }
+
+  /**
+   * Gets length of the character sequence encoded as UTF-8 JSON string content.
+   *
+   * @param value the character sequence.
+   * @param start the start index, inclusive.
+   * @param end   the end index, exclusive.
+   * @return the number of bytes.
+   */
+  static int encodedLength(CharSequence value, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c < 0x20) {
+        length += c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f' ? 2 : 6;
+      } else if (c == '"' || c == '\\') {
+        length += 2;
+      } else if (c < 0x80) {
+        length++;
+      } else if (c < 0x800 || Character.isSurrogate(c)) {
+        // Surrogate pair takes 4 bytes, 2 per char.
+        length += 2;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static boolean isFrame(CharSequence value, int lineStart) {
+    return lineStart < value.length() && value.charAt(lineStart) == '\t';
+  }
+
+  private static int lineEnd(StringBuilder value, int start) {
+    int end = value.indexOf("\n", start);
+    return end < 0 ? value.length() : end + 1;
+  }
+
+  /**
+   * Serialize payload, truncating it until it fits the budget.
+   *
+   * @param payload the payload to serialize.
+   * @return the serialized UTF-8 bytes.
+   * @throws IOException in case payload does not fit even after truncation, i.e. because of
+   *                     huge additional fields.
+   */
+  public byte[] serialize(Payload payload) throws IOException {
+    byte[] bytes = PayloadSerializer.serialize(payload);
+    for (int attempt = 0; bytes.length > maxSize && attempt < MAX_ATTEMPTS; attempt++) {
+      truncate(payload, bytes.length - maxSize);
+      bytes = PayloadSerializer.serialize(payload);
+    }
+    if (bytes.length > maxSize) {
+      throw new IOException(
+          "Message of " + bytes.length + " bytes exceeds limit of " + maxSize + " bytes");
+    }
+    return bytes;
+  }
+
+  /**
+   * Shrink payload approximately by given number of serialized bytes and mark it truncated.
+   *
+   * @param payload the payload to truncate.
+   * @param excess  the number of bytes to remove.
+   */
+  public void truncate(Payload payload, int excess) {
+    AdditionalFields fields = payload.getAdditionalFields();
+    if (fields.indexOf(TRUNCATED_ATTRIBUTE) < 0) {
+      truncated.incrementAndGet();
+      payload.addAdditionalField(TRUNCATED_ATTRIBUTE, true);
+    }
+    int remaining = excess + MARKER_RESERVE;
+    remaining -= truncateFullMessage(payload.getFullMessage(), remaining);
+    if (remaining > 0) {
+      truncateShortMessage(payload, remaining);
+    }
+  }
+
+  // Returns number of removed bytes.
+  private int truncateFullMessage(StringBuilder full, int bytes) {
+    int total = encodedLength(full, 0, full.length());
+    int budget = total - bytes;
+    if (total == 0 || budget <= 0) {
+      full.setLength(0);
+      return total;
+    }
+    // Exception and cause lines are the most valuable part of the trace, reserve budget for them
+    // and for frames truncated line of each.
+    int headers = 0;
+    for (int start = 0; start < full.length(); start = lineEnd(full, start)) {
+      if (!isFrame(full, start)) {
+        int cost = encodedLength(full, start, lineEnd(full, start)) + SECTION_MARKER_RESERVE;
+        if (cost > budget) {
+          break;
+        }
+        budget -= cost;
+        headers++;
+      }
+    }
+    scratch.setLength(0);
+    int header = 0;
+    boolean keepSection = true;
+    boolean skipping = false;
+    int skipped = 0;
+    for (int start = 0; start < full.length(); ) {
+      int end = lineEnd(full, start);
+      if (!isFrame(full, start)) {
+        skipped = appendSkipped(skipped);
+        keepSection = header++ < headers;
+        skipping = false;
+        if (keepSection) {
+          scratch.append(full, start, end);
+        }
+      } else if (keepSection) {
+        int cost = encodedLength(full, start, end);
+        if (!skipping && cost <= budget) {
+          scratch.append(full, start, end);
+          budget -= cost;
+        } else {
+          skipping = true;
+          skipped++;
+        }
+      }
+      start = end;
+    }
+    appendSkipped(skipped);
+    full.setLength(0);
+    full.append(scratch);
+    return total - encodedLength(full, 0, full.length());
+  }
+
+  private int appendSkipped(int skipped) {
+    if (skipped > 0) {
+      if (scratch.length() > 0 && scratch.charAt(scratch.length() - 1) != '\n') {
+        scratch.append('\n');
+      }
+      scratch.append("\t... ").append(skipped).append(" frames truncated\n");
+    }
+    return 0;
+  }
+
+  private void truncateShortMessage(Payload payload, int bytes) {
+    ByteBuffer buffer = payload.getShortMessageBuffer();
+    if (buffer != null && buffer.limit() > 0) {
+      int limit = Math.max(MIN_SHORT_MESSAGE, buffer.limit() - bytes);
+      if (limit >= buffer.limit()) {
+        return;
+      }
+      // Do not split multi byte character, continuation bytes are 10xxxxxx.
+      byte[] array = buffer.array();
+      while (limit > 0 && (array[limit] & 0xC0) == 0x80) {
+        limit--;
+      }
+      buffer.limit(limit);
+      return;
+    }
+    StringBuilder shortMessage = payload.getShortMessage();
+    int end = shortMessage.length();
+    int removed = 0;
+    while (end > MIN_SHORT_MESSAGE && removed < bytes) {
+      end--;
+      removed += encodedLength(shortMessage, end, end + 1);
+    }
+    if (end > 0 && Character.isHighSurrogate(shortMessage.charAt(end - 1))) {
+      end--;
+    }
+    shortMessage.setLength(end);
+  }
+
+  /**
+   * Gets the maximum size of serialized payload.
+   *
+   * @return the size in bytes.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Gets number of truncated payloads.
+   *
+   * @return the number of truncated payloads.
+   */
+  public long getTruncated() {
+    return truncated.get();
+  }
+}
@@ -0,0 +1,114 @@
+package org.graylog2.gelf4j.message;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jsoniter.output.JsonStream;
+
+/**
+ * Bounded cache of message templates encoded as JSON strings, so templates shared by many
+ * events are escaped once and written by encoder as raw bytes.
+ * <p/>
+ * Cached templates are read without locking. Reads stamp template with clock advanced by
+ * insertions only, so eviction of least recently used template is approximate: templates read
+ * between two insertions are equal for it. Insertion takes the lock and evicts template with the
+ * oldest stamp when cache is full.
+ * <p/>
+ * Thread safe.
+ *
+ * @author Andrey Minov
+ */
+public class TemplateCache {
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+
+  private final int maxSize;
+  private final ConcurrentMap<String, Entry> templates;
+  private final Lock lock;
+  private volatile long clock;
+
+  /**
+   * Instantiates a new template cache.
+   *
+   * @param maxSize the maximum number of cached templates, least recently used are evicted.
+   */
+  public TemplateCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.templates = new ConcurrentHashMap<>();
+    this.lock = new ReentrantLock();
+  }
+
+  /**
+   * Get template encoded as quoted and escaped JSON string.
+   *
+   * @param template the message template.
+   * @return the UTF-8 bytes of JSON string, must not be modified.
+   */
+  public byte[] encode(String template) {
+    Entry entry = templates.get(template);
+    if (entry == null) {
+      return insert(template).encoded;
+    }
+    // Stamp is written only once per insertion, so hot templates do not write on every read.
+    long now = clock;
+    if (entry.used != now) {
+      entry.used = now;
+    }
+    return entry.encoded;
+  }
+
+  /**
+   * Gets number of cached templates.
+   *
+   * @return the number of templates.
+   */
+  public int size() {
+    return templates.size();
+  }
+
+  private Entry insert(String template) {
+    lock.lock();
+    try {
+      Entry entry = templates.get(template);
+      if (entry == null) {
+        if (templates.size() >= maxSize) {
+          evict();
+        }
+        // Inserted template is older than ones read after, so it is evicted first unless read.
+        entry = new Entry(JsonStream.serialize(template).getBytes(CHARSET), clock);
+        clock = entry.used + 1;
+        templates.put(template, entry);
+      }
+      return entry;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void evict() {
+    String eldest = null;
+    long oldest = Long.MAX_VALUE;
+    for (Map.Entry<String, Entry> entry : templates.entrySet()) {
+      if (entry.getValue().used < oldest) {
+        oldest = entry.getValue().used;
+        eldest = entry.getKey();
+      }
+    }
+    if (eldest != null) {
+      templates.remove(eldest);
+    }
+  }
+
+  private static class Entry {
+    private final byte[] encoded;
+    private volatile long used;
+
+    Entry(byte[] encoded, long used) {
+      this.encoded = encoded;
+      this.used = used;
+    }
+  }
+}
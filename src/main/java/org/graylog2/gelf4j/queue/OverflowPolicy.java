@@ -0,0 +1,36 @@
+package org.graylog2.gelf4j.queue;
+
+/**
+ * Policy applied by {@link PriorityLaneTransmitter} when there is no space left for incoming event.
+ *
+ * @author Andrey Minov
+ */
+public enum OverflowPolicy {
+  /**
+   * Incoming event is dropped.
+   */
+  DISCARD,
+  /**
+   * The oldest event of the lowest severity lane which is less important than incoming one is dropped.
+   * In case there is no such event incoming event is dropped.
+   */
+  EVICT_LOWER,
+  /**
+   * Caller waits until I/O thread frees some space in the queue.
+   */
+  BLOCK;
+
+  /**
+   * Parse policy from configuration value ignoring case.
+   *
+   * @param value the configuration value, might be null.
+   * @return the policy or {@link #EVICT_LOWER} in case value is empty.
+   * @throws IllegalArgumentException when value is not known policy name.
+   */
+  public static OverflowPolicy parse(String value) {
+    if (value == null || value.isEmpty()) {
+      return EVICT_LOWER;
+    }
+    return valueOf(value.trim().toUpperCase());
+  }
+}
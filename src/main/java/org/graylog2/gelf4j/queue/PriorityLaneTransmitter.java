@@ -0,0 +1,413 @@
+package org.graylog2.gelf4j.queue;
+
+import static org.graylog2.gelf4j.Constants.SENDER_THREAD_PREFIX;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.graylog2.gelf4j.concurrent.BackgroundThreadFactory;
+import org.graylog2.gelf4j.concurrent.ThreadMode;
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.transmitters.PayloadTransmitter;
+import org.graylog2.gelf4j.transmitters.SocketTelemetry;
+
+/**
+ * Queueing stage in front of actual {@link PayloadTransmitter}.
+ * <p/>
+ * Caller thread only copies payload into one of the lanes, separate I/O thread drains lanes
+ * and sends payloads to the delegate. There is a lane per syslog severity
+ * (0 - EMERGENCY to 7 - DEBUG) as it is set by transformers in {@link Payload#getLevel()}.
+ * <p/>
+ * Part of the queue capacity is reserved for ERROR and more severe events, less important events
+ * cannot occupy it. When queue is full, {@link OverflowPolicy} decides what is dropped.
+ * With {@link OverflowPolicy#EVICT_LOWER} less severe events are always dropped before more severe ones.
+ * <p/>
+ * I/O thread drains lanes using weighted round robin: in every round it takes up to
+ * <code>8 - severity</code> events from each lane starting from most severe one, so DEBUG
+ * events are still delivered under constant ERROR load, but with lower rate. Delegate is flushed
+ * after every round, so buffering transmitters pack the whole round together.
+ * I/O thread is created by given {@link ThreadFactory}, i.e. virtual one.
+ * <p/>
+ * On {@link #shutdown(long, TimeUnit)} new events are rejected and queued ones are delivered until
+ * the timeout expires. Then I/O thread is interrupted and stops after the payload it is sending, rest
+ * of its batch is counted as undelivered. Delegate is shut down only when I/O thread does not use
+ * it anymore, so it is not reconnected after shutdown.
+ *
+ * @author Andrey Minov
+ */
+public class PriorityLaneTransmitter implements PayloadTransmitter {
+  /**
+   * Number of lanes, one per syslog severity.
+   */
+  public static final int LANES = 8;
+  /**
+   * Syslog severity of ERROR level. This and more severe lanes may use reserved capacity.
+   */
+  public static final int ERROR_SEVERITY = 3;
+
+  private static final int[] WEIGHTS = {8, 7, 6, 5, 4, 3, 2, 1};
+  private static final long JOIN_TIMEOUT_MS = 1000;
+
+  private final PayloadTransmitter delegate;
+  private final int capacity;
+  private final int reserved;
+  private final OverflowPolicy policy;
+  private final ThreadFactory threadFactory;
+
+  private final ReentrantLock lock;
+  // Held by I/O thread while it uses delegate, so shutdown waits for the payload being sent.
+  private final ReentrantLock sendLock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private final ArrayDeque<Payload>[] lanes;
+  private final ArrayDeque<Payload> free;
+  private final Payload[] batch;
+  // Payloads of the batch taken by I/O thread which are not sent yet.
+  private final AtomicInteger inBatch;
+  private int size;
+
+  private final AtomicLongArray dropped;
+  private final AtomicLong sent;
+  private final AtomicLong failed;
+
+  private volatile boolean running;
+  private volatile boolean closing;
+  private Thread worker;
+
+  /**
+   * Instantiates a new priority lane transmitter.
+   *
+   * @param capacity the total number of events which can be queued
+   * @param reserved the number of events from capacity reserved for ERROR and more severe events
+   * @param policy   the policy applied when there is no space for incoming event
+   * @param delegate actual transmitter for the payload
+   */
+  public PriorityLaneTransmitter(int capacity, int reserved, OverflowPolicy policy,
+                                 PayloadTransmitter delegate) {
+    this(capacity, reserved, policy, delegate,
+        new BackgroundThreadFactory(SENDER_THREAD_PREFIX, ThreadMode.PLATFORM));
+  }
+
+  /**
+   * Instantiates a new priority lane transmitter.
+   *
+   * @param capacity      the total number of events which can be queued
+   * @param reserved      the number of events from capacity reserved for ERROR and more severe events
+   * @param policy        the policy applied when there is no space for incoming event
+   * @param delegate      actual transmitter for the payload
+   * @param threadFactory the factory of I/O thread
+   */
+  @SuppressWarnings("unchecked")
+  public PriorityLaneTransmitter(int capacity, int reserved, OverflowPolicy policy,
+                                 PayloadTransmitter delegate, ThreadFactory threadFactory) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+    }
+    if (reserved < 0 || reserved >= capacity) {
+      throw new IllegalArgumentException("Reserved capacity must be in [0, " + capacity + ")");
+    }
+    this.capacity = capacity;
+    this.reserved = reserved;
+    this.policy = policy;
+    this.delegate = delegate;
+    this.threadFactory = threadFactory;
+    this.lock = new ReentrantLock();
+    this.sendLock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.notFull = lock.newCondition();
+    this.lanes = new ArrayDeque[LANES];
+    for (int i = 0; i < LANES; i++) {
+      lanes[i] = new ArrayDeque<>();
+    }
+    this.free = new ArrayDeque<>();
+    int batchSize = 0;
+    for (int weight : WEIGHTS) {
+      batchSize += weight;
+    }
+    this.batch = new Payload[batchSize];
+    this.inBatch = new AtomicInteger();
+    this.dropped = new AtomicLongArray(LANES);
+    this.sent = new AtomicLong();
+    this.failed = new AtomicLong();
+  }
+
+  private static int laneOf(int level) {
+    return Math.max(0, Math.min(LANES - 1, level));
+  }
+
+  @Override
+  public void open() throws IOException {
+    lock.lock();
+    try {
+      if (worker == null) {
+        running = true;
+        closing = false;
+        worker = threadFactory.newThread(this::drain);
+        worker.start();
+      }
+    } finally {
+      lock.unlock();
+    }
+    delegate.open();
+  }
+
+  /**
+   * Copy payload into the lane of its severity. Never waits for network operations,
+   * but might wait for free space in case of {@link OverflowPolicy#BLOCK}.
+   */
+  @Override
+  public void transmit(Payload payload) throws Exception {
+    int lane = laneOf(payload.getLevel());
+    lock.lock();
+    try {
+      if (closing) {
+        // Shutdown is in progress, only already queued events are delivered.
+        dropped.incrementAndGet(lane);
+        return;
+      }
+      while (!hasSpace(lane)) {
+        if (policy == OverflowPolicy.BLOCK && running && !closing) {
+          notFull.await();
+          continue;
+        }
+        if (policy == OverflowPolicy.EVICT_LOWER && evictLower(lane)) {
+          break;
+        }
+        dropped.incrementAndGet(lane);
+        return;
+      }
+      Payload copy = free.poll();
+      if (copy == null) {
+        copy = new Payload();
+      }
+      copy.copyFrom(payload);
+      lanes[lane].addLast(copy);
+      size++;
+      notEmpty.signal();
+    } catch (InterruptedException e) {
+      dropped.incrementAndGet(lane);
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    shutdown(JOIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop admission of new events, let I/O thread deliver queued ones and shutdown delegate.
+   * Events which are still queued or not sent from the batch of I/O thread when timeout expires
+   * are discarded.
+   */
+  @Override
+  public long shutdown(long timeout, TimeUnit unit) throws IOException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    Thread thread;
+    lock.lock();
+    try {
+      closing = true;
+      thread = worker;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    if (thread != null && remainingMs > 0) {
+      try {
+        thread.join(remainingMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    long undelivered;
+    lock.lock();
+    try {
+      running = false;
+      worker = null;
+      undelivered = size;
+      if (thread != null && thread.isAlive()) {
+        // Wake I/O thread waiting for the delegate, it does not send anything after this.
+        thread.interrupt();
+      }
+      for (ArrayDeque<Payload> lane : lanes) {
+        free.addAll(lane);
+        lane.clear();
+      }
+      size = 0;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    sendLock.lock();
+    try {
+      undelivered += inBatch.getAndSet(0);
+      long remaining = Math.max(0, deadline - System.nanoTime());
+      return undelivered + delegate.shutdown(remaining, TimeUnit.NANOSECONDS);
+    } finally {
+      sendLock.unlock();
+    }
+  }
+
+  /**
+   * Gets number of events waiting in the lane.
+   *
+   * @param severity the syslog severity of the lane.
+   * @return the number of queued events of given severity.
+   */
+  public int getDepth(int severity) {
+    lock.lock();
+    try {
+      return lanes[laneOf(severity)].size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets number of events dropped from the lane or not admitted into it.
+   *
+   * @param severity the syslog severity of the lane.
+   * @return the number of dropped events of given severity.
+   */
+  public long getDropped(int severity) {
+    return dropped.get(laneOf(severity));
+  }
+
+  /**
+   * Gets number of events passed to delegate without errors.
+   *
+   * @return the number of sent events.
+   */
+  public long getSent() {
+    return sent.get();
+  }
+
+  /**
+   * Gets number of events delegate failed to send.
+   *
+   * @return the number of failed events.
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  @Override
+  public List<SocketTelemetry> getSocketTelemetry() {
+    return delegate.getSocketTelemetry();
+  }
+
+  private boolean hasSpace(int lane) {
+    return size < (lane <= ERROR_SEVERITY ? capacity : capacity - reserved);
+  }
+
+  private boolean evictLower(int lane) {
+    for (int i = LANES - 1; i > lane; i--) {
+      Payload evicted = lanes[i].pollFirst();
+      if (evicted != null) {
+        size--;
+        free.push(evicted);
+        dropped.incrementAndGet(i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int takeBatch() {
+    int count = 0;
+    for (int i = 0; i < LANES; i++) {
+      for (int j = 0; j < WEIGHTS[i]; j++) {
+        Payload payload = lanes[i].pollFirst();
+        if (payload == null) {
+          break;
+        }
+        batch[count++] = payload;
+      }
+    }
+    size -= count;
+    inBatch.set(count);
+    return count;
+  }
+
+  // Send the batch and flush delegate, false in case shutdown stopped I/O thread.
+  private boolean send(int count) {
+    for (int i = 0; i < count; i++) {
+      sendLock.lock();
+      try {
+        if (!running) {
+          // Rest of the batch is counted as undelivered by shutdown.
+          return false;
+        }
+        try {
+          delegate.transmit(batch[i]);
+          sent.incrementAndGet();
+        } catch (Exception e) {
+          failed.incrementAndGet();
+        }
+        inBatch.decrementAndGet();
+      } finally {
+        sendLock.unlock();
+      }
+    }
+    sendLock.lock();
+    try {
+      if (!running) {
+        return false;
+      }
+      delegate.flush();
+    } catch (Exception e) {
+      failed.incrementAndGet();
+    } finally {
+      sendLock.unlock();
+    }
+    return true;
+  }
+
+  private void drain() {
+    while (true) {
+      int count;
+      lock.lock();
+      try {
+        while (size == 0 && running && !closing) {
+          notEmpty.await(JOIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        // On shutdown queued events are still delivered until queue is empty.
+        if (!running || size == 0) {
+          return;
+        }
+        count = takeBatch();
+        notFull.signalAll();
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        lock.unlock();
+      }
+      if (!send(count)) {
+        return;
+      }
+      lock.lock();
+      try {
+        for (int i = 0; i < count; i++) {
+          if (free.size() < capacity) {
+            free.push(batch[i]);
+          }
+          batch[i] = null;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
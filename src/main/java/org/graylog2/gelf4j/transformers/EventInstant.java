@@ -0,0 +1,79 @@
+package org.graylog2.gelf4j.transformers;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Access to precise event time of Log4j2 2.11+, where {@link LogEvent} has
+ * <code>getInstant()</code> with seconds and nanoseconds of the event. Library is compiled against
+ * older Log4j2, so method is resolved reflectively once.
+ *
+ * @author Andrey Minov
+ */
+final class EventInstant {
+  private static final MethodHandle GET_INSTANT;
+  private static final MethodHandle GET_EPOCH_SECOND;
+  private static final MethodHandle GET_NANO_OF_SECOND;
+
+  static {
+    MethodHandle getInstant = null;
+    MethodHandle getEpochSecond = null;
+    MethodHandle getNanoOfSecond = null;
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> instant = Class.forName("org.apache.logging.log4j.core.time.Instant");
+      getInstant = lookup.findVirtual(LogEvent.class, "getInstant", methodType(instant))
+          .asType(methodType(Object.class, LogEvent.class));
+      getEpochSecond = lookup.findVirtual(instant, "getEpochSecond", methodType(long.class))
+          .asType(methodType(long.class, Object.class));
+      getNanoOfSecond = lookup.findVirtual(instant, "getNanoOfSecond", methodType(int.class))
+          .asType(methodType(int.class, Object.class));
+    } catch (ReflectiveOperationException e) {
+      // Log4j2 before 2.11, only milliseconds are available.
+      getInstant = null;
+    }
+    GET_INSTANT = getInstant;
+    GET_EPOCH_SECOND = getEpochSecond;
+    GET_NANO_OF_SECOND = getNanoOfSecond;
+  }
+
+  private EventInstant() {
+  }
+
+  /**
+   * Check if Log4j2 provides precise event time.
+   *
+   * @return true in case precise time is available.
+   */
+  static boolean isSupported() {
+    return GET_INSTANT != null;
+  }
+
+  /**
+   * Set payload timestamp with microseconds from event, falling back to milliseconds in case
+   * precise time is not available.
+   *
+   * @param event   the event to get time from.
+   * @param payload the payload to set timestamp to.
+   */
+  static void setTimestamp(LogEvent event, Payload payload) {
+    if (GET_INSTANT != null) {
+      try {
+        Object instant = GET_INSTANT.invokeExact(event);
+        if (instant != null) {
+          payload.setTimestampMicros((long) GET_EPOCH_SECOND.invokeExact(instant),
+              (int) GET_NANO_OF_SECOND.invokeExact(instant));
+          return;
+        }
+      } catch (Throwable e) {
+        // Custom event implementation might not support instant, use milliseconds.
+      }
+    }
+    payload.setTimestampMillis(event.getTimeMillis());
+  }
+}
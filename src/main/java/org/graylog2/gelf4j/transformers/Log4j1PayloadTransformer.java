@@ -7,6 +7,7 @@ import static org.graylog2.gelf4j.Constants.FILE_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.LINE_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.LOGGER_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.LOGGER_NDC_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.MESSAGE_BUFFER_SIZE;
 import static org.graylog2.gelf4j.Constants.METHOD_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.THREAD_ATTRIBUTE;
 import static org.graylog2.gelf4j.utils.Validations.isEmpty;
@@ -19,27 +20,56 @@ import java.util.Map;
 
 import org.apache.log4j.Layout;
 import org.apache.log4j.Level;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.PatternConverter;
+import org.apache.log4j.helpers.PatternParser;
 import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.ThrowableInformation;
+import org.graylog2.gelf4j.appenders.FieldFilter;
 import org.graylog2.gelf4j.appenders.LoggingConfiguration;
 import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadPool;
+import org.graylog2.gelf4j.utils.Platform;
 
 /**
  * This is transformer from log4j events version 1 into {@link org.graylog2.gelf4j.message.Payload}
  * GELF to use it later in transmitters.
+ * <p/>
+ * Conversion pattern of {@link PatternLayout} is parsed once and formatted into reused buffer
+ * copied into payload, so transformer must be used under appender lock.
  *
  * @author Andrey Minov
  */
 public class Log4j1PayloadTransformer {
   private static final ThreadLocal<Payload> PAYLOAD_TL = new ThreadLocal<>();
   private LoggingConfiguration loggingConfiguration;
+  private PayloadPool payloadPool;
+  private PatternLayout patternLayout;
+  private String pattern;
+  private PatternConverter converters;
+  private StringBuffer patternBuffer;
 
   public Log4j1PayloadTransformer(LoggingConfiguration loggingConfiguration) {
+    this(loggingConfiguration, null);
+  }
+
+  /**
+   * Instantiates a new transformer.
+   *
+   * @param loggingConfiguration the logging configuration.
+   * @param payloadPool          the pool of payloads, null in case payload is kept per thread.
+   */
+  public Log4j1PayloadTransformer(LoggingConfiguration loggingConfiguration,
+                                  PayloadPool payloadPool) {
     this.loggingConfiguration = loggingConfiguration;
+    this.payloadPool = payloadPool;
   }
 
-  private static Payload getPayload() {
+  private Payload getPayload() {
+    if (payloadPool != null) {
+      return payloadPool.acquire();
+    }
     Payload payload = PAYLOAD_TL.get();
     if (payload == null) {
       payload = new Payload();
@@ -49,6 +79,17 @@ public class Log4j1PayloadTransformer {
     return payload;
   }
 
+  /**
+   * Return payload made by this transformer when it is sent, payload must not be used after.
+   *
+   * @param payload the payload.
+   */
+  public void release(Payload payload) {
+    if (payloadPool != null) {
+      payloadPool.release(payload);
+    }
+  }
+
   /**
    * Make message payload from Log4j event will all required fields.
    *
@@ -59,36 +100,31 @@ public class Log4j1PayloadTransformer {
   public Payload makeMessage(Layout layout, LoggingEvent event) {
     Payload payload = getPayload();
     payload.setVersion(DEFAULT_VERSION);
-    // Timestamp must be transformed into UNIX time. Do not use TimeUnit as it shrink milliseconds.
-    payload.setTimestamp(event.getTimeStamp() / 1000d);
+    // Timestamp is written as UNIX time with fixed number of fractional digits.
+    payload.setTimestampMillis(event.getTimeStamp());
 
     // Insert syslog level of the log4j message.
     Level level = event.getLevel();
     payload.setLevel(level.getSyslogEquivalent());
 
     // Check file and line on which call was made.
-    // Also can add here methods.
-    if (event.locationInformationExists()) {
-      LocationInfo locationInformation = event.getLocationInformation();
-      if (loggingConfiguration.isLogLine()) {
-        payload.addAdditionalField(LINE_ATTRIBUTE, locationInformation.getLineNumber());
-      }
-      if (loggingConfiguration.isLogFile()) {
-        payload.addAdditionalField(FILE_ATTRIBUTE, locationInformation.getFileName());
-      }
-      if (loggingConfiguration.isLogMethod()) {
-        payload.addAdditionalField(METHOD_ATTRIBUTE, locationInformation.getMethodName());
-      }
-      if (loggingConfiguration.isLogClass()) {
-        payload.addAdditionalField(CLASS_ATTRIBUTE, locationInformation.getClassName());
-      }
+    if (loggingConfiguration.isLogLine() || loggingConfiguration.isLogFile()
+        || loggingConfiguration.isLogMethod() || loggingConfiguration.isLogClass()) {
+      addLocation(payload, event);
     }
 
+    // Message is rendered once, event keeps it for message converter of the layout.
     String message = event.getRenderedMessage();
     if (message != null) {
-      message = layout != null ? layout.format(event) : String.valueOf(event.getMessage());
       // Set short message of the application.
-      payload.setShortMessage(message);
+      if (layout == null) {
+        payload.setShortMessage(message);
+      } else if (layout.getClass() == PatternLayout.class
+                 && ((PatternLayout) layout).getConversionPattern() != null) {
+        format((PatternLayout) layout, event, payload.getShortMessage());
+      } else {
+        payload.setShortMessage(layout.format(event));
+      }
     }
 
     // Set full message in case we have some exception.
@@ -122,8 +158,12 @@ public class Log4j1PayloadTransformer {
       @SuppressWarnings("unchecked") Map<String, Object> mdc =
           (Map<String, Object>) event.getProperties();
       if (mdc != null) {
+        FieldFilter filter = loggingConfiguration.getMdcFilter();
         for (Map.Entry<String, Object> entry : mdc.entrySet()) {
-          payload.addAdditionalField(entry.getKey(), String.valueOf(entry.getValue()));
+          String name = filter.apply(entry.getKey());
+          if (name != null) {
+            payload.addAdditionalField(name, entry.getValue());
+          }
         }
       }
     }
@@ -139,4 +179,71 @@ public class Log4j1PayloadTransformer {
 
     return payload;
   }
+
+  // Same as PatternLayout.format, but without String copy of the buffer. Subclasses might create
+  // own converters, so only exact PatternLayout is handled.
+  private void format(PatternLayout layout, LoggingEvent event, StringBuilder target) {
+    String conversionPattern = layout.getConversionPattern();
+    if (layout != patternLayout || !conversionPattern.equals(pattern)) {
+      converters = new PatternParser(conversionPattern).parse();
+      patternLayout = layout;
+      pattern = conversionPattern;
+    }
+    if (patternBuffer == null || patternBuffer.capacity() > MESSAGE_BUFFER_SIZE) {
+      patternBuffer = new StringBuffer(256);
+    }
+    patternBuffer.setLength(0);
+    for (PatternConverter converter = converters; converter != null; converter = converter.next) {
+      converter.format(patternBuffer, event);
+    }
+    target.append(patternBuffer);
+  }
+
+  // Log4j location info keeps line as text, '?' in case it is not available.
+  private static int parseLine(String line) {
+    try {
+      return line != null ? Integer.parseInt(line) : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void addLocation(Payload payload, LoggingEvent event) {
+    int line;
+    String file;
+    String method;
+    String className;
+    if (event.locationInformationExists()) {
+      // Already computed, i.e. by layout of other appender.
+      LocationInfo locationInformation = event.getLocationInformation();
+      line = parseLine(locationInformation.getLineNumber());
+      file = locationInformation.getFileName();
+      method = locationInformation.getMethodName();
+      className = locationInformation.getClassName();
+    } else {
+      // Log4j location info prints and parses stack trace, find caller frame instead.
+      String fqcn = event.getFQNOfLoggerClass();
+      StackTraceElement caller = fqcn != null ? Platform.findCaller(fqcn) : null;
+      if (caller == null) {
+        return;
+      }
+      line = caller.getLineNumber();
+      file = caller.getFileName();
+      method = caller.getMethodName();
+      className = caller.getClassName();
+    }
+    // Line is always sent as number, so it is omitted in case it is not available.
+    if (loggingConfiguration.isLogLine() && line >= 0) {
+      payload.addAdditionalField(LINE_ATTRIBUTE, line);
+    }
+    if (loggingConfiguration.isLogFile()) {
+      payload.addAdditionalField(FILE_ATTRIBUTE, file != null ? file : LocationInfo.NA);
+    }
+    if (loggingConfiguration.isLogMethod()) {
+      payload.addAdditionalField(METHOD_ATTRIBUTE, method);
+    }
+    if (loggingConfiguration.isLogClass()) {
+      payload.addAdditionalField(CLASS_ATTRIBUTE, className);
+    }
+  }
 }
@@ -0,0 +1,117 @@
+package org.graylog2.gelf4j.transformers;
+
+import static org.graylog2.gelf4j.utils.Validations.isValidFieldName;
+
+import java.io.IOException;
+
+import com.jsoniter.output.JsonStream;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.TriConsumer;
+import org.graylog2.gelf4j.appenders.FieldFilter;
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.ContextDataWriter;
+import org.graylog2.gelf4j.message.PayloadEncoder;
+
+/**
+ * Writer of Log4j2 event context data.
+ * <p/>
+ * Context data is iterated with {@link ReadOnlyStringMap#forEach(TriConsumer, Object)} using static
+ * consumers and thread local state object, which is the garbage free way Log4j2 provides.
+ * Keys are filtered and renamed by {@link FieldFilter} before anything is encoded.
+ *
+ * @author Andrey Minov
+ */
+public final class Log4j2ContextDataWriter implements ContextDataWriter {
+  private static final ThreadLocal<State> STATE_TL = new ThreadLocal<>();
+
+  private static final TriConsumer<String, Object, State> CHECK_NAME = (key, value, state) -> {
+    String name = state.filter.apply(key);
+    if (name != null && !isValidFieldName(name)) {
+      state.valid = false;
+    }
+  };
+
+  private static final TriConsumer<String, Object, State> WRITE = (key, value, state) -> {
+    String name = state.filter.apply(key);
+    if (name == null || state.exception != null || state.fields.indexOf(name) >= 0) {
+      return;
+    }
+    try {
+      PayloadEncoder.writeAdditionalField(state.stream, name, value);
+    } catch (IOException e) {
+      state.exception = e;
+    }
+  };
+
+  private static final TriConsumer<String, Object, State> COPY = (key, value, state) -> {
+    String name = state.filter.apply(key);
+    if (name != null && state.fields.indexOf(name) < 0) {
+      state.fields.put(name, value);
+    }
+  };
+
+  private final FieldFilter filter;
+
+  /**
+   * Instantiates a new context data writer.
+   *
+   * @param filter the rules which keys to write and under which names.
+   */
+  public Log4j2ContextDataWriter(FieldFilter filter) {
+    this.filter = filter;
+  }
+
+  private State getState(AdditionalFields fields, JsonStream stream) {
+    State state = STATE_TL.get();
+    if (state == null) {
+      state = new State();
+      STATE_TL.set(state);
+    }
+    state.filter = filter;
+    state.fields = fields;
+    state.stream = stream;
+    state.valid = true;
+    state.exception = null;
+    return state;
+  }
+
+  @Override
+  public boolean checkNames(Object contextData) {
+    State state = getState(null, null);
+    ((ReadOnlyStringMap) contextData).forEach(CHECK_NAME, state);
+    return state.valid;
+  }
+
+  @Override
+  public void write(Object contextData, AdditionalFields fields, JsonStream stream)
+      throws IOException {
+    State state = getState(fields, stream);
+    try {
+      ((ReadOnlyStringMap) contextData).forEach(WRITE, state);
+      if (state.exception != null) {
+        throw state.exception;
+      }
+    } finally {
+      state.fields = null;
+      state.stream = null;
+    }
+  }
+
+  @Override
+  public void copyTo(Object contextData, AdditionalFields fields) {
+    State state = getState(fields, null);
+    try {
+      ((ReadOnlyStringMap) contextData).forEach(COPY, state);
+    } finally {
+      state.fields = null;
+    }
+  }
+
+  private static final class State {
+    private FieldFilter filter;
+    private AdditionalFields fields;
+    private JsonStream stream;
+    private boolean valid;
+    private IOException exception;
+  }
+}
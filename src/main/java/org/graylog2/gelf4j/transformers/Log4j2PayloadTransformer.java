@@ -1,5 +1,6 @@
 package org.graylog2.gelf4j.transformers;
 
+import static org.graylog2.gelf4j.Constants.ARGUMENT_ATTRIBUTE_PREFIX;
 import static org.graylog2.gelf4j.Constants.CLASS_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.DEFAULT_VERSION;
 import static org.graylog2.gelf4j.Constants.FACILITY_ATTRIBUTE;
@@ -7,8 +8,10 @@ import static org.graylog2.gelf4j.Constants.FILE_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.LINE_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.LOGGER_ATTRIBUTE;
 import static org.graylog2.gelf4j.Constants.METHOD_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.TEMPLATE_CACHE_SIZE;
 import static org.graylog2.gelf4j.Constants.THREAD_ATTRIBUTE;
 import static org.graylog2.gelf4j.utils.Validations.isEmpty;
+import static org.graylog2.gelf4j.utils.Validations.isValidFieldName;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -19,11 +22,18 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.net.Severity;
+import org.apache.logging.log4j.message.MapMessage;
 import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+import org.apache.logging.log4j.util.IndexedReadOnlyStringMap;
 import org.apache.logging.log4j.util.ReadOnlyStringMap;
 import org.apache.logging.log4j.util.StringBuilderFormattable;
 import org.graylog2.gelf4j.appenders.LoggingConfiguration;
+import org.graylog2.gelf4j.message.AdditionalFields;
 import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadPool;
+import org.graylog2.gelf4j.message.TemplateCache;
 
 /**
  * This is transformer from log4j events version 2 into {@link org.graylog2.gelf4j.message.Payload}
@@ -33,14 +43,42 @@ import org.graylog2.gelf4j.message.Payload;
  */
 public class Log4j2PayloadTransformer {
   private static final ThreadLocal<Payload> PAYLOAD_TL = new ThreadLocal<>();
-  private static final ThreadLocal<StringBuilder> SB_TL = new ThreadLocal<>();
+  private static final String[] ARGUMENT_NAMES = new String[10];
+
+  static {
+    for (int i = 0; i < ARGUMENT_NAMES.length; i++) {
+      ARGUMENT_NAMES[i] = ARGUMENT_ATTRIBUTE_PREFIX + i;
+    }
+  }
+
   private LoggingConfiguration loggingConfiguration;
+  private Log4j2ContextDataWriter contextDataWriter;
+  private PayloadPool payloadPool;
+  private TemplateCache templateCache;
 
   public Log4j2PayloadTransformer(LoggingConfiguration loggingConfiguration) {
+    this(loggingConfiguration, null);
+  }
+
+  /**
+   * Instantiates a new transformer.
+   *
+   * @param loggingConfiguration the logging configuration.
+   * @param payloadPool          the pool of payloads, null in case payload is kept per thread.
+   */
+  public Log4j2PayloadTransformer(LoggingConfiguration loggingConfiguration,
+                                  PayloadPool payloadPool) {
     this.loggingConfiguration = loggingConfiguration;
+    this.contextDataWriter = new Log4j2ContextDataWriter(loggingConfiguration.getMdcFilter());
+    this.payloadPool = payloadPool;
+    this.templateCache =
+        loggingConfiguration.isLogTemplate() ? new TemplateCache(TEMPLATE_CACHE_SIZE) : null;
   }
 
-  private static Payload getPayload() {
+  private Payload getPayload() {
+    if (payloadPool != null) {
+      return payloadPool.acquire();
+    }
     Payload payload = PAYLOAD_TL.get();
     if (payload == null) {
       payload = new Payload();
@@ -50,14 +88,15 @@ public class Log4j2PayloadTransformer {
     return payload;
   }
 
-  private static StringBuilder getMessageStringBuilder() {
-    StringBuilder builder = SB_TL.get();
-    if (builder == null) {
-      builder = new StringBuilder();
-      SB_TL.set(builder);
+  /**
+   * Return payload made by this transformer when it is sent, payload must not be used after.
+   *
+   * @param payload the payload.
+   */
+  public void release(Payload payload) {
+    if (payloadPool != null) {
+      payloadPool.release(payload);
     }
-    builder.setLength(0);
-    return builder;
   }
 
   /**
@@ -65,14 +104,18 @@ public class Log4j2PayloadTransformer {
    *
    * @param layout                the layout of the formatter event.
    * @param event                 the event from log4j appender system
-   * @param gcFree                true in case we have to reuse thread local string builder to avoid GC
+   * @param gcFree                true in case message is formatted into reused payload buffer to avoid GC
    * @return the GELF payload message with additional fields.
    */
   public Payload makeMessage(Layout<? extends LogEvent> layout, LogEvent event, boolean gcFree) {
     Payload payload = getPayload();
     payload.setVersion(DEFAULT_VERSION);
-    // Timestamp must be transformed into UNIX time. Do not use TimeUnit as it shrink milliseconds.
-    payload.setTimestamp(event.getTimeMillis() / 1000d);
+    // Timestamp is written as UNIX time with fixed number of fractional digits.
+    if (loggingConfiguration.isPreciseTimestamp()) {
+      EventInstant.setTimestamp(event, payload);
+    } else {
+      payload.setTimestampMillis(event.getTimeMillis());
+    }
 
     // Insert syslog level of the log4j message.
     Level level = event.getLevel();
@@ -82,8 +125,9 @@ public class Log4j2PayloadTransformer {
     // Also can add here methods.
     if (event.isIncludeLocation()) {
       StackTraceElement source = event.getSource();
-      if (loggingConfiguration.isLogLine()) {
-        payload.addAdditionalField(LINE_ATTRIBUTE, Integer.toString(source.getLineNumber()));
+      // Line is negative for native methods or when it is not available.
+      if (loggingConfiguration.isLogLine() && source.getLineNumber() >= 0) {
+        payload.addAdditionalField(LINE_ATTRIBUTE, source.getLineNumber());
       }
       if (loggingConfiguration.isLogFile()) {
         payload.addAdditionalField(FILE_ATTRIBUTE, source.getFileName());
@@ -103,11 +147,19 @@ public class Log4j2PayloadTransformer {
       if (message instanceof CharSequence) {
         payload.setShortMessage((CharSequence) message);
       } else if (gcFree && message instanceof StringBuilderFormattable) {
-        StringBuilder messageBuffer = getMessageStringBuilder();
-        ((StringBuilderFormattable) message).formatTo(messageBuffer);
-        payload.setShortMessage(messageBuffer);
+        // Payload is cleared, so message is formatted directly into its short message.
+        ((StringBuilderFormattable) message).formatTo(payload.getShortMessage());
       }
     }
+    // Events of the same parameterized message are grouped by template.
+    if (templateCache != null) {
+      addTemplate(payload, event.getMessage());
+    }
+    // Map and structured data messages carry typed key-values, send them as additional fields.
+    if (loggingConfiguration.isLogMapValues() && event.getMessage() instanceof MapMessage) {
+      addMapValues(payload, ((MapMessage) event.getMessage()).getIndexedReadOnlyStringMap(),
+          loggingConfiguration.isInferMapTypes());
+    }
     // Set full message in case we have some exception.
     if (event.getThrown() != null && loggingConfiguration.isLogExceptions()) {
       StringWriter sw = new StringWriter();
@@ -134,10 +186,10 @@ public class Log4j2PayloadTransformer {
     }
 
     if (loggingConfiguration.isLogMdcValues()) {
-      // Get MDC and add a GELF field for each key/value pair
+      // Reference MDC, encoder writes a GELF field for each key/value pair.
       ReadOnlyStringMap mdc = event.getContextData();
-      if (mdc != null) {
-        mdc.forEach(payload::addAdditionalField);
+      if (mdc != null && !mdc.isEmpty()) {
+        payload.setContextData(contextDataWriter, mdc);
       }
     }
     // Log external fields
@@ -148,4 +200,42 @@ public class Log4j2PayloadTransformer {
     return payload;
   }
 
+  // Template is encoded once per cache entry, parameters are sent as typed arg0..n fields.
+  private void addTemplate(Payload payload, Message message) {
+    boolean parameterized = message instanceof ParameterizedMessage
+                            || message instanceof ReusableParameterizedMessage;
+    if (!parameterized || message.getFormat() == null) {
+      return;
+    }
+    payload.setTemplate(templateCache.encode(message.getFormat()));
+    Object[] parameters = message.getParameters();
+    int count = parameters != null ? parameters.length : 0;
+    // Trailing exception is not a parameter, it is sent as full message.
+    if (count > 0 && message.getThrowable() != null && parameters[count - 1] instanceof Throwable) {
+      count--;
+    }
+    for (int i = 0; i < count; i++) {
+      String name = i < ARGUMENT_NAMES.length ? ARGUMENT_NAMES[i] : ARGUMENT_ATTRIBUTE_PREFIX + i;
+      payload.addAdditionalField(name, parameters[i]);
+    }
+  }
+
+  // Log4j 2.8 map message keeps values as strings. Numbers and booleans are detected by their text
+  // only when enabled, as type of the field would change between events with different values.
+  // Keys which are not valid GELF field names are skipped instead of rejecting the whole message.
+  private static void addMapValues(Payload payload, IndexedReadOnlyStringMap values,
+                                   boolean inferTypes) {
+    AdditionalFields additionalFields = payload.getAdditionalFields();
+    for (int i = 0; i < values.size(); i++) {
+      String key = values.getKeyAt(i);
+      if (isValidFieldName(key)) {
+        Object value = values.getValueAt(i);
+        if (inferTypes && value instanceof String) {
+          additionalFields.putInferred(key, (String) value);
+        } else {
+          additionalFields.put(key, value);
+        }
+      }
+    }
+  }
 }
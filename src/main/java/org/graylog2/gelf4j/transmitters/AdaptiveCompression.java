@@ -0,0 +1,186 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.Constants.MAX_UDP_DATAGRAM_SIZE;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Adaptive decision whether to compress UDP message and with which level.
+ * <p/>
+ * Messages are split into buckets by power of two of their size. For each bucket moving average of
+ * achieved compression ratio and deflate cost in nanoseconds per byte is kept. Every
+ * {@link #SAMPLE_INTERVAL}-th message of the bucket is compressed to refresh the averages,
+ * others are compressed only when bucket ratio is good enough. Messages which would be chunked
+ * uncompressed are always compressed, as every avoided chunk saves a datagram and the risk of losing
+ * the whole message. When deflate on configured level costs more than CPU budget,
+ * {@link Deflater#BEST_SPEED} is used instead.
+ * <p/>
+ * Decisions and updates are made under transmitter lock, metrics might be read from any thread
+ * and are eventually consistent. Compressed and skipped messages are counted when transmitter
+ * sends them, as compressed bytes are discarded when they are not smaller or message is truncated
+ * and compressed again.
+ *
+ * @author Andrey Minov
+ */
+public class AdaptiveCompression {
+  /**
+   * Number of size buckets, last one collects all messages of 2^(BUCKETS - 1) bytes and bigger.
+   */
+  public static final int BUCKETS = 20;
+  /**
+   * Every message with this sequence number in the bucket is compressed to sample the ratio.
+   */
+  public static final int SAMPLE_INTERVAL = 32;
+  /**
+   * Messages smaller than this are never compressed, header overhead eats the gain.
+   */
+  public static final int MIN_SIZE = 128;
+  /**
+   * Compressed to original size ratio below which compression is worth it.
+   */
+  public static final double RATIO_THRESHOLD = 0.8;
+  /**
+   * Deflate cost in nanoseconds per input byte after which fast level is used.
+   */
+  public static final double NANOS_PER_BYTE_BUDGET = 20;
+
+  private static final double ALPHA = 0.2;
+
+  private final int level;
+  private final long[] seen;
+  private final double[] ratio;
+  private final double[] nanosPerByte;
+  private final AtomicLong compressed;
+  private final AtomicLong skipped;
+  private final AtomicLong chunksAvoided;
+
+  /**
+   * Instantiates a new adaptive compression.
+   *
+   * @param level ZLIB level used for compression when CPU budget allows it.
+   */
+  public AdaptiveCompression(int level) {
+    this.level = level;
+    this.seen = new long[BUCKETS];
+    this.ratio = new double[BUCKETS];
+    this.nanosPerByte = new double[BUCKETS];
+    this.compressed = new AtomicLong();
+    this.skipped = new AtomicLong();
+    this.chunksAvoided = new AtomicLong();
+  }
+
+  /**
+   * Gets bucket of the message size.
+   *
+   * @param size the size of message in bytes.
+   * @return the bucket index from 0 to {@link #BUCKETS} - 1.
+   */
+  public static int bucketOf(int size) {
+    return Math.min(BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(Math.max(1, size)));
+  }
+
+  /**
+   * Decide whether message must be compressed.
+   *
+   * @param size the size of uncompressed message in bytes.
+   * @return the ZLIB level to compress message with or -1 in case message must be sent as is.
+   */
+  public int decide(int size) {
+    int bucket = bucketOf(size);
+    long sequence = seen[bucket]++;
+    boolean chunked = size > MAX_UDP_DATAGRAM_SIZE;
+    if (!chunked && size < MIN_SIZE) {
+      return -1;
+    }
+    boolean sample = sequence % SAMPLE_INTERVAL == 0;
+    if (!chunked && !sample && ratio[bucket] > RATIO_THRESHOLD) {
+      return -1;
+    }
+    return nanosPerByte[bucket] > NANOS_PER_BYTE_BUDGET ? Deflater.BEST_SPEED : level;
+  }
+
+  /**
+   * Record result of compression.
+   *
+   * @param size           the size of uncompressed message in bytes.
+   * @param compressedSize the size of compressed message in bytes.
+   * @param nanos          the time spent on compression.
+   */
+  public void record(int size, int compressedSize, long nanos) {
+    int bucket = bucketOf(size);
+    double currentRatio = (double) compressedSize / size;
+    double currentCost = (double) nanos / size;
+    if (ratio[bucket] == 0) {
+      ratio[bucket] = currentRatio;
+      nanosPerByte[bucket] = currentCost;
+    } else {
+      ratio[bucket] += ALPHA * (currentRatio - ratio[bucket]);
+      nanosPerByte[bucket] += ALPHA * (currentCost - nanosPerByte[bucket]);
+    }
+  }
+
+  /**
+   * Count message sent by transmitter.
+   *
+   * @param size     the size of uncompressed message in bytes.
+   * @param sentSize the size of sent message in bytes, smaller in case it was compressed.
+   */
+  public void sent(int size, int sentSize) {
+    if (sentSize >= size) {
+      skipped.incrementAndGet();
+      return;
+    }
+    compressed.incrementAndGet();
+    if (size > MAX_UDP_DATAGRAM_SIZE && sentSize <= MAX_UDP_DATAGRAM_SIZE) {
+      chunksAvoided.incrementAndGet();
+    }
+  }
+
+  /**
+   * Gets moving average of compressed to original size ratio of the bucket.
+   *
+   * @param bucket the bucket index, see {@link #bucketOf(int)}.
+   * @return the ratio or 0 in case nothing was compressed in the bucket yet.
+   */
+  public double getRatio(int bucket) {
+    return ratio[bucket];
+  }
+
+  /**
+   * Gets moving average of deflate cost of the bucket.
+   *
+   * @param bucket the bucket index, see {@link #bucketOf(int)}.
+   * @return the nanoseconds spent per input byte.
+   */
+  public double getNanosPerByte(int bucket) {
+    return nanosPerByte[bucket];
+  }
+
+  /**
+   * Gets number of messages sent compressed.
+   *
+   * @return the number of compressed messages.
+   */
+  public long getCompressed() {
+    return compressed.get();
+  }
+
+  /**
+   * Gets number of messages sent uncompressed.
+   *
+   * @return the number of uncompressed messages.
+   */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  /**
+   * Gets number of messages which fit into single datagram only thanks to compression.
+   *
+   * @return the number of messages which avoided chunking.
+   */
+  public long getChunksAvoided() {
+    return chunksAvoided.get();
+  }
+}
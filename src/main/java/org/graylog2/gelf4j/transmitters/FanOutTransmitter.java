@@ -0,0 +1,139 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Transmitter which sends every payload to several sinks, i.e. to Graylog and to ECS collector
+ * during migration between backends.
+ * <p/>
+ * Sinks are called one after another from caller thread, so to send in parallel and to keep slow
+ * sink from delaying others every sink should be queued, see
+ * {@link org.graylog2.gelf4j.queue.PriorityLaneTransmitter}. Failure of one sink does not stop
+ * others from receiving payload, the first failure is rethrown with others suppressed.
+ *
+ * @author Andrey Minov
+ */
+public class FanOutTransmitter implements PayloadTransmitter {
+  private final PayloadTransmitter[] sinks;
+
+  /**
+   * Instantiates a new fan-out transmitter.
+   *
+   * @param sinks the transmitters each payload is sent to.
+   */
+  public FanOutTransmitter(List<? extends PayloadTransmitter> sinks) {
+    if (sinks.isEmpty()) {
+      throw new IllegalArgumentException("At least one sink must be provided");
+    }
+    this.sinks = sinks.toArray(new PayloadTransmitter[0]);
+  }
+
+  @Override
+  public void open() throws IOException {
+    IOException failure = null;
+    for (PayloadTransmitter sink : sinks) {
+      try {
+        sink.open();
+      } catch (IOException e) {
+        failure = suppress(failure, e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void transmit(Payload payload) throws Exception {
+    Exception failure = null;
+    for (PayloadTransmitter sink : sinks) {
+      try {
+        sink.transmit(payload);
+      } catch (Exception e) {
+        failure = suppress(failure, e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    IOException failure = null;
+    for (PayloadTransmitter sink : sinks) {
+      try {
+        sink.flush();
+      } catch (IOException e) {
+        failure = suppress(failure, e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    shutdown(0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Shutdown sinks one after another within common timeout.
+   *
+   * @return the total number of payloads not delivered by all sinks.
+   */
+  @Override
+  public long shutdown(long timeout, TimeUnit unit) throws IOException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long undelivered = 0;
+    IOException failure = null;
+    for (PayloadTransmitter sink : sinks) {
+      long remaining = Math.max(0, deadline - System.nanoTime());
+      try {
+        undelivered += sink.shutdown(remaining, TimeUnit.NANOSECONDS);
+      } catch (IOException e) {
+        failure = suppress(failure, e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return undelivered;
+  }
+
+  /**
+   * Gets sinks of this transmitter.
+   *
+   * @return the copy of sinks list.
+   */
+  public List<PayloadTransmitter> getSinks() {
+    List<PayloadTransmitter> result = new ArrayList<>(sinks.length);
+    for (PayloadTransmitter sink : sinks) {
+      result.add(sink);
+    }
+    return result;
+  }
+
+  @Override
+  public List<SocketTelemetry> getSocketTelemetry() {
+    List<SocketTelemetry> result = new ArrayList<>();
+    for (PayloadTransmitter sink : sinks) {
+      result.addAll(sink.getSocketTelemetry());
+    }
+    return result;
+  }
+
+  private static <E extends Exception> E suppress(E failure, E e) {
+    if (failure == null) {
+      return e;
+    }
+    failure.addSuppressed(e);
+    return failure;
+  }
+}
@@ -0,0 +1,37 @@
+package org.graylog2.gelf4j.transmitters;
+
+/**
+ * Compression of messages sent with {@link Framing#VARINT} framing.
+ *
+ * @author Andrey Minov
+ */
+public enum FrameCompression {
+  /**
+   * Messages are sent as is.
+   */
+  NONE,
+  /**
+   * Every message is compressed with ZLIB into separate frame.
+   */
+  FRAME,
+  /**
+   * Messages are collected into batch until transmitter is flushed or batch limit is reached,
+   * whole batch is compressed with ZLIB into one frame. Gives best ratio as messages share dictionary.
+   * Appenders flush after every event unless queue is used, so batches need the queue.
+   */
+  BATCH;
+
+  /**
+   * Parse compression from configuration value ignoring case.
+   *
+   * @param value the configuration value, might be null.
+   * @return the compression or {@link #NONE} in case value is empty.
+   * @throws IllegalArgumentException when value is not known compression name.
+   */
+  public static FrameCompression parse(String value) {
+    if (value == null || value.isEmpty()) {
+      return NONE;
+    }
+    return valueOf(value.trim().toUpperCase());
+  }
+}
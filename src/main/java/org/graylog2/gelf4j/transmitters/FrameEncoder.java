@@ -0,0 +1,158 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Encoder of serialized messages into frames of stream transports according to {@link Framing}
+ * and {@link FrameCompression}. Buffers are reused between messages.
+ * <p/>
+ * Not thread safe, must be guarded by transmitter lock. Deflater holds native memory, so encoder
+ * must be ended when transmitter is closed.
+ *
+ * @author Andrey Minov
+ */
+class FrameEncoder {
+  private static final int INITIAL_SIZE = 8192;
+
+  private final Framing framing;
+  private final FrameCompression compression;
+  private final int batchLimit;
+  private final Deflater deflater;
+  private ByteBuffer frame;
+  private ByteBuffer batch;
+  private byte[] deflated;
+  private boolean ended;
+
+  /**
+   * Instantiates a new frame encoder.
+   *
+   * @param framing          the framing of messages.
+   * @param compression      the compression of messages, requires {@link Framing#VARINT} framing.
+   * @param compressionLevel ZLIB level of compression from 1 to 9.
+   * @param batchLimit       the size of batch in bytes after which it is compressed and sent without waiting
+   *                         for flush.
+   */
+  FrameEncoder(Framing framing, FrameCompression compression, int compressionLevel,
+               int batchLimit) {
+    if (compression != FrameCompression.NONE && framing != Framing.VARINT) {
+      throw new IllegalArgumentException("Compression is supported only with varint framing");
+    }
+    this.framing = framing;
+    this.compression = compression;
+    this.batchLimit = batchLimit;
+    this.deflater = compression == FrameCompression.NONE ? null : new Deflater(compressionLevel);
+    this.frame = ByteBuffer.allocate(INITIAL_SIZE);
+  }
+
+  private static ByteBuffer ensure(ByteBuffer buffer, int required) {
+    if (buffer != null && buffer.capacity() >= required) {
+      return buffer;
+    }
+    int capacity = buffer == null ? INITIAL_SIZE : buffer.capacity();
+    while (capacity < required) {
+      capacity *= 2;
+    }
+    ByteBuffer grown = ByteBuffer.allocate(capacity);
+    if (buffer != null) {
+      buffer.flip();
+      grown.put(buffer);
+    }
+    return grown;
+  }
+
+  /**
+   * Encode message into frame.
+   *
+   * @param message the serialized message.
+   * @return the frame ready to be written or null in case message is kept in batch.
+   */
+  ByteBuffer encode(byte[] message) {
+    ensureNotEnded();
+    switch (compression) {
+      case NONE:
+        frame = ensure(frame, message.length + framing.overhead());
+        frame.clear();
+        framing.writeHeader(frame, message.length);
+        frame.put(message);
+        framing.writeTrailer(frame);
+        frame.flip();
+        return frame;
+      case FRAME:
+        return compressedFrame(Framing.FLAG_DEFLATE, message, message.length);
+      default:
+        batch = ensure(batch, (batch == null ? 0 : batch.position()) + message.length
+                              + Framing.MAX_VARINT_SIZE);
+        Framing.writeVarint(batch, message.length);
+        batch.put(message);
+        return batch.position() >= batchLimit ? finish() : null;
+    }
+  }
+
+  /**
+   * Compress pending batch into frame.
+   *
+   * @return the frame ready to be written or null in case there is no pending messages.
+   */
+  ByteBuffer finish() {
+    ensureNotEnded();
+    if (batch == null || batch.position() == 0) {
+      return null;
+    }
+    ByteBuffer result =
+        compressedFrame(Framing.FLAG_DEFLATE | Framing.FLAG_BATCH, batch.array(), batch.position());
+    batch.clear();
+    return result;
+  }
+
+  /**
+   * Drop pending batch, for example when connection is lost.
+   */
+  void reset() {
+    if (batch != null) {
+      batch.clear();
+    }
+  }
+
+  /**
+   * Release native memory of deflater, encoder cannot be used after.
+   */
+  void end() {
+    if (!ended) {
+      ended = true;
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  private void ensureNotEnded() {
+    if (ended) {
+      throw new IllegalStateException("Frame encoder is ended, transmitter is closed");
+    }
+  }
+
+  private ByteBuffer compressedFrame(int flags, byte[] data, int length) {
+    deflater.reset();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+    if (deflated == null) {
+      deflated = new byte[Math.max(INITIAL_SIZE, length / 2)];
+    }
+    int size = 0;
+    while (!deflater.finished()) {
+      if (size == deflated.length) {
+        deflated = Arrays.copyOf(deflated, deflated.length * 2);
+      }
+      size += deflater.deflate(deflated, size, deflated.length - size);
+    }
+    frame = ensure(frame, size + 1 + Framing.MAX_VARINT_SIZE);
+    frame.clear();
+    frame.put((byte) flags);
+    Framing.writeVarint(frame, size);
+    frame.put(deflated, 0, size);
+    frame.flip();
+    return frame;
+  }
+}
@@ -0,0 +1,168 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Framing of GELF messages sent over stream transports.
+ *
+ * @author Andrey Minov
+ */
+public enum Framing {
+  /**
+   * Each message is followed by null byte (\0). This is the only framing Graylog GELF TCP input supports.
+   */
+  NULL_DELIMITED {
+    @Override
+    public int overhead() {
+      return 1;
+    }
+
+    @Override
+    public void writeHeader(ByteBuffer buffer, int length) {
+    }
+
+    @Override
+    public void writeTrailer(ByteBuffer buffer) {
+      buffer.put((byte) 0);
+    }
+  },
+  /**
+   * Each message is followed by new line (\n), i.e. NDJSON for log shippers. JSON strings escape
+   * new lines, so they never appear inside of message.
+   */
+  NEWLINE_DELIMITED {
+    @Override
+    public int overhead() {
+      return 1;
+    }
+
+    @Override
+    public void writeHeader(ByteBuffer buffer, int length) {
+    }
+
+    @Override
+    public void writeTrailer(ByteBuffer buffer) {
+      buffer.put((byte) '\n');
+    }
+  },
+  /**
+   * Each message is preceded by its length in bytes as 4 byte big endian integer.
+   * Supported by local relays and log shippers, allows reading frame without scanning for delimiter.
+   */
+  LENGTH_PREFIXED {
+    @Override
+    public int overhead() {
+      return Integer.BYTES;
+    }
+
+    @Override
+    public void writeHeader(ByteBuffer buffer, int length) {
+      buffer.putInt(length);
+    }
+
+    @Override
+    public void writeTrailer(ByteBuffer buffer) {
+    }
+  },
+  /**
+   * Each message is preceded by flags byte and its length in bytes as unsigned varint (LEB128).
+   * Flags tell whether body is compressed with ZLIB and whether it is a batch of varint prefixed messages,
+   * see {@link FrameCompression}. Not supported by Graylog inputs, only by own relays.
+   */
+  VARINT {
+    @Override
+    public int overhead() {
+      return 1 + MAX_VARINT_SIZE;
+    }
+
+    @Override
+    public void writeHeader(ByteBuffer buffer, int length) {
+      buffer.put((byte) 0);
+      writeVarint(buffer, length);
+    }
+
+    @Override
+    public void writeTrailer(ByteBuffer buffer) {
+    }
+  };
+
+  /**
+   * Flag of {@link #VARINT} frame which body is compressed with ZLIB.
+   */
+  public static final int FLAG_DEFLATE = 0x01;
+  /**
+   * Flag of {@link #VARINT} frame which body is a sequence of varint prefixed messages.
+   */
+  public static final int FLAG_BATCH = 0x02;
+  /**
+   * Maximum size of 32 bit unsigned varint.
+   */
+  public static final int MAX_VARINT_SIZE = 5;
+
+  /**
+   * Write value as unsigned varint: 7 bits per byte, least significant first,
+   * high bit set on all bytes except the last one.
+   *
+   * @param buffer the buffer to write into.
+   * @param value  the non negative value.
+   */
+  public static void writeVarint(ByteBuffer buffer, int value) {
+    int rest = value;
+    while ((rest & ~0x7F) != 0) {
+      buffer.put((byte) ((rest & 0x7F) | 0x80));
+      rest >>>= 7;
+    }
+    buffer.put((byte) rest);
+  }
+
+  /**
+   * Parse framing from configuration value: <code>null</code>, <code>newline</code>,
+   * <code>length</code> or <code>varint</code>, ignoring case.
+   *
+   * @param value the configuration value, might be null.
+   * @return the framing or {@link #NULL_DELIMITED} in case value is empty.
+   * @throws IllegalArgumentException when value is not known framing.
+   */
+  public static Framing parse(String value) {
+    if (value == null || value.isEmpty()) {
+      return NULL_DELIMITED;
+    }
+    switch (value.trim().toLowerCase()) {
+      case "null":
+      case "null_delimited":
+        return NULL_DELIMITED;
+      case "newline":
+      case "newline_delimited":
+        return NEWLINE_DELIMITED;
+      case "length":
+      case "length_prefixed":
+        return LENGTH_PREFIXED;
+      case "varint":
+        return VARINT;
+      default:
+        throw new IllegalArgumentException("Unknown framing: " + value);
+    }
+  }
+
+  /**
+   * Gets maximum number of bytes framing adds to every message.
+   *
+   * @return the framing overhead in bytes.
+   */
+  public abstract int overhead();
+
+  /**
+   * Write frame header before message.
+   *
+   * @param buffer the buffer to write into.
+   * @param length the length of message in bytes.
+   */
+  public abstract void writeHeader(ByteBuffer buffer, int length);
+
+  /**
+   * Write frame trailer after message.
+   *
+   * @param buffer the buffer to write into.
+   */
+  public abstract void writeTrailer(ByteBuffer buffer);
+}
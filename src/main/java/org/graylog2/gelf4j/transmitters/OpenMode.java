@@ -0,0 +1,35 @@
+package org.graylog2.gelf4j.transmitters;
+
+/**
+ * When appender opens connection to the server, see {@link OpenModeTransmitter}.
+ *
+ * @author Andrey Minov
+ */
+public enum OpenMode {
+  /**
+   * Connect when appender is started, startup waits for connection up to socket timeout.
+   */
+  EAGER_BLOCKING,
+  /**
+   * Start connecting when appender is started but in background, events are buffered meanwhile.
+   */
+  EAGER_ASYNC,
+  /**
+   * Connect when the first event is sent.
+   */
+  LAZY;
+
+  /**
+   * Parse open mode from configuration value, i.e. <code>eager-async</code>, ignoring case.
+   *
+   * @param value the configuration value, might be null.
+   * @return the open mode or {@link #EAGER_BLOCKING} in case value is empty.
+   * @throws IllegalArgumentException when value is not known mode.
+   */
+  public static OpenMode parse(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return EAGER_BLOCKING;
+    }
+    return valueOf(value.trim().toUpperCase().replace('-', '_'));
+  }
+}
@@ -0,0 +1,210 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Transmitter opening connection of the delegate according to {@link OpenMode}, so unreachable
+ * server does not delay application startup.
+ * <p/>
+ * With {@link OpenMode#EAGER_ASYNC} connection is opened by background thread, events sent
+ * meanwhile are copied into bounded buffer and delivered in order once connection is open or
+ * failed, in the last case delegate reconnects on send. Events which do not fit into buffer are
+ * dropped. With {@link OpenMode#LAZY} connection is not opened in advance, delegate connects when
+ * the first event is sent. Transports reconnect on send anyway, so both modes keep their
+ * behaviour on failures.
+ *
+ * @author Andrey Minov
+ */
+public class OpenModeTransmitter implements PayloadTransmitter {
+  private final OpenMode mode;
+  private final int bufferSize;
+  private final PayloadTransmitter delegate;
+  private final ThreadFactory threadFactory;
+  private final ReentrantLock lock;
+  private final Condition opened;
+  private final ArrayDeque<Payload> buffer;
+  private final AtomicLong dropped;
+  private boolean connecting;
+
+  /**
+   * Instantiates a new open mode transmitter.
+   *
+   * @param mode          the mode of opening the connection.
+   * @param bufferSize    the maximum number of events buffered while connection is opened in
+   *                      background.
+   * @param delegate      actual transmitter for the payload
+   * @param threadFactory the factory of thread opening connection in background.
+   */
+  public OpenModeTransmitter(OpenMode mode, int bufferSize, PayloadTransmitter delegate,
+                             ThreadFactory threadFactory) {
+    this.mode = mode;
+    this.bufferSize = bufferSize;
+    this.delegate = delegate;
+    this.threadFactory = threadFactory;
+    this.lock = new ReentrantLock();
+    this.opened = lock.newCondition();
+    this.buffer = new ArrayDeque<>();
+    this.dropped = new AtomicLong();
+  }
+
+  @Override
+  public void open() throws IOException {
+    if (mode == OpenMode.EAGER_BLOCKING) {
+      delegate.open();
+    } else if (mode == OpenMode.EAGER_ASYNC) {
+      lock.lock();
+      try {
+        if (!connecting) {
+          connecting = true;
+          threadFactory.newThread(this::connect).start();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void connect() {
+    try {
+      delegate.open();
+    } catch (IOException | RuntimeException e) {
+      // Delegate reconnects when buffered events are sent.
+    }
+    // Events keep being buffered until the buffer is drained, so order is kept.
+    while (true) {
+      Payload payload;
+      lock.lock();
+      try {
+        payload = buffer.poll();
+        if (payload == null) {
+          connecting = false;
+          opened.signalAll();
+          break;
+        }
+      } finally {
+        lock.unlock();
+      }
+      try {
+        delegate.transmit(payload);
+      } catch (Exception e) {
+        dropped.incrementAndGet();
+      }
+    }
+    try {
+      delegate.flush();
+    } catch (IOException | RuntimeException e) {
+      // Buffered frames are sent with the next event.
+    }
+  }
+
+  @Override
+  public void transmit(Payload payload) throws Exception {
+    if (mode == OpenMode.EAGER_ASYNC && buffer(payload)) {
+      return;
+    }
+    delegate.transmit(payload);
+  }
+
+  // Returns true in case connection is being opened and payload is buffered or dropped.
+  private boolean buffer(Payload payload) {
+    lock.lock();
+    try {
+      if (!connecting) {
+        return false;
+      }
+      if (buffer.size() < bufferSize) {
+        Payload copy = new Payload();
+        copy.copyFrom(payload);
+        buffer.addLast(copy);
+      } else {
+        dropped.incrementAndGet();
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    lock.lock();
+    try {
+      if (connecting) {
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+    delegate.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    shutdown(0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Wait until background connect delivers buffered events, then shutdown delegate.
+   * Events which are still buffered when timeout expires are discarded.
+   */
+  @Override
+  public long shutdown(long timeout, TimeUnit unit) throws IOException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long undelivered;
+    lock.lock();
+    try {
+      long remaining;
+      while (connecting && (remaining = deadline - System.nanoTime()) > 0) {
+        opened.awaitNanos(remaining);
+      }
+      undelivered = buffer.size();
+      buffer.clear();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      undelivered = buffer.size();
+      buffer.clear();
+    } finally {
+      lock.unlock();
+    }
+    long remaining = Math.max(0, deadline - System.nanoTime());
+    return undelivered + delegate.shutdown(remaining, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Gets number of events dropped because buffer was full or they failed to send after
+   * background connect.
+   *
+   * @return the number of dropped events.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Gets number of events waiting for background connect.
+   *
+   * @return the number of buffered events.
+   */
+  public int getBuffered() {
+    lock.lock();
+    try {
+      return buffer.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public List<SocketTelemetry> getSocketTelemetry() {
+    return delegate.getSocketTelemetry();
+  }
+}
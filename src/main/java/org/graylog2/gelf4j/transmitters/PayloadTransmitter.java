@@ -2,13 +2,16 @@ package org.graylog2.gelf4j.transmitters;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.graylog2.gelf4j.message.Payload;
 
 /**
  * Transmitter for messages to Greylog server.
  * <p/>
- * Provided implementations are {@link TcpTransmitter} and {@link UdpTransmitter}.
+ * Provided implementations are {@link TcpTransmitter}, {@link TlsTransmitter} and {@link UdpTransmitter}.
  *
  * @author Andrey Minov
  */
@@ -28,4 +31,39 @@ public interface PayloadTransmitter extends Closeable {
    */
   default void open() throws IOException {
   }
+
+  /**
+   * Write out payloads which were transmitted but kept buffered by transmitter,
+   * for example to pack several frames into one TLS record.
+   * Transmitters which write every payload immediately do nothing.
+   *
+   * @throws IOException when IO operation falls.
+   */
+  default void flush() throws IOException {
+  }
+
+  /**
+   * Close transmitter gracefully: stop accepting payloads, send queued and buffered ones and wait
+   * until they are delivered, but not longer than given timeout.
+   * Transmitters which do not keep payloads just close.
+   *
+   * @param timeout the maximum time to wait, 0 to close without waiting.
+   * @param unit    the unit of the timeout.
+   * @return the number of payloads which were not delivered.
+   * @throws IOException when IO operation falls.
+   */
+  default long shutdown(long timeout, TimeUnit unit) throws IOException {
+    close();
+    return 0;
+  }
+
+  /**
+   * Gets telemetry of connections used by this transmitter, wrapping transmitters return
+   * telemetry of their delegates.
+   *
+   * @return the telemetry per connection, empty in case transmitter does not collect it.
+   */
+  default List<SocketTelemetry> getSocketTelemetry() {
+    return Collections.emptyList();
+  }
 }
@@ -0,0 +1,188 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Telemetry of one connection: writes, partial writes, time spent waiting for full send buffer,
+ * datagrams rejected by kernel and effective size of <code>SO_SNDBUF</code>, with optional
+ * auto-tuning of the send buffer.
+ * <p/>
+ * JDK does not expose how much of the send buffer is occupied, so pressure is observed by its
+ * effects: TCP writes which accept only part of the frame or nothing and wait for the socket, and
+ * UDP datagrams which are not accepted by full buffer and dropped. With auto-tuning every such event
+ * doubles the send buffer until maximum size is reached. Tuned size survives reconnects.
+ * <p/>
+ * Events are recorded under transmitter lock, metrics might be read from any thread and are
+ * eventually consistent.
+ *
+ * @author Andrey Minov
+ */
+public class SocketTelemetry {
+  /**
+   * Minimum size of send buffer auto-tuning starts from in case effective size is unknown.
+   */
+  public static final int MIN_SEND_BUFFER_SIZE = 8192;
+
+  private final String connection;
+  private final int maxSendBufferSize;
+  private volatile int requestedSendBufferSize;
+  private volatile int sendBufferSize;
+  private final AtomicLong connects;
+  private final AtomicLong writes;
+  private final AtomicLong bytes;
+  private final AtomicLong partialWrites;
+  private final AtomicLong stalls;
+  private final AtomicLong stallNanos;
+  private final AtomicLong dropped;
+  private final AtomicLong growths;
+
+  /**
+   * Instantiates a new socket telemetry.
+   *
+   * @param connection        the name of the connection, i.e. transport, host and port.
+   * @param sendBufferSize    the configured send buffer size in bytes, -1 in case of default.
+   * @param maxSendBufferSize the maximum size send buffer might grow to, 0 to disable auto-tuning.
+   */
+  public SocketTelemetry(String connection, int sendBufferSize, int maxSendBufferSize) {
+    this.connection = connection;
+    this.requestedSendBufferSize = sendBufferSize;
+    this.maxSendBufferSize = maxSendBufferSize;
+    this.connects = new AtomicLong();
+    this.writes = new AtomicLong();
+    this.bytes = new AtomicLong();
+    this.partialWrites = new AtomicLong();
+    this.stalls = new AtomicLong();
+    this.stallNanos = new AtomicLong();
+    this.dropped = new AtomicLong();
+    this.growths = new AtomicLong();
+  }
+
+  /**
+   * Gets send buffer size to set on new socket, configured or tuned one.
+   *
+   * @return the size in bytes or not positive number in case default must be kept.
+   */
+  int getRequestedSendBufferSize() {
+    return requestedSendBufferSize;
+  }
+
+  void connected(int effectiveSendBufferSize) {
+    connects.incrementAndGet();
+    sendBufferSize = effectiveSendBufferSize;
+  }
+
+  void resized(int effectiveSendBufferSize) {
+    sendBufferSize = effectiveSendBufferSize;
+  }
+
+  void recordWrite(int requested, int written) {
+    writes.incrementAndGet();
+    bytes.addAndGet(written);
+    if (written > 0 && written < requested) {
+      partialWrites.incrementAndGet();
+    }
+  }
+
+  void recordStall(long nanos) {
+    stalls.incrementAndGet();
+    stallNanos.addAndGet(nanos);
+  }
+
+  void recordDrop() {
+    dropped.incrementAndGet();
+  }
+
+  /**
+   * Decide new size of send buffer after stall or drop.
+   *
+   * @return the new size in bytes or 0 in case auto-tuning is disabled or maximum is reached.
+   */
+  int grow() {
+    int requested = requestedSendBufferSize;
+    if (maxSendBufferSize <= 0 || requested >= maxSendBufferSize) {
+      return 0;
+    }
+    int base = requested > 0 ? requested : Math.max(MIN_SEND_BUFFER_SIZE, sendBufferSize);
+    int size = (int) Math.min(maxSendBufferSize, base * 2L);
+    requestedSendBufferSize = size;
+    growths.incrementAndGet();
+    return size;
+  }
+
+  public String getConnection() {
+    return connection;
+  }
+
+  /**
+   * Gets effective send buffer size reported by the socket, Linux reports twice the requested size
+   * to account for bookkeeping overhead.
+   *
+   * @return the size in bytes or 0 before the first connect.
+   */
+  public int getSendBufferSize() {
+    return sendBufferSize;
+  }
+
+  public int getMaxSendBufferSize() {
+    return maxSendBufferSize;
+  }
+
+  public long getConnects() {
+    return connects.get();
+  }
+
+  public long getWrites() {
+    return writes.get();
+  }
+
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * Gets number of writes which accepted only part of the data, not nothing, TCP only.
+   *
+   * @return the number of partial writes.
+   */
+  public long getPartialWrites() {
+    return partialWrites.get();
+  }
+
+  /**
+   * Gets number of times sender waited for full send buffer, TCP only.
+   *
+   * @return the number of stalls.
+   */
+  public long getStalls() {
+    return stalls.get();
+  }
+
+  public long getStallNanos() {
+    return stallNanos.get();
+  }
+
+  /**
+   * Gets number of datagrams not accepted by full send buffer, UDP only.
+   *
+   * @return the number of dropped datagrams.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Gets number of times send buffer was grown by auto-tuning.
+   *
+   * @return the number of growths.
+   */
+  public long getGrowths() {
+    return growths.get();
+  }
+
+  @Override
+  public String toString() {
+    return connection + ": sndbuf " + sendBufferSize + ", writes " + writes + ", bytes " + bytes
+           + ", partial " + partialWrites + ", stalls " + stalls + " ("
+           + stallNanos.get() / 1_000_000 + " ms), dropped " + dropped + ", growths " + growths;
+  }
+}
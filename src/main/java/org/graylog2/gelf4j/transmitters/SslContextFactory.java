@@ -0,0 +1,77 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.utils.Validations.isEmpty;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Factory of {@link SSLContext} for {@link TlsTransmitter} from key and trust stores on file system.
+ *
+ * @author Andrey Minov
+ */
+public final class SslContextFactory {
+
+  private SslContextFactory() {
+  }
+
+  /**
+   * Create SSL context. In case trust store is not provided JVM default trust store is used.
+   * Key store is needed only when Graylog server requires client authentication.
+   * Stores with <code>.p12</code> or <code>.pfx</code> extension are read as PKCS12,
+   * others as JVM default key store type.
+   *
+   * @param keyStore           the path to client key store, might be null.
+   * @param keyStorePassword   the password of the key store and its keys.
+   * @param trustStore         the path to trust store with Graylog server certificates, might be null.
+   * @param trustStorePassword the password of the trust store.
+   * @return the initialized SSL context.
+   * @throws GeneralSecurityException when stores cannot be read or context cannot be initialized.
+   * @throws IOException              when store file cannot be read.
+   */
+  public static SSLContext create(String keyStore, String keyStorePassword, String trustStore,
+                                  String trustStorePassword)
+      throws GeneralSecurityException, IOException {
+    KeyManager[] keyManagers = null;
+    if (!isEmpty(keyStore)) {
+      KeyManagerFactory factory =
+          KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      factory.init(load(keyStore, keyStorePassword), toChars(keyStorePassword));
+      keyManagers = factory.getKeyManagers();
+    }
+    TrustManager[] trustManagers = null;
+    if (!isEmpty(trustStore)) {
+      TrustManagerFactory factory =
+          TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      factory.init(load(trustStore, trustStorePassword));
+      trustManagers = factory.getTrustManagers();
+    }
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(keyManagers, trustManagers, null);
+    return context;
+  }
+
+  private static KeyStore load(String path, String password)
+      throws GeneralSecurityException, IOException {
+    String lower = path.toLowerCase();
+    String type = lower.endsWith(".p12") || lower.endsWith(".pfx") ? "PKCS12"
+                                                                   : KeyStore.getDefaultType();
+    KeyStore store = KeyStore.getInstance(type);
+    try (InputStream in = new FileInputStream(path)) {
+      store.load(in, toChars(password));
+    }
+    return store;
+  }
+
+  private static char[] toChars(String password) {
+    return password == null ? null : password.toCharArray();
+  }
+}
@@ -1,18 +1,29 @@
 package org.graylog2.gelf4j.transmitters;
 
+import static org.graylog2.gelf4j.Constants.DEFAULT_COMPRESSION_RATE;
+import static org.graylog2.gelf4j.Constants.DEFAULT_MAX_MESSAGE_SIZE;
+
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import com.jsoniter.output.JsonStream;
+import org.graylog2.gelf4j.format.PayloadFormat;
+import org.graylog2.gelf4j.format.PayloadFormatter;
 import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.SizeGovernor;
 
 /**
  * TCP transmitter send message to graylog service using TCP.
@@ -28,38 +39,84 @@ import org.graylog2.gelf4j.message.Payload;
  * GELF TCP <strong>does not support</strong> compression due to the use of the null byte
  * (\0) as frame delimiter.
  * </p>
+ * <p>
+ * For own relays transmitter supports binary {@link Framing#VARINT} framing where each frame
+ * is prefixed with its length, so messages might be compressed one by one or in batches,
+ * see {@link FrameCompression}. Batches are sent on {@link #flush()}.
+ * </p>
+ * <p>
+ * In case maximum message size is set, bigger messages are truncated by {@link SizeGovernor}.
+ * </p>
+ * <p>
+ * Writes, partial writes and waits for full send buffer are recorded by {@link SocketTelemetry},
+ * which with NIO can grow the send buffer when writes stall.
+ * </p>
+ * <p>
+ * Payload is formatted as GELF unless other {@link PayloadFormatter} is given, i.e. ECS documents
+ * with {@link Framing#NEWLINE_DELIMITED} framing for log shippers.
+ * </p>
  *
  * @author Andrey Minov
  */
 public class TcpTransmitter implements PayloadTransmitter, Closeable {
-  private static final Charset CHARSET = Charset.forName("UTF-8");
-  private static final byte[] ENDING = "\0".getBytes(CHARSET);
+  private static final int BATCH_LIMIT = 65536;
+  private static final int SKIP_SIZE = 512;
 
   private final String hostname;
   private final int port;
   private final int soTimeout;
   private final boolean blocking;
-  private final int sendBufferSize;
+  private final FrameEncoder encoder;
+  private final PayloadFormatter formatter;
+  private final SizeGovernor sizeGovernor;
+  private final SocketTelemetry telemetry;
   private SocketChannel channel;
+  private Selector selector;
   private Lock lock;
 
+  /**
+   * Instantiates a new Tcp transmitter of null delimited GELF messages without compression, size
+   * limit and send buffer auto-tuning, see the full constructor for parameters.
+   */
+  public TcpTransmitter(String hostname, int port, int soTimeout, boolean blocking,
+                        int sendBufferSize) {
+    this(hostname, port, soTimeout, blocking, sendBufferSize, Framing.NULL_DELIMITED,
+        FrameCompression.NONE, DEFAULT_COMPRESSION_RATE, DEFAULT_MAX_MESSAGE_SIZE,
+        PayloadFormat.GELF, 0);
+  }
+
   /**
    * Instantiates a new Tcp transmitter.
    *
-   * @param hostname       the hostname of the Graylog server
-   * @param port           the port of the server
-   * @param soTimeout      the socket timeout, apply only in case channel is blocking.
-   * @param blocking       true in case use blocking IO, otherwise NIO will be used.
-   * @param sendBufferSize the send buffer size int bytes in case blocking IO sent to false.
-   *                       -1 in case of default.
+   * @param hostname          the hostname of the Graylog server or relay
+   * @param port              the port of the server
+   * @param soTimeout         the socket timeout, with NIO bounds wait for full send buffer.
+   * @param blocking          true in case use blocking IO, otherwise NIO will be used.
+   * @param sendBufferSize    the send buffer size int bytes in case blocking IO sent to false.
+   *                          -1 in case of default.
+   * @param framing           the framing of messages, Graylog supports only null delimited.
+   * @param compression       the compression of frames, requires varint framing.
+   * @param compressionLevel  ZLIB level of compression from 1 to 9.
+   * @param maxMessageSize    the maximum size of GELF message in bytes, bigger messages are
+   *                          truncated. 0 in case of no limit. Not applied to other formats.
+   * @param formatter         the formatter of payload, Graylog supports only GELF.
+   * @param maxSendBufferSize the maximum size send buffer grows to when writes stall with NIO,
+   *                          0 to disable auto-tuning.
    */
   public TcpTransmitter(String hostname, int port, int soTimeout, boolean blocking,
-                        int sendBufferSize) {
+                        int sendBufferSize, Framing framing, FrameCompression compression,
+                        int compressionLevel, int maxMessageSize, PayloadFormatter formatter,
+                        int maxSendBufferSize) {
     this.hostname = hostname;
     this.port = port;
     this.soTimeout = soTimeout;
     this.blocking = blocking;
-    this.sendBufferSize = sendBufferSize;
+    this.telemetry =
+        new SocketTelemetry("tcp://" + hostname + ":" + port, sendBufferSize, maxSendBufferSize);
+    this.encoder = new FrameEncoder(framing, compression, compressionLevel, BATCH_LIMIT);
+    this.formatter = formatter;
+    this.sizeGovernor = maxMessageSize > 0 && formatter == PayloadFormat.GELF
+                        ? new SizeGovernor(maxMessageSize) : null;
     this.lock = new ReentrantLock();
   }
 
@@ -72,9 +129,12 @@ public class TcpTransmitter implements PayloadTransmitter, Closeable {
       channel.socket().setSoTimeout(soTimeout);
       channel.socket().connect(address, soTimeout);
       channel.configureBlocking(blocking);
-      if (!blocking && sendBufferSize > 0) {
-        channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+      // Buffer tuned before reconnect is kept.
+      int requestedSendBufferSize = telemetry.getRequestedSendBufferSize();
+      if (!blocking && requestedSendBufferSize > 0) {
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, requestedSendBufferSize);
       }
+      telemetry.connected(channel.getOption(StandardSocketOptions.SO_SNDBUF));
     } finally {
       lock.unlock();
     }
@@ -84,37 +144,206 @@ public class TcpTransmitter implements PayloadTransmitter, Closeable {
   public void transmit(Payload payload) throws Exception {
     lock.lock();
     try {
-      // TCP connections might be dropped suddenly without FIN flag send.
-      // This mostly happends by IP tables renew and most
-      // exceptions followed by 'Connection Reset by Peer.'
-      if (channel == null || !channel.isOpen() || !channel.isConnected()) {
-        open();
-      }
+      // Message which does not fit must not break the connection.
       // In case you use log4j2 JsonStream instances is reused by ThreadLocal and not created every time.
-      String message = JsonStream.serialize(payload);
-      byte[] bytes = message.getBytes(CHARSET);
-      ByteBuffer buffer = ByteBuffer.allocate(bytes.length + ENDING.length);
-      buffer.put(bytes);
-      buffer.put(ENDING);
-      buffer.flip();
-      channel.write(buffer);
-    } catch (Exception e) {
-      channel = null;
-      throw e;
+      byte[] bytes = sizeGovernor != null ? sizeGovernor.serialize(payload)
+                                          : formatter.format(payload);
+      send(bytes);
     } finally {
       lock.unlock();
     }
   }
 
+  private void send(byte[] bytes) throws IOException {
+    try {
+      // Closed transmitter fails before connection is opened again.
+      ByteBuffer buffer = encoder.encode(bytes);
+      if (buffer != null) {
+        // TCP connections might be dropped suddenly without FIN flag send.
+        // This mostly happends by IP tables renew and most
+        // exceptions followed by 'Connection Reset by Peer.'
+        if (channel == null || !channel.isOpen() || !channel.isConnected()) {
+          open();
+        }
+        write(buffer);
+      }
+    } catch (IOException | RuntimeException e) {
+      closeQuietly();
+      encoder.reset();
+      throw e;
+    }
+  }
+
   @Override
-  public void close() throws IOException {
+  public void flush() throws IOException {
     lock.lock();
     try {
+      ByteBuffer buffer = encoder.finish();
+      if (buffer != null) {
+        if (channel == null || !channel.isOpen() || !channel.isConnected()) {
+          open();
+        }
+        write(buffer);
+      }
+    } catch (IOException e) {
+      closeQuietly();
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets telemetry of the connection.
+   *
+   * @return the socket telemetry.
+   */
+  public SocketTelemetry getTelemetry() {
+    return telemetry;
+  }
+
+  @Override
+  public List<SocketTelemetry> getSocketTelemetry() {
+    return Collections.singletonList(telemetry);
+  }
+
+  /**
+   * Gets size governor truncating messages which exceed the limit.
+   *
+   * @return the size governor or null in case message size is not limited.
+   */
+  public SizeGovernor getSizeGovernor() {
+    return sizeGovernor;
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    // Partially written frame would break the stream, so write until whole frame is sent.
+    while (buffer.hasRemaining()) {
+      int requested = buffer.remaining();
+      int written = channel.write(buffer);
+      telemetry.recordWrite(requested, written);
+      if (written == 0 && !blocking) {
+        long start = System.nanoTime();
+        try {
+          awaitWritable();
+        } finally {
+          telemetry.recordStall(System.nanoTime() - start);
+        }
+        growSendBuffer();
+      }
+    }
+  }
+
+  private void growSendBuffer() throws IOException {
+    int size = telemetry.grow();
+    if (size > 0) {
+      channel.setOption(StandardSocketOptions.SO_SNDBUF, size);
+      telemetry.resized(channel.getOption(StandardSocketOptions.SO_SNDBUF));
+    }
+  }
+
+  // Server which stopped reading must not make sender spin, wait for the socket with selector
+  // only when kernel buffer is full.
+  private void awaitWritable() throws IOException {
+    if (selector == null) {
+      selector = Selector.open();
+      channel.register(selector, SelectionKey.OP_WRITE);
+    }
+    if (selector.select(soTimeout) == 0) {
+      throw new SocketTimeoutException("Timeout writing to Graylog server " + hostname);
+    }
+    selector.selectedKeys().clear();
+  }
+
+  private void closeQuietly() {
+    try {
+      closeChannel();
+    } catch (IOException e) {
+      // Connection is broken anyway.
+    } finally {
+      channel = null;
+    }
+  }
+
+  private void closeChannel() throws IOException {
+    try {
+      if (selector != null) {
+        selector.close();
+      }
       if (channel != null) {
         channel.close();
       }
     } finally {
+      selector = null;
+    }
+  }
+
+  /**
+   * Close connection and release deflater of compressed frames, transmitter cannot be used after.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      closeChannel();
+    } finally {
+      encoder.end();
       lock.unlock();
     }
   }
+
+  /**
+   * Write out buffered frames, close output side of the connection and wait until server closes
+   * the connection after reading all data, so nothing is left in socket buffers on exit. Frame
+   * encoder is ended as on {@link #close()}.
+   */
+  @Override
+  public long shutdown(long timeout, TimeUnit unit) throws IOException {
+    lock.lock();
+    try {
+      // Batched frames might be buffered before connection is opened.
+      ByteBuffer buffer = encoder.finish();
+      if (buffer != null) {
+        if (channel == null || !channel.isOpen() || !channel.isConnected()) {
+          open();
+        }
+        write(buffer);
+      }
+      if (channel == null || !channel.isOpen() || !channel.isConnected()) {
+        return 0;
+      }
+      channel.shutdownOutput();
+      awaitClose(unit.toMillis(timeout));
+      return 0;
+    } finally {
+      try {
+        close();
+      } finally {
+        channel = null;
+        lock.unlock();
+      }
+    }
+  }
+
+  private void awaitClose(long timeoutMs) throws IOException {
+    if (timeoutMs <= 0) {
+      return;
+    }
+    if (selector != null) {
+      // Channel must be deregistered before it is switched to blocking mode.
+      selector.close();
+      selector = null;
+    }
+    channel.configureBlocking(true);
+    channel.socket().setSoTimeout((int) Math.min(Integer.MAX_VALUE, timeoutMs));
+    InputStream input = channel.socket().getInputStream();
+    byte[] skip = new byte[SKIP_SIZE];
+    try {
+      while (input.read(skip) >= 0) {
+        // Server does not send data, discard anything until end of stream.
+      }
+    } catch (SocketTimeoutException e) {
+      // Server keeps connection open, data is sent from our side anyway.
+    }
+  }
 }
@@ -0,0 +1,409 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadSerializer;
+
+/**
+ * TLS transmitter send message to graylog service using TCP secured with TLS.
+ * <p>
+ * Framing is the same as for {@link TcpTransmitter}: every message is delimited with a null byte (\0).
+ * </p>
+ * <p>
+ * Instead of blocking {@link javax.net.ssl.SSLSocket} transmitter drives {@link SSLEngine} over
+ * non blocking {@link SocketChannel} and waits for the socket with selector only when kernel buffer is full.
+ * Plain and encrypted buffers are allocated once and reused for every connection.
+ * Messages are collected in plain buffer and encrypted together on {@link #flush()}, so several GELF
+ * frames share one TLS record. The same {@link SSLContext} is used for reconnects, so TLS session
+ * is resumed instead of full handshake when server supports it.
+ * </p>
+ * <p>
+ * <b>Attention</b>
+ * </p>
+ * <p>
+ * Messages are not sent until {@link #flush()} is called or plain buffer is full. Messages buffered
+ * when connection fails are lost, they are counted by {@link #getUndelivered()} and reported as
+ * suppressed exception of the failure.
+ * </p>
+ *
+ * @author Andrey Minov
+ */
+public class TlsTransmitter implements PayloadTransmitter, Closeable {
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+  private static final byte[] ENDING = "\0".getBytes(CHARSET);
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private final String hostname;
+  private final int port;
+  private final int soTimeout;
+  private final int sendBufferSize;
+  private final SSLContext sslContext;
+  private final boolean verifyHostname;
+  private final AtomicLong undelivered;
+  private SocketChannel channel;
+  private Selector selector;
+  private SelectionKey key;
+  private SSLEngine engine;
+  // Buffers are reused for all connections.
+  private ByteBuffer appOut;
+  private ByteBuffer netOut;
+  private ByteBuffer appIn;
+  private ByteBuffer netIn;
+  // Number of messages in plain buffer which are not encrypted and written yet.
+  private int buffered;
+  // Waits for the socket end at deadline given in nanos during shutdown.
+  private boolean bounded;
+  private long deadline;
+  private Lock lock;
+
+  /**
+   * Instantiates a new TLS transmitter.
+   *
+   * @param hostname       the hostname of the Graylog server
+   * @param port           the port of the server
+   * @param soTimeout      the timeout of connect, handshake and waiting for socket to become writable.
+   * @param sendBufferSize the send buffer size int bytes, -1 in case of default.
+   * @param sslContext     the SSL context with key and trust material.
+   * @param verifyHostname true in case server certificate must match the hostname.
+   */
+  public TlsTransmitter(String hostname, int port, int soTimeout, int sendBufferSize,
+                        SSLContext sslContext, boolean verifyHostname) {
+    this.hostname = hostname;
+    this.port = port;
+    this.soTimeout = soTimeout;
+    this.sendBufferSize = sendBufferSize;
+    this.sslContext = sslContext;
+    this.verifyHostname = verifyHostname;
+    this.undelivered = new AtomicLong();
+    this.lock = new ReentrantLock();
+  }
+
+  @Override
+  public void open() throws IOException {
+    lock.lock();
+    try {
+      closeChannel();
+      engine = sslContext.createSSLEngine(hostname, port);
+      engine.setUseClientMode(true);
+      if (verifyHostname) {
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+      }
+      allocateBuffers();
+
+      channel = SocketChannel.open();
+      channel.socket().setSoTimeout(soTimeout);
+      channel.socket().connect(new InetSocketAddress(hostname, port), soTimeout);
+      channel.configureBlocking(false);
+      if (sendBufferSize > 0) {
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+      }
+      selector = Selector.open();
+      key = channel.register(selector, 0);
+      handshake();
+    } catch (IOException e) {
+      closeChannel();
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void transmit(Payload payload) throws Exception {
+    lock.lock();
+    try {
+      if (channel == null || !channel.isOpen() || !channel.isConnected()) {
+        open();
+      }
+      byte[] bytes = PayloadSerializer.serialize(payload);
+      if (bytes.length + ENDING.length > appOut.remaining()) {
+        writeRecords(appOut);
+      }
+      if (bytes.length + ENDING.length > appOut.remaining()) {
+        // Message does not fit into one record, encrypt it right away.
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+          wrapAndWrite(buffer);
+        }
+      } else {
+        appOut.put(bytes);
+      }
+      appOut.put(ENDING);
+      buffered++;
+    } catch (Exception e) {
+      reportLost(e, closeChannel());
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    lock.lock();
+    try {
+      if (channel == null || appOut.position() == 0) {
+        return;
+      }
+      writeRecords(appOut);
+      readInbound();
+    } catch (IOException e) {
+      reportLost(e, closeChannel());
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (channel != null && channel.isOpen()) {
+        try {
+          if (appOut.position() > 0) {
+            writeRecords(appOut);
+          }
+          engine.closeOutbound();
+          while (!engine.isOutboundDone()) {
+            wrapAndWrite(EMPTY);
+          }
+        } finally {
+          closeChannel();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Close connection, writing buffered messages and close notification first. Waiting for the
+   * socket stops at timeout, messages which are not written by then are counted as undelivered.
+   *
+   * @param timeout the timeout of writing buffered messages and close notification, 0 in case
+   *                writes wait up to soTimeout as on {@link #close()}.
+   * @param unit    the unit of timeout.
+   * @return the number of buffered messages which could not be written in time.
+   * @throws IOException when connection fails before timeout, lost messages are reported as
+   *                     suppressed exception.
+   */
+  @Override
+  public long shutdown(long timeout, TimeUnit unit) throws IOException {
+    lock.lock();
+    long before = undelivered.get();
+    try {
+      // Wrappers close delegates by shutdown without timeout, it waits up to soTimeout as close.
+      bounded = timeout > 0;
+      deadline = System.nanoTime() + unit.toNanos(timeout);
+      close();
+    } catch (SocketTimeoutException e) {
+      // Server does not read in time, connection is closed and not written messages are counted.
+    } catch (IOException e) {
+      reportLost(e, (int) (undelivered.get() - before));
+      throw e;
+    } finally {
+      bounded = false;
+      lock.unlock();
+    }
+    return undelivered.get() - before;
+  }
+
+  /**
+   * Gets number of messages which were buffered when connection failed and were not sent.
+   *
+   * @return the number of lost messages.
+   */
+  public long getUndelivered() {
+    return undelivered.get();
+  }
+
+  private static void reportLost(Exception e, int lost) {
+    if (lost > 0) {
+      e.addSuppressed(new IOException(lost + " buffered messages were not delivered"));
+    }
+  }
+
+  private void allocateBuffers() {
+    int appSize = engine.getSession().getApplicationBufferSize();
+    int netSize = engine.getSession().getPacketBufferSize();
+    if (appOut == null || appOut.capacity() < appSize) {
+      appOut = ByteBuffer.allocateDirect(appSize);
+      appIn = ByteBuffer.allocateDirect(appSize);
+    }
+    if (netOut == null || netOut.capacity() < netSize) {
+      netOut = ByteBuffer.allocateDirect(netSize);
+      netIn = ByteBuffer.allocateDirect(netSize);
+    }
+    appOut.clear();
+    appIn.clear();
+    netOut.clear();
+    netIn.clear();
+  }
+
+  private void handshake() throws IOException {
+    engine.beginHandshake();
+    completeHandshake(engine.getHandshakeStatus());
+    if (engine.isInboundDone()) {
+      throw new SSLException("Connection closed by server during handshake");
+    }
+  }
+
+  private void completeHandshake(HandshakeStatus handshakeStatus) throws IOException {
+    HandshakeStatus status = handshakeStatus;
+    while (status != HandshakeStatus.FINISHED && status != HandshakeStatus.NOT_HANDSHAKING) {
+      switch (status) {
+        case NEED_WRAP:
+          status = wrapAndWrite(EMPTY).getHandshakeStatus();
+          break;
+        case NEED_UNWRAP:
+          status = unwrap(true).getHandshakeStatus();
+          break;
+        case NEED_TASK:
+          Runnable task;
+          while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+          }
+          status = engine.getHandshakeStatus();
+          break;
+        default:
+          throw new SSLException("Unexpected handshake status: " + status);
+      }
+    }
+  }
+
+  private void writeRecords(ByteBuffer source) throws IOException {
+    source.flip();
+    while (source.hasRemaining()) {
+      wrapAndWrite(source);
+    }
+    source.clear();
+    if (source == appOut) {
+      buffered = 0;
+    }
+  }
+
+  private SSLEngineResult wrapAndWrite(ByteBuffer source) throws IOException {
+    netOut.clear();
+    SSLEngineResult result = engine.wrap(source, netOut);
+    if (result.getStatus() != SSLEngineResult.Status.OK
+        && result.getStatus() != SSLEngineResult.Status.CLOSED) {
+      throw new SSLException("Unexpected wrap status: " + result.getStatus());
+    }
+    netOut.flip();
+    while (netOut.hasRemaining()) {
+      if (channel.write(netOut) == 0) {
+        await(SelectionKey.OP_WRITE);
+      }
+    }
+    return result;
+  }
+
+  // Server does not send application data, but might send session tickets or close notification.
+  private void readInbound() throws IOException {
+    SSLEngineResult result;
+    do {
+      result = unwrap(false);
+      appIn.clear();
+      completeHandshake(result.getHandshakeStatus());
+    } while (result.getStatus() == SSLEngineResult.Status.OK && result.bytesConsumed() > 0);
+    if (engine.isInboundDone()) {
+      throw new SSLException("Connection closed by server");
+    }
+  }
+
+  private SSLEngineResult unwrap(boolean wait) throws IOException {
+    while (true) {
+      netIn.flip();
+      SSLEngineResult result = engine.unwrap(netIn, appIn);
+      netIn.compact();
+      switch (result.getStatus()) {
+        case OK:
+        case CLOSED:
+          return result;
+        case BUFFER_OVERFLOW:
+          appIn.clear();
+          break;
+        case BUFFER_UNDERFLOW:
+          int read = channel.read(netIn);
+          if (read < 0) {
+            engine.closeInbound();
+            throw new SSLException("Connection closed by server");
+          }
+          if (read == 0) {
+            if (!wait) {
+              return result;
+            }
+            await(SelectionKey.OP_READ);
+          }
+          break;
+        default:
+          throw new SSLException("Unexpected unwrap status: " + result.getStatus());
+      }
+    }
+  }
+
+  private void await(int operation) throws IOException {
+    long timeoutMs = soTimeout;
+    if (bounded) {
+      long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remainingMs <= 0) {
+        throw new SocketTimeoutException("Shutdown timeout of TLS connection to " + hostname);
+      }
+      timeoutMs = soTimeout > 0 ? Math.min(soTimeout, remainingMs) : remainingMs;
+    }
+    key.interestOps(operation);
+    try {
+      if (selector.select(timeoutMs) == 0) {
+        throw new SocketTimeoutException("Timeout waiting for TLS connection to " + hostname);
+      }
+      selector.selectedKeys().clear();
+    } finally {
+      key.interestOps(0);
+    }
+  }
+
+  private int closeChannel() throws IOException {
+    int lost = buffered;
+    try {
+      if (selector != null) {
+        selector.close();
+      }
+      if (channel != null) {
+        channel.close();
+      }
+    } finally {
+      selector = null;
+      channel = null;
+      key = null;
+      if (appOut != null) {
+        appOut.clear();
+      }
+      buffered = 0;
+      undelivered.addAndGet(lost);
+    }
+    return lost;
+  }
+}
@@ -0,0 +1,171 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Registry of transmitters shared by appenders, keyed by transport, host and port.
+ * <p/>
+ * Appender acquires a lease of the transmitter instead of owning it. When logging framework is
+ * reconfigured, new appender is started before old one is stopped, so new appender adopts live
+ * connection together with its queued events and connection is closed only when the last lease
+ * is released. In case transport settings changed, new transmitter is created for the key and
+ * old one lives until its leases are released.
+ *
+ * @author Andrey Minov
+ */
+public final class TransmitterRegistry {
+  private static final TransmitterRegistry INSTANCE = new TransmitterRegistry();
+
+  private final ReentrantLock lock;
+  private final Map<String, Entry> entries;
+
+  TransmitterRegistry() {
+    this.lock = new ReentrantLock();
+    this.entries = new HashMap<>();
+  }
+
+  public static TransmitterRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Acquire lease of transmitter for the key, creating transmitter in case there is no one
+   * with the same settings.
+   *
+   * @param key      the key of the destination, i.e. transport, host and port.
+   * @param settings the settings transmitter is created with, transmitter is reused only when
+   *                 settings are equal.
+   * @param factory  the factory of the transmitter, might return null in case of invalid settings.
+   * @return the lease of the transmitter or null in case factory did not create transmitter.
+   */
+  public PayloadTransmitter acquire(String key, String settings,
+                                    Supplier<PayloadTransmitter> factory) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      if (entry == null || !entry.settings.equals(settings)) {
+        PayloadTransmitter transmitter = factory.get();
+        if (transmitter == null) {
+          return null;
+        }
+        entry = new Entry(key, settings, transmitter);
+        entries.put(key, entry);
+      }
+      entry.references++;
+      return new Lease(entry);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets number of leases of the current transmitter for the key.
+   *
+   * @param key the key of the destination.
+   * @return the number of leases, 0 in case there is no transmitter.
+   */
+  public int getReferences(String key) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      return entry == null ? 0 : entry.references;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Returns true in case it was the last lease and transmitter must be closed.
+  private boolean release(Entry entry) {
+    lock.lock();
+    try {
+      if (--entry.references > 0) {
+        return false;
+      }
+      entries.remove(entry.key, entry);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static class Entry {
+    private final String key;
+    private final String settings;
+    private final PayloadTransmitter transmitter;
+    private final ReentrantLock openLock;
+    private int references;
+    private boolean open;
+
+    Entry(String key, String settings, PayloadTransmitter transmitter) {
+      this.key = key;
+      this.settings = settings;
+      this.transmitter = transmitter;
+      this.openLock = new ReentrantLock();
+    }
+  }
+
+  private class Lease implements PayloadTransmitter {
+    private final Entry entry;
+    private final AtomicBoolean released;
+
+    Lease(Entry entry) {
+      this.entry = entry;
+      this.released = new AtomicBoolean();
+    }
+
+    /**
+     * Open shared transmitter only once, adopted transmitter is already open.
+     */
+    @Override
+    public void open() throws IOException {
+      entry.openLock.lock();
+      try {
+        if (!entry.open) {
+          entry.transmitter.open();
+          entry.open = true;
+        }
+      } finally {
+        entry.openLock.unlock();
+      }
+    }
+
+    @Override
+    public void transmit(Payload payload) throws Exception {
+      entry.transmitter.transmit(payload);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      entry.transmitter.flush();
+    }
+
+    @Override
+    public List<SocketTelemetry> getSocketTelemetry() {
+      return entry.transmitter.getSocketTelemetry();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (released.compareAndSet(false, true) && release(entry)) {
+        entry.transmitter.close();
+      }
+    }
+
+    @Override
+    public long shutdown(long timeout, TimeUnit unit) throws IOException {
+      if (released.compareAndSet(false, true) && release(entry)) {
+        return entry.transmitter.shutdown(timeout, unit);
+      }
+      return 0;
+    }
+  }
+}
@@ -1,6 +1,6 @@
 package org.graylog2.gelf4j.transmitters;
 
-import static java.util.Arrays.copyOfRange;
+import static org.graylog2.gelf4j.Constants.DEFAULT_MAX_MESSAGE_SIZE;
 import static org.graylog2.gelf4j.Constants.MAX_UDP_DATAGRAM_SIZE;
 
 import java.io.Closeable;
@@ -10,14 +10,17 @@ import java.net.SocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.nio.charset.Charset;
 import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.Deflater;
 
-import com.jsoniter.output.JsonStream;
 import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadSerializer;
+import org.graylog2.gelf4j.message.SizeGovernor;
 
 /**
  * UDP transmitter send datagrams over network.
@@ -82,6 +85,21 @@ import org.graylog2.gelf4j.message.Payload;
  * <p>Decide if you want to trade a bit more CPU load for saving a lot of network bandwidth.
  * GZIP is the protocol default.
  * </p>
+ * <p>
+ * With adaptive compression {@link AdaptiveCompression} decides for every message whether it is
+ * compressed and with which level, based on ratio and cost observed for messages of similar size.
+ * Compressed message is sent only in case it is smaller than original one.
+ * </p>
+ * <p>
+ * Messages which would not fit into 128 chunks are truncated by {@link SizeGovernor} rather than
+ * dropped.
+ * </p>
+ * <p>
+ * Chunks are sent by gathering writes of reused header and slice of the message, so chunking does
+ * not copy the message. Dropped datagrams and send buffer size are recorded by
+ * {@link SocketTelemetry}, which can grow the send buffer when datagrams are dropped. JDK sends
+ * one datagram per write, there is no multi-datagram send like <code>sendmmsg</code>.
+ * </p>
  *
  * @author Andrey Minov
  */
@@ -91,6 +109,8 @@ public class UdpTransmitter implements PayloadTransmitter, Closeable {
   private static final int MESSAGE_ID_SIZE = 8;
   private static final int CHUNK_SIZE =
       MAX_UDP_DATAGRAM_SIZE - GELF_CHUNKED_ID.length - MESSAGE_ID_SIZE - 2;
+  private static final int MAX_CHUNKS = 128;
+  private static final int MAX_CHUNKED_SIZE = MAX_CHUNKS * CHUNK_SIZE;
   /**
    * Static Deflater / Inflater are used as they are use native libraries and consume SYSTEM memory (not
    * Heap)
@@ -103,36 +123,74 @@ public class UdpTransmitter implements PayloadTransmitter, Closeable {
   private final static ThreadLocal<Deflater> tlhDeflater = ThreadLocal.withInitial(Deflater::new);
   private final static ThreadLocal<SecureRandom> thSecureRandom =
       ThreadLocal.withInitial(SecureRandom::new);
-  private static final Charset CHARSET = Charset.forName("UTF-8");
 
   private final String hostname;
   private final int port;
-  private final int sendBufferSize;
   private final boolean useCompression;
   private final int compressionLevel;
   private final int compressionLimit;
+  private final AdaptiveCompression adaptiveCompression;
+  private final SizeGovernor sizeGovernor;
+  // Chunk header and gathering array are reused, access is guarded by lock.
+  private final byte[] messageId;
+  private final ByteBuffer header;
+  private final ByteBuffer[] chunk;
+  private final AtomicLong datagrams;
+  private final SocketTelemetry telemetry;
   private DatagramChannel channel;
+  // Size of the last encoded message before compression, guarded by lock.
+  private int serializedSize;
   private Lock lock;
 
+  /**
+   * Instantiates a new UDP transmitter with fixed compression limit, no size limit except 128
+   * chunks and no send buffer auto-tuning, see the full constructor for parameters.
+   */
+  public UdpTransmitter(String hostname, int port, int sendBufferSize, boolean useCompression,
+                        int compressionLevel, int compressionLimit) {
+    this(hostname, port, sendBufferSize, useCompression, compressionLevel, compressionLimit, false,
+        DEFAULT_MAX_MESSAGE_SIZE, 0);
+  }
+
   /**
    * Instantiates a new UDP transmitter. It uses always NIO.
    *
-   * @param hostname         the hostname of the Graylog server
-   * @param port             the port of the server.
-   * @param sendBufferSize   the send buffer size in bytes.
-   *                         -1 in case of default.
-   * @param useCompression   true if compressioon must be used, default false.
-   * @param compressionLevel ZLIB level of compression from 1 to 9. Default is 5.
-   * @param compressionLimit size in bytes after which compression must be applied - default to 4096.
+   * @param hostname            the hostname of the Graylog server
+   * @param port                the port of the server.
+   * @param sendBufferSize      the send buffer size in bytes.
+   *                            -1 in case of default.
+   * @param useCompression      true if compressioon must be used, default false.
+   * @param compressionLevel    ZLIB level of compression from 1 to 9. Default is 5.
+   * @param compressionLimit    size in bytes after which compression must be applied - default to 4096.
+   *                            Ignored in case of adaptive compression.
+   * @param adaptiveCompression true in case compression decision is made for every message by
+   *                            {@link AdaptiveCompression}.
+   * @param maxMessageSize      the maximum size of uncompressed message in bytes, bigger messages are
+   *                            truncated. 0 in case of 128 chunks limit only.
+   * @param maxSendBufferSize   the maximum size send buffer grows to when datagrams are dropped,
+   *                            0 to disable auto-tuning.
    */
   public UdpTransmitter(String hostname, int port, int sendBufferSize, boolean useCompression,
-                        int compressionLevel, int compressionLimit) {
+                        int compressionLevel, int compressionLimit, boolean adaptiveCompression,
+                        int maxMessageSize, int maxSendBufferSize) {
     this.hostname = hostname;
     this.port = port;
-    this.sendBufferSize = sendBufferSize;
     this.useCompression = useCompression;
     this.compressionLevel = compressionLevel;
     this.compressionLimit = compressionLimit;
+    this.adaptiveCompression =
+        useCompression && adaptiveCompression ? new AdaptiveCompression(compressionLevel) : null;
+    // Compressed message might fit into chunks even when uncompressed does not, this is checked
+    // after compression.
+    int uncompressedLimit = useCompression ? Integer.MAX_VALUE : MAX_CHUNKED_SIZE;
+    this.sizeGovernor = new SizeGovernor(
+        maxMessageSize > 0 ? Math.min(maxMessageSize, uncompressedLimit) : uncompressedLimit);
+    this.messageId = new byte[MESSAGE_ID_SIZE];
+    this.header = ByteBuffer.allocate(MAX_UDP_DATAGRAM_SIZE - CHUNK_SIZE);
+    this.chunk = new ByteBuffer[] {header, null};
+    this.datagrams = new AtomicLong();
+    this.telemetry =
+        new SocketTelemetry("udp://" + hostname + ":" + port, sendBufferSize, maxSendBufferSize);
     this.lock = new ReentrantLock();
   }
 
@@ -168,9 +226,12 @@ public class UdpTransmitter implements PayloadTransmitter, Closeable {
       channel.connect(address);
       // Make UDP blocking makes not sence.
       channel.configureBlocking(false);
-      if (sendBufferSize > 0) {
-        channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+      // Buffer tuned before reconnect is kept.
+      int requestedSendBufferSize = telemetry.getRequestedSendBufferSize();
+      if (requestedSendBufferSize > 0) {
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, requestedSendBufferSize);
       }
+      telemetry.connected(channel.getOption(StandardSocketOptions.SO_SNDBUF));
     } finally {
       lock.unlock();
     }
@@ -180,47 +241,143 @@ public class UdpTransmitter implements PayloadTransmitter, Closeable {
   public void transmit(Payload payload) throws Exception {
     lock.lock();
     try {
-      // In case you use log4j2 JsonStream instances is reused by ThreadLocal and not created every time.
-      String message = JsonStream.serialize(payload);
-      byte[] bytes = message.getBytes(CHARSET);
-      if (useCompression && bytes.length > compressionLimit) {
-        bytes = compress(bytes, compressionLevel);
+      // Message which does not fit must not break the channel.
+      byte[] bytes = encode(payload);
+      // Channel is opened lazily and reopened after failure.
+      if (channel == null) {
+        open();
+      }
+      send(bytes);
+      if (adaptiveCompression != null) {
+        adaptiveCompression.sent(serializedSize, bytes.length);
       }
+    } finally {
+      lock.unlock();
+    }
+  }
 
-      if (bytes.length <= MAX_UDP_DATAGRAM_SIZE) {
-        channel.write(ByteBuffer.wrap(bytes));
-        return;
+  private byte[] encode(Payload payload) throws IOException {
+    // In case you use log4j2 JsonStream instances is reused by ThreadLocal and not created every time.
+    byte[] serialized = sizeGovernor.serialize(payload);
+    byte[] bytes = compress(serialized);
+    for (int attempt = 0; bytes.length > MAX_CHUNKED_SIZE; attempt++) {
+      if (attempt == SizeGovernor.MAX_ATTEMPTS) {
+        throw new IOException("Message of " + bytes.length + " bytes exceeds " + MAX_CHUNKS
+                              + " chunks after truncation");
       }
+      // Scale excess by compression ratio as truncation works on uncompressed payload.
+      long excess = (long) (bytes.length - MAX_CHUNKED_SIZE) * serialized.length / bytes.length;
+      sizeGovernor.truncate(payload, (int) excess + 1);
+      serialized = PayloadSerializer.serialize(payload);
+      bytes = compress(serialized);
+    }
+    serializedSize = serialized.length;
+    return bytes;
+  }
 
-      int chunks = bytes.length / CHUNK_SIZE + 1;
-      if (chunks > Byte.MAX_VALUE) {
+  private void send(byte[] bytes) throws IOException {
+    try {
+      ByteBuffer data = ByteBuffer.wrap(bytes);
+      if (bytes.length <= MAX_UDP_DATAGRAM_SIZE) {
+        record(bytes.length, channel.write(data));
         return;
       }
 
-      byte[] messageId = new byte[MESSAGE_ID_SIZE];
+      int chunks = (bytes.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
       thSecureRandom.get().nextBytes(messageId);
-      ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
-
+      chunk[1] = data;
       for (int i = 0; i < chunks; i++) {
-        int dataStart = i * CHUNK_SIZE;
-        int dataEnd = Math.min((i + 1) * CHUNK_SIZE, bytes.length);
-        buffer.put(GELF_CHUNKED_ID);
-        buffer.put(messageId);
-        buffer.put((byte) i);
-        buffer.put((byte) chunks);
-        buffer.put(copyOfRange(bytes, dataStart, dataEnd));
-        buffer.flip();
-        channel.write(buffer);
-        buffer.clear();
+        header.clear();
+        header.put(GELF_CHUNKED_ID);
+        header.put(messageId);
+        header.put((byte) i);
+        header.put((byte) chunks);
+        header.flip();
+        data.limit(Math.min((i + 1) * CHUNK_SIZE, bytes.length));
+        data.position(i * CHUNK_SIZE);
+        // Gathering write sends header and slice of message as one datagram without copying.
+        int length = header.remaining() + data.remaining();
+        record(length, (int) channel.write(chunk));
       }
-    } catch (Exception e) {
+    } catch (IOException | RuntimeException e) {
       channel = null;
       throw e;
-    } finally {
-      lock.unlock();
     }
   }
 
+  // Non-blocking channel does not accept datagram when send buffer is full, datagram is lost.
+  private void record(int length, int written) throws IOException {
+    telemetry.recordWrite(length, written);
+    if (written > 0) {
+      datagrams.incrementAndGet();
+      return;
+    }
+    telemetry.recordDrop();
+    int size = telemetry.grow();
+    if (size > 0) {
+      channel.setOption(StandardSocketOptions.SO_SNDBUF, size);
+      telemetry.resized(channel.getOption(StandardSocketOptions.SO_SNDBUF));
+    }
+  }
+
+  private byte[] compress(byte[] bytes) {
+    if (adaptiveCompression != null) {
+      int level = adaptiveCompression.decide(bytes.length);
+      if (level >= 0) {
+        long start = System.nanoTime();
+        byte[] compressed = compress(bytes, level);
+        adaptiveCompression.record(bytes.length, compressed.length, System.nanoTime() - start);
+        if (compressed.length < bytes.length) {
+          return compressed;
+        }
+      }
+    } else if (useCompression && bytes.length > compressionLimit) {
+      return compress(bytes, compressionLevel);
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets telemetry of the socket.
+   *
+   * @return the socket telemetry.
+   */
+  public SocketTelemetry getTelemetry() {
+    return telemetry;
+  }
+
+  @Override
+  public List<SocketTelemetry> getSocketTelemetry() {
+    return Collections.singletonList(telemetry);
+  }
+
+  /**
+   * Gets number of datagrams accepted by the socket, chunks of message are counted one by one.
+   *
+   * @return the number of datagrams.
+   */
+  public long getDatagrams() {
+    return datagrams.get();
+  }
+
+  /**
+   * Gets size governor truncating messages which exceed the budget.
+   *
+   * @return the size governor.
+   */
+  public SizeGovernor getSizeGovernor() {
+    return sizeGovernor;
+  }
+
+  /**
+   * Gets adaptive compression decisions and ratios.
+   *
+   * @return the adaptive compression statistics or null in case it is not enabled.
+   */
+  public AdaptiveCompression getAdaptiveCompression() {
+    return adaptiveCompression;
+  }
+
   @Override
   public void close() throws IOException {
     lock.lock();
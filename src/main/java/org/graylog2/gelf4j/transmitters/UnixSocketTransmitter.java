@@ -0,0 +1,169 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadSerializer;
+
+/**
+ * Unix domain socket transmitter send messages to local relay or log shipper listening on socket path.
+ * <p>
+ * Unix domain sockets are available for {@link SocketChannel} since JDK 16. Library is compiled for
+ * Java 8, so <code>java.net.UnixDomainSocketAddress</code> is looked up by reflection.
+ * On older runtimes transmitter falls back to TCP connection to the relay on loopback interface.
+ * </p>
+ * <p>
+ * Messages are framed according to {@link Framing}: null byte delimited as for GELF TCP, or prefixed with length.
+ * </p>
+ *
+ * @author Andrey Minov
+ */
+public class UnixSocketTransmitter implements PayloadTransmitter, Closeable {
+  private static final ProtocolFamily UNIX_FAMILY;
+  private static final Method OPEN_CHANNEL;
+  private static final Method ADDRESS_OF;
+
+  static {
+    ProtocolFamily family = null;
+    Method open = null;
+    Method addressOf = null;
+    try {
+      family = StandardProtocolFamily.valueOf("UNIX");
+      open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+    } catch (IllegalArgumentException | ReflectiveOperationException e) {
+      // Runtime is older than JDK 16, fallback to TCP.
+      family = null;
+    }
+    UNIX_FAMILY = family;
+    OPEN_CHANNEL = open;
+    ADDRESS_OF = addressOf;
+  }
+
+  private final String socketPath;
+  private final String fallbackHost;
+  private final int fallbackPort;
+  private final int soTimeout;
+  private final FrameEncoder encoder;
+  private SocketChannel channel;
+  private Lock lock;
+
+  /**
+   * Instantiates a new Unix domain socket transmitter.
+   *
+   * @param socketPath   the path of the socket relay listens on.
+   * @param fallbackHost the host of relay TCP input in case runtime does not support Unix domain sockets.
+   * @param fallbackPort the port of relay TCP input in case runtime does not support Unix domain sockets.
+   * @param soTimeout    the socket timeout of fallback TCP connection.
+   * @param framing      the framing of messages.
+   */
+  public UnixSocketTransmitter(String socketPath, String fallbackHost, int fallbackPort,
+                               int soTimeout, Framing framing) {
+    this.socketPath = socketPath;
+    this.fallbackHost = fallbackHost;
+    this.fallbackPort = fallbackPort;
+    this.soTimeout = soTimeout;
+    this.encoder = new FrameEncoder(framing, FrameCompression.NONE, 0, 0);
+    this.lock = new ReentrantLock();
+  }
+
+  /**
+   * Checks that current runtime supports Unix domain socket channels.
+   *
+   * @return true in case JDK 16+ Unix domain sockets are available.
+   */
+  public static boolean isUnixDomainSupported() {
+    return UNIX_FAMILY != null;
+  }
+
+  private static SocketChannel openUnixChannel(String path) throws IOException {
+    try {
+      SocketChannel channel = (SocketChannel) OPEN_CHANNEL.invoke(null, UNIX_FAMILY);
+      channel.connect((SocketAddress) ADDRESS_OF.invoke(null, path));
+      return channel;
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Cannot connect to socket " + path, e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new IOException("Cannot connect to socket " + path, e);
+    }
+  }
+
+  @Override
+  public void open() throws IOException {
+    lock.lock();
+    try {
+      if (isUnixDomainSupported()) {
+        channel = openUnixChannel(socketPath);
+      } else {
+        channel = SocketChannel.open();
+        channel.socket().setSoTimeout(soTimeout);
+        channel.socket().connect(new InetSocketAddress(fallbackHost, fallbackPort), soTimeout);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void transmit(Payload payload) throws Exception {
+    lock.lock();
+    try {
+      byte[] bytes = PayloadSerializer.serialize(payload);
+      // Closed transmitter fails before connection is opened again.
+      ByteBuffer buffer = encoder.encode(bytes);
+      // Relay might be restarted, so reconnect as TCP transmitter does.
+      if (channel == null || !channel.isOpen() || !channel.isConnected()) {
+        open();
+      }
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (Exception e) {
+      closeQuietly();
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException e) {
+      // Connection is broken anyway.
+    }
+    channel = null;
+  }
+
+  /**
+   * Close connection and release frame encoder, transmitter cannot be used after.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } finally {
+      encoder.end();
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.graylog2.gelf4j.utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Access to runtime specific fast paths.
+ * <p/>
+ * This is Java 8 baseline. Library is packaged as multi-release JAR, Java 9+ runtimes load
+ * version of this class from <code>META-INF/versions/9</code> which uses newer JDK APIs.
+ *
+ * @author Andrey Minov
+ */
+public final class Platform {
+
+  private Platform() {
+  }
+
+  /**
+   * Gets feature version of the JDK this class is compiled for.
+   *
+   * @return 8 for baseline class.
+   */
+  public static int version() {
+    return 8;
+  }
+
+  /**
+   * Read value with acquire semantics. Java 8 has only volatile read.
+   *
+   * @param reference the reference to read.
+   * @param <T>       the type of the value.
+   * @return the current value.
+   */
+  public static <T> T getAcquire(AtomicReference<T> reference) {
+    return reference.get();
+  }
+
+  /**
+   * Find stack frame which called logger, i.e. first frame after the last frame of logger class.
+   * Java 8 captures the whole stack trace as array of elements, it is still much cheaper than
+   * printing and parsing it. Nothing is cached per logger class, caller differs for every call site.
+   *
+   * @param fqcn the fully qualified class name of the logger.
+   * @return the caller frame or <code>null</code> in case logger is not on the stack, i.e. event
+   *     is processed asynchronously.
+   */
+  public static StackTraceElement findCaller(String fqcn) {
+    StackTraceElement[] elements = new Throwable().getStackTrace();
+    boolean found = false;
+    for (StackTraceElement element : elements) {
+      boolean logger = fqcn.equals(element.getClassName());
+      if (found && !logger) {
+        return element;
+      }
+      found |= logger;
+    }
+    return null;
+  }
+}
@@ -1,8 +1,7 @@
 package org.graylog2.gelf4j.utils;
 
-import java.util.Map;
-import java.util.regex.Pattern;
-
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.ContextDataWriter;
 import org.graylog2.gelf4j.message.Payload;
 
 /**
@@ -12,8 +11,6 @@ import org.graylog2.gelf4j.message.Payload;
  * @author Andrey Minov
  */
 public final class Validations {
-  private static final Pattern ADDITIONAL_PARAMETER_PATTERN = Pattern.compile("^[\\w\\.\\-]*$");
-
   /**
    * Check that GELF message payload is valid.
    *
@@ -40,9 +37,32 @@ public final class Validations {
                                                    && payload.getShortMessageBuffer().limit() > 0);
   }
 
+  /**
+   * Checks that name of additional field matches GELF pattern <code>^[\w\.\-]*$</code>.
+   * Implemented without regular expression to avoid matcher allocation per field.
+   *
+   * @param name the name of additional field without underscore prefix.
+   * @return true in case name is valid.
+   */
+  public static boolean isValidFieldName(CharSequence name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_'
+            || c == '.' || c == '-')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static boolean checkNames(Payload payload) {
-    Map<String, String> fs = payload.getAdditionalFields();
-    return fs == null || fs.isEmpty() || fs.keySet().stream()
-                                           .allMatch(ADDITIONAL_PARAMETER_PATTERN.asPredicate());
+    AdditionalFields fs = payload.getAdditionalFields();
+    for (int i = 0; i < fs.size(); i++) {
+      if (!isValidFieldName(fs.getName(i))) {
+        return false;
+      }
+    }
+    ContextDataWriter writer = payload.getContextDataWriter();
+    return writer == null || writer.checkNames(payload.getContextData());
   }
 }
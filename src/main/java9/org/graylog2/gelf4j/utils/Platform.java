@@ -0,0 +1,57 @@
+package org.graylog2.gelf4j.utils;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Access to runtime specific fast paths.
+ * <p/>
+ * This is Java 9+ version of the class packaged into <code>META-INF/versions/9</code>.
+ * Public API must be the same as of Java 8 baseline.
+ *
+ * @author Andrey Minov
+ */
+public final class Platform {
+  private static final StackWalker WALKER = StackWalker.getInstance();
+
+  private Platform() {
+  }
+
+  /**
+   * Gets feature version of the JDK this class is compiled for.
+   *
+   * @return 9 for versioned class.
+   */
+  public static int version() {
+    return 9;
+  }
+
+  /**
+   * Read value with acquire semantics, weaker than volatile read and enough to observe
+   * state published by compare and set.
+   *
+   * @param reference the reference to read.
+   * @param <T>       the type of the value.
+   * @return the current value.
+   */
+  public static <T> T getAcquire(AtomicReference<T> reference) {
+    return reference.getAcquire();
+  }
+
+  /**
+   * Find stack frame which called logger, i.e. first frame after the last frame of logger class.
+   * Stack is walked lazily and stops at the caller, frames are not materialized. Nothing is cached
+   * per logger class, caller differs for every call site and only the walker is reused.
+   *
+   * @param fqcn the fully qualified class name of the logger.
+   * @return the caller frame or <code>null</code> in case logger is not on the stack, i.e. event
+   *     is processed asynchronously.
+   */
+  public static StackTraceElement findCaller(String fqcn) {
+    Optional<StackWalker.StackFrame> caller = WALKER.walk(frames -> frames
+        .dropWhile(frame -> !fqcn.equals(frame.getClassName()))
+        .dropWhile(frame -> fqcn.equals(frame.getClassName()))
+        .findFirst());
+    return caller.map(StackWalker.StackFrame::toStackTraceElement).orElse(null);
+  }
+}
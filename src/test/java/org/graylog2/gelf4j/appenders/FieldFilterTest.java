@@ -0,0 +1,62 @@
+package org.graylog2.gelf4j.appenders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FieldFilter} rules.
+ */
+public class FieldFilterTest {
+
+  @Test
+  public void noRulesAllowAll() {
+    assertSame(FieldFilter.ALLOW_ALL, FieldFilter.compile(null, " ", ""));
+    assertEquals("any", FieldFilter.ALLOW_ALL.apply("any"));
+  }
+
+  @Test
+  public void includeExactAndPrefix() {
+    FieldFilter filter = FieldFilter.compile("user_id, request.*", null, null);
+    assertEquals("user_id", filter.apply("user_id"));
+    assertEquals("request.id", filter.apply("request.id"));
+    assertEquals("request.", filter.apply("request."));
+    assertNull(filter.apply("user"));
+    assertNull(filter.apply("user_id2"));
+    assertNull(filter.apply("request"));
+    assertNull(filter.apply("session"));
+  }
+
+  @Test
+  public void excludeWinsOverInclude() {
+    FieldFilter filter = FieldFilter.compile("request.*", "request.secret*,request.token", null);
+    assertEquals("request.id", filter.apply("request.id"));
+    assertNull(filter.apply("request.secret_key"));
+    assertNull(filter.apply("request.token"));
+    assertEquals("request.tokens", filter.apply("request.tokens"));
+    FieldFilter excludeOnly = FieldFilter.compile(null, "*", null);
+    assertNull(excludeOnly.apply("anything"));
+  }
+
+  @Test
+  public void renameIncludedKeys() {
+    FieldFilter filter = FieldFilter.compile("trace*", null, "traceId=trace_id, userId=user_id");
+    assertEquals("trace_id", filter.apply("traceId"));
+    assertEquals("traceIds", filter.apply("traceIds"));
+    // Renaming does not include key.
+    assertNull(filter.apply("userId"));
+    assertEquals("user_id", FieldFilter.compile(null, null, "userId=user_id").apply("userId"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectInvalidRenameTarget() {
+    FieldFilter.compile(null, null, "userId=user id");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectWildcardInTheMiddle() {
+    FieldFilter.compile("re*quest", null, null);
+  }
+}
@@ -0,0 +1,61 @@
+package org.graylog2.gelf4j.appenders;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog2.gelf4j.transmitters.TransmitterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of {@link Log4j2GelfAppender} sharing transmitter on reconfiguration.
+ */
+public class Log4j2GelfAppenderTest {
+  private static final String SOCKET_PATH = "/nonexistent/relay.sock";
+  private static final String KEY = "unix://" + SOCKET_PATH;
+
+  private final List<Log4j2GelfAppender> appenders = new ArrayList<>();
+
+  private Log4j2GelfAppender start(String fallbackHost, int fallbackPort) {
+    Log4j2GelfAppender appender = Log4j2GelfAppender.newBuilder()
+        .setName("gelf")
+        .setType("unix")
+        .setSocketPath(SOCKET_PATH)
+        .setFallbackHost(fallbackHost)
+        .setFallbackPort(fallbackPort)
+        .build();
+    appender.start();
+    appenders.add(appender);
+    return appender;
+  }
+
+  @After
+  public void destroy() {
+    appenders.forEach(appender -> appender.stop(10, TimeUnit.MILLISECONDS));
+    assertEquals(0, TransmitterRegistry.getInstance().getReferences(KEY));
+  }
+
+  @Test
+  public void sameSettingsShareTransmitter() {
+    start("127.0.0.1", 1);
+    start("127.0.0.1", 1);
+    assertEquals(2, TransmitterRegistry.getInstance().getReferences(KEY));
+  }
+
+  @Test
+  public void changedFallbackPortCreatesTransmitter() {
+    start("127.0.0.1", 1);
+    start("127.0.0.1", 2);
+    assertEquals(1, TransmitterRegistry.getInstance().getReferences(KEY));
+  }
+
+  @Test
+  public void changedFallbackHostCreatesTransmitter() {
+    start("127.0.0.1", 1);
+    start("localhost", 1);
+    assertEquals(1, TransmitterRegistry.getInstance().getReferences(KEY));
+  }
+}
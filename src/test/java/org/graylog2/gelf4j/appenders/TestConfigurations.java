@@ -0,0 +1,43 @@
+package org.graylog2.gelf4j.appenders;
+
+import java.util.Collections;
+
+/**
+ * Logging configurations for tests of transformers outside of appenders package.
+ */
+public final class TestConfigurations {
+
+  private TestConfigurations() {
+  }
+
+  /**
+   * Configuration with default appender options, exceptions and thread name are logged.
+   *
+   * @return the logging configuration.
+   */
+  public static LoggingConfiguration defaults() {
+    return new LoggingConfiguration("gelf-java", true, true, false, false, false, false, false,
+        false, false, Collections.emptyMap(), null, false, false, false, false);
+  }
+
+  /**
+   * Configuration with default appender options and line and file of the call logged.
+   *
+   * @return the logging configuration.
+   */
+  public static LoggingConfiguration withLocation() {
+    return new LoggingConfiguration("gelf-java", true, true, true, true, false, false, false,
+        false, false, Collections.emptyMap(), null, false, false, false, false);
+  }
+
+  /**
+   * Configuration with default appender options and entries of map messages logged.
+   *
+   * @param inferMapTypes true in case numbers and booleans should be detected in map values.
+   * @return the logging configuration.
+   */
+  public static LoggingConfiguration withMapValues(boolean inferMapTypes) {
+    return new LoggingConfiguration("gelf-java", true, true, false, false, false, false, false,
+        false, false, Collections.emptyMap(), null, false, false, true, inferMapTypes);
+  }
+}
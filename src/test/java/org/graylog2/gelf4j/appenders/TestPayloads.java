@@ -0,0 +1,39 @@
+package org.graylog2.gelf4j.appenders;
+
+import com.jsoniter.output.EncodingMode;
+import com.jsoniter.output.JsonStream;
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.message.PayloadEncoder;
+import org.graylog2.gelf4j.message.StringBuilderEncoder;
+
+/**
+ * Payloads and JSON encoders for tests which serialize payloads without appender.
+ */
+public final class TestPayloads {
+
+  private TestPayloads() {
+  }
+
+  /**
+   * Register payload encoders in dynamic mode of jsoniter, as appenders do on start.
+   */
+  public static void registerEncoders() {
+    JsonStream.setMode(EncodingMode.DYNAMIC_MODE);
+    JsonStream.registerNativeEncoder(Payload.class, new PayloadEncoder());
+    JsonStream.registerNativeEncoder(StringBuilder.class, new StringBuilderEncoder());
+  }
+
+  /**
+   * Payload of version 1.1 sent from localhost.
+   *
+   * @param message the short message.
+   * @return the payload.
+   */
+  public static Payload payload(CharSequence message) {
+    Payload payload = new Payload();
+    payload.setVersion("1.1");
+    payload.setHost("localhost");
+    payload.setShortMessage(message);
+    return payload;
+  }
+}
@@ -0,0 +1,40 @@
+package org.graylog2.gelf4j.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BackgroundThreadFactory}.
+ */
+public class BackgroundThreadFactoryTest {
+
+  @Test
+  public void platformThreadsAreNamedDaemons() {
+    BackgroundThreadFactory factory = new BackgroundThreadFactory("test", ThreadMode.PLATFORM);
+    assertFalse(factory.isVirtual());
+    Thread first = factory.newThread(() -> { });
+    Thread second = factory.newThread(() -> { });
+    assertEquals("test-0", first.getName());
+    assertEquals("test-1", second.getName());
+    assertTrue(first.isDaemon());
+  }
+
+  @Test
+  public void virtualThreadsWhenRuntimeSupportsThem() throws Exception {
+    BackgroundThreadFactory factory = new BackgroundThreadFactory("test", ThreadMode.VIRTUAL);
+    assertEquals(BackgroundThreadFactory.isVirtualSupported(), factory.isVirtual());
+    CountDownLatch latch = new CountDownLatch(1);
+    Thread thread = factory.newThread(latch::countDown);
+    assertEquals("test-0", thread.getName());
+    assertTrue(thread.isDaemon());
+    thread.start();
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    thread.join(1000);
+  }
+}
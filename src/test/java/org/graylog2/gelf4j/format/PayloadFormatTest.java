@@ -0,0 +1,131 @@
+package org.graylog2.gelf4j.format;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.jsoniter.JsonIterator;
+import com.jsoniter.any.Any;
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.Test;
+
+/**
+ * Tests for built-in {@link PayloadFormat} formats.
+ */
+public class PayloadFormatTest {
+
+  private static Payload payload() {
+    Payload payload = new Payload();
+    payload.setVersion("1.1");
+    payload.setHost("web-1");
+    payload.setShortMessage("User \"alice\" logged in");
+    payload.setTimestampMillis(1500000000123L);
+    payload.setLevel(3);
+    payload.addAdditionalField("thread", "main");
+    payload.addAdditionalField("user_id", 42L);
+    payload.addAdditionalField("ratio", 0.5);
+    return payload;
+  }
+
+  @Test
+  public void ecsDocument() throws IOException {
+    byte[] bytes = PayloadFormat.ECS.format(payload());
+    Any document = JsonIterator.deserialize(new String(bytes, StandardCharsets.UTF_8));
+    assertEquals("2017-07-14T02:40:00.123Z", document.toString("@timestamp"));
+    assertEquals("error", document.toString("log.level"));
+    assertEquals(3, document.toInt("log.syslog.severity.code"));
+    assertEquals("User \"alice\" logged in", document.toString("message"));
+    assertEquals("web-1", document.toString("host.hostname"));
+    assertEquals("main", document.toString("process.thread.name"));
+    assertEquals(42, document.toLong("user_id"));
+    assertEquals(0.5, document.toDouble("ratio"), 0);
+    // NDJSON framing needs document on one line.
+    assertTrue(new String(bytes, StandardCharsets.UTF_8).indexOf('\n') < 0);
+  }
+
+  @Test
+  public void binaryLayout() throws IOException {
+    Payload payload = payload();
+    payload.addAdditionalField("count", -1L);
+    byte[] bytes = PayloadFormat.BINARY.format(payload);
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+    assertEquals(BinaryFormatter.VERSION, input.readByte());
+    assertEquals(1500000000L, readVarint(input));
+    assertEquals(123, readVarint(input));
+    assertEquals(3, input.readByte());
+    assertEquals(3, input.readByte());
+    assertEquals("web-1", readString(input));
+    assertEquals("User \"alice\" logged in", readString(input));
+    assertEquals("", readString(input));
+    assertEquals("", readString(input));
+    assertEquals("", readString(input));
+    assertEquals(0, readVarint(input));
+    assertEquals("", readString(input));
+    assertEquals(4, readVarint(input));
+    assertEquals("thread", readString(input));
+    assertEquals(AdditionalFields.STRING, input.readByte());
+    assertEquals("main", readString(input));
+    assertEquals("user_id", readString(input));
+    assertEquals(AdditionalFields.LONG, input.readByte());
+    assertEquals(84, readVarint(input));
+    assertEquals("ratio", readString(input));
+    assertEquals(AdditionalFields.DOUBLE, input.readByte());
+    assertEquals(0.5, input.readDouble(), 0);
+    assertEquals("count", readString(input));
+    assertEquals(AdditionalFields.LONG, input.readByte());
+    assertEquals(1, readVarint(input));
+    assertEquals(0, input.available());
+  }
+
+  @Test
+  public void parse() {
+    assertSame(PayloadFormat.GELF, PayloadFormat.parse(null));
+    assertSame(PayloadFormat.ECS, PayloadFormat.parse("NDJSON"));
+    assertSame(PayloadFormat.BINARY, PayloadFormat.parse("binary"));
+    assertTrue(PayloadFormat.parse(UpperCaseFormatter.class.getName())
+        instanceof UpperCaseFormatter);
+  }
+
+  @Test
+  public void customFormatter() throws IOException {
+    PayloadFormatter formatter = PayloadFormat.parse(UpperCaseFormatter.class.getName());
+    assertArrayEquals("WEB-1".getBytes(StandardCharsets.UTF_8), formatter.format(payload()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectUnknownFormat() {
+    PayloadFormat.parse("java.lang.String");
+  }
+
+  private static long readVarint(DataInputStream input) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = input.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] bytes = new byte[(int) readVarint(input)];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public static class UpperCaseFormatter implements PayloadFormatter {
+    @Override
+    public byte[] format(Payload payload) {
+      return payload.getHost().toString().toUpperCase().getBytes(StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package org.graylog2.gelf4j.harness;
+
+import static org.graylog2.gelf4j.Constants.SENDER_THREAD_PREFIX;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.logging.Logger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.graylog2.gelf4j.appenders.Log4j2GelfAppender;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Allocation budget of steady state append, encode and transmit path of {@link Log4j2GelfAppender}
+ * for each transport and option combination.
+ * <p/>
+ * Scenario fails in case bytes allocated per event by producer thread, and by sender thread for
+ * queued appender, exceed the budget. Budgets follow measured allocation with some headroom, lower
+ * them when path gets cheaper. Path is not garbage free yet: serialized JSON is still copied once
+ * to bytes per event, message is copied to String by its encoder and payload fields are boxed.
+ * All budgets can be overridden by <code>gelf4j.alloc.budget</code> system property, i.e. to check
+ * that path is garbage free.
+ */
+@Category(Measurement.class)
+public class AllocationBudgetTest {
+  private static final Logger LOG = Logger.getLogger(AllocationBudgetTest.class.getName());
+  private static final int WARM_UP = 20000;
+  private static final int EVENTS = 20000;
+  private static final long TIMEOUT_MS = 10000;
+
+  private static Log4j2GelfAppender.Builder builder(String type, int port) {
+    return Log4j2GelfAppender.newBuilder()
+        .setName("alloc-" + type)
+        .setType(type)
+        .setHostname("localhost")
+        .setPort(port);
+  }
+
+  private static LogEvent event() {
+    SortedArrayStringMap contextData = new SortedArrayStringMap();
+    contextData.putValue("request_id", "4bf92f3577b34da6");
+    contextData.putValue("user", "alice");
+    return Log4jLogEvent.newBuilder()
+        .setLoggerName("alloc")
+        .setLevel(Level.INFO)
+        .setThreadName("main")
+        .setTimeMillis(System.currentTimeMillis())
+        .setContextData(contextData)
+        .setMessage(new ParameterizedMessage("User {} logged in from {}", "alice", "10.0.0.1"))
+        .build();
+  }
+
+  private static void run(String name, GelfSink sink, Log4j2GelfAppender.Builder builder,
+                          String threadPrefix, long budget) throws InterruptedException {
+    AllocationProbe probe = new AllocationProbe(threadPrefix);
+    assumeTrue(probe.isSupported());
+    budget = Long.getLong("gelf4j.alloc.budget", budget);
+    Log4j2GelfAppender appender = builder.build();
+    appender.start();
+    try {
+      LogEvent event = event();
+      for (int i = 0; i < WARM_UP; i++) {
+        appender.append(event);
+      }
+      sink.await(WARM_UP, TIMEOUT_MS);
+      probe.start();
+      for (int i = 0; i < EVENTS; i++) {
+        appender.append(event);
+      }
+      // Queued events are sent by background thread, wait for it to finish.
+      sink.await(WARM_UP + EVENTS, TIMEOUT_MS);
+      long perEvent = probe.allocated() / EVENTS;
+      LOG.info(name + ": " + perEvent + " bytes per event, budget " + budget);
+      assertTrue(name + " allocates " + perEvent + " bytes per event, budget is " + budget,
+          perEvent <= budget);
+    } finally {
+      appender.stop();
+    }
+  }
+
+  @Test
+  public void tcp() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp", sink, builder("tcp", sink.getPort()), null, 450);
+    }
+  }
+
+  @Test
+  public void tcpWithFields() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp fields", sink, builder("tcp", sink.getPort())
+          .setFacility("alloc")
+          .setLogThread(true)
+          .setLogLogger(true)
+          .setLogMdcValues(true), null, 600);
+    }
+  }
+
+  @Test
+  public void tcpWithTemplate() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp template", sink, builder("tcp", sink.getPort()).setLogTemplate(true), null, 650);
+    }
+  }
+
+  @Test
+  public void tcpWithSizeLimit() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp size limit", sink, builder("tcp", sink.getPort()).setMaxMessageSize(8192), null,
+          460);
+    }
+  }
+
+  @Test
+  public void tcpWithCircuitBreaker() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp circuit breaker", sink, builder("tcp", sink.getPort()).setUseCircuitBreaker(true),
+          null, 450);
+    }
+  }
+
+  @Test
+  public void tcpPooled() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp pooled", sink, builder("tcp", sink.getPort()).setPayloadPoolSize(64), null, 470);
+    }
+  }
+
+  @Test
+  public void tcpQueued() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      run("tcp queued", sink, builder("tcp", sink.getPort())
+          .setQueueSize(1024)
+          .setOverflowPolicy("block"),
+          SENDER_THREAD_PREFIX, 550);
+    }
+  }
+
+  @Test
+  public void udp() throws Exception {
+    try (GelfSink sink = GelfSink.udp()) {
+      run("udp", sink, builder("udp", sink.getPort()), null, 520);
+    }
+  }
+
+  @Test
+  public void udpCompressed() throws Exception {
+    try (GelfSink sink = GelfSink.udp()) {
+      run("udp compressed", sink, builder("udp", sink.getPort())
+          .setUseCompression(true)
+          .setCompressionLimit(0), null, 950);
+    }
+  }
+}
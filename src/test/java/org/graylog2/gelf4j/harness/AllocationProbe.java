@@ -0,0 +1,81 @@
+package org.graylog2.gelf4j.harness;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Probe of heap bytes allocated by the current thread and by threads with given name prefix,
+ * i.e. background sender threads.
+ * <p/>
+ * Uses HotSpot extension of {@link java.lang.management.ThreadMXBean}, on other JVMs probe is not
+ * supported and scenarios using it should be skipped.
+ *
+ * @author Andrey Minov
+ */
+public class AllocationProbe {
+  private final com.sun.management.ThreadMXBean threads;
+  private final String threadPrefix;
+  private long[] ids;
+  private long[] start;
+
+  /**
+   * Instantiates a new allocation probe.
+   *
+   * @param threadPrefix the name prefix of background threads counted together with current
+   *                     thread, null in case only current thread is counted.
+   */
+  public AllocationProbe(String threadPrefix) {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    this.threads = bean instanceof com.sun.management.ThreadMXBean
+                   ? (com.sun.management.ThreadMXBean) bean : null;
+    this.threadPrefix = threadPrefix;
+  }
+
+  /**
+   * Check if JVM reports allocated bytes per thread.
+   *
+   * @return true in case probe can measure allocations.
+   */
+  public boolean isSupported() {
+    return threads != null && threads.isThreadAllocatedMemorySupported()
+           && threads.isThreadAllocatedMemoryEnabled();
+  }
+
+  /**
+   * Start measurement, background threads must be already started.
+   */
+  public void start() {
+    List<Thread> measured = new ArrayList<>();
+    measured.add(Thread.currentThread());
+    if (threadPrefix != null) {
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().startsWith(threadPrefix)) {
+          measured.add(thread);
+        }
+      }
+    }
+    ids = new long[measured.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = measured.get(i).getId();
+    }
+    start = threads.getThreadAllocatedBytes(ids);
+  }
+
+  /**
+   * Gets number of bytes allocated by measured threads since {@link #start()}.
+   * Threads which are terminated in the meantime are not counted.
+   *
+   * @return the number of allocated bytes.
+   */
+  public long allocated() {
+    long[] end = threads.getThreadAllocatedBytes(ids);
+    long total = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (start[i] >= 0 && end[i] >= 0) {
+        total += end[i] - start[i];
+      }
+    }
+    return total;
+  }
+}
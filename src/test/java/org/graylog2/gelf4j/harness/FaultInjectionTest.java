@@ -0,0 +1,216 @@
+package org.graylog2.gelf4j.harness;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.graylog2.gelf4j.appenders.TestPayloads;
+import org.graylog2.gelf4j.cb.CircuitBreakerTransmitter;
+import org.graylog2.gelf4j.cb.CircuitOpenException;
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.queue.OverflowPolicy;
+import org.graylog2.gelf4j.queue.PriorityLaneTransmitter;
+import org.graylog2.gelf4j.transmitters.PayloadTransmitter;
+import org.graylog2.gelf4j.transmitters.TcpTransmitter;
+import org.graylog2.gelf4j.transmitters.UdpTransmitter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Resilience scenarios of transmitters behind {@link FaultProxy}: producer latency must stay
+ * bounded when server is slow, black-holed or resets connections, and delivery must recover.
+ * Measured numbers are logged.
+ */
+@Category(Measurement.class)
+public class FaultInjectionTest {
+  private static final Logger LOG = Logger.getLogger(FaultInjectionTest.class.getName());
+  private static final int SO_TIMEOUT_MS = 200;
+
+  private GelfSink sink;
+  private FaultProxy proxy;
+
+  private static Payload payload(String message) {
+    Payload payload = TestPayloads.payload(message);
+    payload.setLevel(6);
+    return payload;
+  }
+
+  private static String text(int length) {
+    char[] text = new char[length];
+    Arrays.fill(text, 'x');
+    return new String(text);
+  }
+
+  @Before
+  public void init() {
+    registerEncoders();
+  }
+
+  @After
+  public void destroy() throws Exception {
+    if (proxy != null) {
+      proxy.close();
+    }
+    if (sink != null) {
+      sink.close();
+    }
+  }
+
+  private void startTcp() throws Exception {
+    sink = GelfSink.tcp();
+    proxy = FaultProxy.tcp(sink.getPort());
+  }
+
+  @Test
+  public void blackholeBoundsProducerLatency() throws Exception {
+    startTcp();
+    proxy.setBlackhole(true);
+    TcpTransmitter transmitter =
+        new TcpTransmitter("localhost", proxy.getPort(), SO_TIMEOUT_MS, false, 4096);
+    Payload payload = payload(text(256 * 1024));
+    long max = 0;
+    int timeouts = 0;
+    for (int i = 0; i < 40 && timeouts < 3; i++) {
+      long start = System.nanoTime();
+      try {
+        transmitter.transmit(payload);
+      } catch (SocketTimeoutException e) {
+        timeouts++;
+      }
+      max = Math.max(max, System.nanoTime() - start);
+    }
+    transmitter.close();
+    LOG.info("blackhole: " + timeouts + " timeouts, max transmit "
+             + TimeUnit.NANOSECONDS.toMillis(max) + "ms");
+    assertTrue(timeouts > 0);
+    assertTrue(max < TimeUnit.MILLISECONDS.toNanos(SO_TIMEOUT_MS * 10));
+  }
+
+  @Test
+  public void circuitBreakerFailsFastAndRecovers() throws Exception {
+    startTcp();
+    proxy.setRefuse(true);
+    PayloadTransmitter transmitter = new CircuitBreakerTransmitter(3, 1, TimeUnit.SECONDS,
+        new TcpTransmitter("localhost", proxy.getPort(), SO_TIMEOUT_MS, true, -1));
+    boolean open = false;
+    for (int i = 0; i < 100 && !open; i++) {
+      try {
+        transmitter.transmit(payload("refused"));
+        Thread.sleep(10);
+      } catch (CircuitOpenException e) {
+        open = true;
+      } catch (Exception e) {
+        // Connection is reset.
+      }
+    }
+    assertTrue(open);
+    long start = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      try {
+        transmitter.transmit(payload("open"));
+      } catch (CircuitOpenException e) {
+        // Fail fast.
+      }
+    }
+    long openNanos = (System.nanoTime() - start) / 1000;
+
+    proxy.setRefuse(false);
+    long recoveryStart = System.nanoTime();
+    GelfSink.Received received = null;
+    while (received == null && System.nanoTime() - recoveryStart < TimeUnit.SECONDS.toNanos(10)) {
+      try {
+        transmitter.transmit(payload("recovered"));
+      } catch (Exception e) {
+        // Circuit is still open.
+      }
+      received = sink.poll(50, TimeUnit.MILLISECONDS);
+    }
+    long recoveryMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recoveryStart);
+    transmitter.close();
+    LOG.info("circuit breaker: open transmit " + openNanos + "ns, recovery "
+             + recoveryMs + "ms");
+    assertTrue(received != null && received.getJson().contains("recovered"));
+    assertTrue(openNanos < TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  @Test
+  public void resetReconnects() throws Exception {
+    startTcp();
+    TcpTransmitter transmitter =
+        new TcpTransmitter("localhost", proxy.getPort(), SO_TIMEOUT_MS, true, -1);
+    transmitter.transmit(payload("before"));
+    assertTrue(sink.poll(5, TimeUnit.SECONDS).getJson().contains("before"));
+    proxy.resetConnections();
+    // Let RST reach the transmitter socket.
+    Thread.sleep(100);
+
+    long start = System.nanoTime();
+    int sent = 0;
+    int failed = 0;
+    GelfSink.Received received = null;
+    while (received == null && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10)) {
+      try {
+        transmitter.transmit(payload("after-" + sent++));
+      } catch (Exception e) {
+        failed++;
+      }
+      received = sink.poll(20, TimeUnit.MILLISECONDS);
+    }
+    long recoveryMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    transmitter.close();
+    LOG.info("reset: " + failed + " failed of " + sent + ", recovery " + recoveryMs
+             + "ms");
+    assertTrue(received != null);
+  }
+
+  @Test
+  public void slowServerDoesNotBlockQueuedProducer() throws Exception {
+    startTcp();
+    proxy.setLatency(50, TimeUnit.MILLISECONDS);
+    proxy.setBandwidth(16 * 1024);
+    PriorityLaneTransmitter transmitter = new PriorityLaneTransmitter(64, 8, OverflowPolicy.DISCARD,
+        new TcpTransmitter("localhost", proxy.getPort(), SO_TIMEOUT_MS, true, -1));
+    transmitter.open();
+    Payload payload = payload(text(1024));
+    long max = 0;
+    for (int i = 0; i < 200; i++) {
+      long start = System.nanoTime();
+      transmitter.transmit(payload);
+      max = Math.max(max, System.nanoTime() - start);
+    }
+    long undelivered = transmitter.shutdown(100, TimeUnit.MILLISECONDS);
+    LOG.info("slow server: max transmit " + TimeUnit.NANOSECONDS.toMicros(max)
+             + "us, dropped " + transmitter.getDropped(6) + ", undelivered "
+             + undelivered);
+    assertTrue(max < TimeUnit.MILLISECONDS.toNanos(50));
+    assertTrue(transmitter.getDropped(6) > 0);
+  }
+
+  @Test
+  public void udpDropsLoseWholeChunkedMessages() throws Exception {
+    sink = GelfSink.udp();
+    proxy = FaultProxy.udp(sink.getPort());
+    proxy.setDropRate(0.2);
+    UdpTransmitter transmitter = new UdpTransmitter("localhost", proxy.getPort(), -1, false, 5, 0);
+    transmitter.open();
+    int sent = 200;
+    for (int i = 0; i < sent; i++) {
+      // Two chunks per message.
+      transmitter.transmit(payload("message-" + i + text(10000)));
+    }
+    transmitter.close();
+    long delivered = sink.await(sent, 1000);
+    LOG.info("udp drops: delivered " + delivered + "/" + sent + ", dropped datagrams "
+             + proxy.getDropped() + ", incomplete " + sink.getIncomplete());
+    assertEquals(2 * sent, proxy.getDropped() + proxy.getForwarded());
+    assertTrue(delivered < sent);
+    assertTrue(sink.getIncomplete() > 0);
+  }
+}
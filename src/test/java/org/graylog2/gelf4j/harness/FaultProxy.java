@@ -0,0 +1,265 @@
+package org.graylog2.gelf4j.harness;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback proxy injecting network faults between transmitter and {@link GelfSink}.
+ * <p/>
+ * Supported faults are latency and bandwidth cap of forwarded data, connection resets (RST),
+ * black hole where proxy accepts connections but stops reading so connection is half-open and
+ * sender buffers fill up, refused connections and random drops of UDP datagrams. Drops use seeded
+ * random, so scenarios are reproducible. Faults can be changed while proxy is running.
+ *
+ * @author Andrey Minov
+ */
+public class FaultProxy implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+  private static final long PAUSE_MS = 5;
+
+  private final int targetPort;
+  private final ServerSocket server;
+  private final DatagramSocket datagrams;
+  private final List<Socket> connections;
+  private final AtomicLong forwarded;
+  private final AtomicLong dropped;
+  private final Random random;
+
+  private volatile long latencyMs;
+  private volatile int bandwidth;
+  private volatile boolean blackhole;
+  private volatile boolean refuse;
+  private volatile double dropRate;
+  private volatile boolean running;
+
+  private FaultProxy(int targetPort, ServerSocket server, DatagramSocket datagrams) {
+    this.targetPort = targetPort;
+    this.server = server;
+    this.datagrams = datagrams;
+    this.connections = new CopyOnWriteArrayList<>();
+    this.forwarded = new AtomicLong();
+    this.dropped = new AtomicLong();
+    this.random = new Random(42);
+    this.running = true;
+    Thread thread = new Thread(server != null ? this::accept : this::relay, "fault-proxy");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Start TCP proxy on random loopback port.
+   *
+   * @param targetPort the loopback port of the sink.
+   * @return the started proxy.
+   * @throws IOException in case socket cannot be bound.
+   */
+  public static FaultProxy tcp(int targetPort) throws IOException {
+    return new FaultProxy(targetPort, new ServerSocket(0, 50, InetAddress.getLoopbackAddress()),
+        null);
+  }
+
+  /**
+   * Start UDP proxy on random loopback port.
+   *
+   * @param targetPort the loopback port of the sink.
+   * @return the started proxy.
+   * @throws IOException in case socket cannot be bound.
+   */
+  public static FaultProxy udp(int targetPort) throws IOException {
+    DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    socket.setReceiveBufferSize(8 << 20);
+    return new FaultProxy(targetPort, null, socket);
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public int getPort() {
+    return server != null ? server.getLocalPort() : datagrams.getLocalPort();
+  }
+
+  /**
+   * Delay every forwarded read or datagram.
+   *
+   * @param latency the delay.
+   * @param unit    the unit of delay.
+   */
+  public void setLatency(long latency, TimeUnit unit) {
+    this.latencyMs = unit.toMillis(latency);
+  }
+
+  /**
+   * Limit rate of forwarded TCP data.
+   *
+   * @param bytesPerSecond the rate, 0 in case of no limit.
+   */
+  public void setBandwidth(int bytesPerSecond) {
+    this.bandwidth = bytesPerSecond;
+  }
+
+  /**
+   * Stop reading from connections and drop all datagrams, connections stay open.
+   *
+   * @param blackhole true to stop forwarding.
+   */
+  public void setBlackhole(boolean blackhole) {
+    this.blackhole = blackhole;
+  }
+
+  /**
+   * Reset every new connection right after it is accepted.
+   *
+   * @param refuse true to refuse connections.
+   */
+  public void setRefuse(boolean refuse) {
+    this.refuse = refuse;
+  }
+
+  /**
+   * Drop part of UDP datagrams.
+   *
+   * @param dropRate the probability from 0 to 1 of datagram to be dropped.
+   */
+  public void setDropRate(double dropRate) {
+    this.dropRate = dropRate;
+  }
+
+  /**
+   * Reset all open connections with RST instead of FIN.
+   */
+  public void resetConnections() {
+    for (Socket socket : connections) {
+      reset(socket);
+    }
+  }
+
+  /**
+   * Gets number of forwarded bytes for TCP or datagrams for UDP.
+   *
+   * @return the number of forwarded units.
+   */
+  public long getForwarded() {
+    return forwarded.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    if (server != null) {
+      server.close();
+      resetConnections();
+    }
+    if (datagrams != null) {
+      datagrams.close();
+    }
+  }
+
+  private void reset(Socket socket) {
+    try {
+      socket.setSoLinger(true, 0);
+      // Wake up pump blocked in read, otherwise close is deferred until the next read returns.
+      socket.shutdownInput();
+      socket.close();
+    } catch (IOException e) {
+      // Already closed.
+    }
+    connections.remove(socket);
+  }
+
+  private void accept() {
+    while (running) {
+      try {
+        Socket client = server.accept();
+        if (refuse) {
+          reset(client);
+          continue;
+        }
+        connections.add(client);
+        Thread pump = new Thread(() -> pump(client), "fault-proxy-connection");
+        pump.setDaemon(true);
+        pump.start();
+      } catch (IOException e) {
+        // Proxy is closed.
+      }
+    }
+  }
+
+  private void pump(Socket client) {
+    try (Socket target = new Socket(InetAddress.getLoopbackAddress(), targetPort)) {
+      InputStream in = client.getInputStream();
+      OutputStream out = target.getOutputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (running) {
+        if (blackhole) {
+          sleep(PAUSE_MS);
+          continue;
+        }
+        int read = in.read(buffer);
+        if (read < 0) {
+          break;
+        }
+        delay(read);
+        out.write(buffer, 0, read);
+        forwarded.addAndGet(read);
+      }
+    } catch (IOException e) {
+      // Connection is reset or closed.
+    } finally {
+      reset(client);
+    }
+  }
+
+  private void delay(int bytes) {
+    long delay = latencyMs;
+    int rate = bandwidth;
+    if (rate > 0) {
+      delay += TimeUnit.SECONDS.toMillis(bytes) / rate;
+    }
+    if (delay > 0) {
+      sleep(delay);
+    }
+  }
+
+  private void relay() {
+    byte[] buffer = new byte[65536];
+    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+    InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), targetPort);
+    while (running) {
+      try {
+        packet.setLength(buffer.length);
+        datagrams.receive(packet);
+        if (blackhole || random.nextDouble() < dropRate) {
+          dropped.incrementAndGet();
+          continue;
+        }
+        delay(0);
+        datagrams.send(new DatagramPacket(buffer, packet.getLength(), target));
+        forwarded.incrementAndGet();
+      } catch (IOException e) {
+        // Proxy is closed.
+      }
+    }
+  }
+}
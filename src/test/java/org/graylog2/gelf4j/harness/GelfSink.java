@@ -0,0 +1,285 @@
+package org.graylog2.gelf4j.harness;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Embedded GELF receiver on loopback, used to check what actually arrives at the server.
+ * <p/>
+ * TCP sink reads null delimited messages. UDP sink reassembles chunked messages and decompresses
+ * ZLIB and GZIP payloads the same way Graylog does. Every message is recorded with its receive
+ * time to measure delivery rate and latency.
+ *
+ * @author Andrey Minov
+ */
+public class GelfSink implements Closeable {
+  private static final int MAX_DATAGRAM = 65536;
+  private static final int CHUNK_HEADER = 12;
+
+  private final BlockingQueue<Received> messages;
+  private final AtomicLong received;
+  private final AtomicLong malformed;
+  private final Map<Long, byte[][]> chunks;
+  private final ServerSocket server;
+  private final DatagramSocket datagrams;
+  private volatile boolean running;
+
+  private GelfSink(ServerSocket server, DatagramSocket datagrams) {
+    this.messages = new LinkedBlockingQueue<>();
+    this.received = new AtomicLong();
+    this.malformed = new AtomicLong();
+    this.chunks = new HashMap<>();
+    this.server = server;
+    this.datagrams = datagrams;
+    this.running = true;
+    Thread thread = new Thread(server != null ? this::accept : this::receive, "gelf-sink");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Start TCP sink on random loopback port.
+   *
+   * @return the started sink.
+   * @throws IOException in case socket cannot be bound.
+   */
+  public static GelfSink tcp() throws IOException {
+    return new GelfSink(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), null);
+  }
+
+  /**
+   * Start UDP sink on random loopback port.
+   *
+   * @return the started sink.
+   * @throws IOException in case socket cannot be bound.
+   */
+  public static GelfSink udp() throws IOException {
+    DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    socket.setReceiveBufferSize(8 << 20);
+    return new GelfSink(null, socket);
+  }
+
+  static byte[] decompress(byte[] data) throws IOException {
+    InputStream in;
+    if (data.length > 1 && (data[0] & 0xFF) == 0x1f && (data[1] & 0xFF) == 0x8b) {
+      in = new GZIPInputStream(new ByteArrayInputStream(data));
+    } else if (data.length > 0 && (data[0] & 0xFF) == 0x78) {
+      in = new InflaterInputStream(new ByteArrayInputStream(data));
+    } else {
+      return data;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) > 0) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  public int getPort() {
+    return server != null ? server.getLocalPort() : datagrams.getLocalPort();
+  }
+
+  /**
+   * Wait for next message.
+   *
+   * @param timeout the time to wait.
+   * @param unit    the unit of timeout.
+   * @return the message or null in case of timeout.
+   * @throws InterruptedException in case thread is interrupted.
+   */
+  public Received poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return messages.poll(timeout, unit);
+  }
+
+  /**
+   * Wait until number of received messages reaches expected or timeout expires.
+   *
+   * @param expected  the expected number of messages.
+   * @param timeoutMs the time to wait in milliseconds.
+   * @return the number of received messages.
+   * @throws InterruptedException in case thread is interrupted.
+   */
+  public long await(long expected, long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (received.get() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    return received.get();
+  }
+
+  public long getReceived() {
+    return received.get();
+  }
+
+  /**
+   * Gets number of messages which could not be decoded.
+   *
+   * @return the number of malformed messages.
+   */
+  public long getMalformed() {
+    return malformed.get();
+  }
+
+  /**
+   * Gets number of chunked messages with missing chunks.
+   *
+   * @return the number of incomplete messages.
+   */
+  public int getIncomplete() {
+    synchronized (chunks) {
+      return chunks.size();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    if (server != null) {
+      server.close();
+    }
+    if (datagrams != null) {
+      datagrams.close();
+    }
+  }
+
+  private void deliver(byte[] data, int length) {
+    String json = new String(data, 0, length, StandardCharsets.UTF_8);
+    if (!json.startsWith("{") || !json.endsWith("}")) {
+      malformed.incrementAndGet();
+      return;
+    }
+    messages.add(new Received(json, System.nanoTime()));
+    received.incrementAndGet();
+  }
+
+  private void accept() {
+    while (running) {
+      try {
+        Socket socket = server.accept();
+        Thread reader = new Thread(() -> read(socket), "gelf-sink-connection");
+        reader.setDaemon(true);
+        reader.start();
+      } catch (IOException e) {
+        // Sink is closed.
+      }
+    }
+  }
+
+  private void read(Socket socket) {
+    try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+      ByteArrayOutputStream frame = new ByteArrayOutputStream();
+      int next;
+      while ((next = in.read()) >= 0) {
+        if (next == 0) {
+          deliver(frame.toByteArray(), frame.size());
+          frame.reset();
+        } else {
+          frame.write(next);
+        }
+      }
+    } catch (IOException e) {
+      // Connection is closed.
+    }
+  }
+
+  private void receive() {
+    byte[] buffer = new byte[MAX_DATAGRAM];
+    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+    while (running) {
+      try {
+        packet.setLength(buffer.length);
+        datagrams.receive(packet);
+        byte[] data = reassemble(buffer, packet.getLength());
+        if (data != null) {
+          byte[] message = decompress(data);
+          deliver(message, message.length);
+        }
+      } catch (IOException e) {
+        if (running) {
+          malformed.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  // Returns whole message or null in case chunks are still missing.
+  private byte[] reassemble(byte[] datagram, int length) {
+    if (length < 2 || datagram[0] != 0x1e || datagram[1] != 0x0f) {
+      byte[] data = new byte[length];
+      System.arraycopy(datagram, 0, data, 0, length);
+      return data;
+    }
+    long id = ByteBuffer.wrap(datagram, 2, 8).getLong();
+    int sequence = datagram[10] & 0xFF;
+    int count = datagram[11] & 0xFF;
+    byte[] chunk = new byte[length - CHUNK_HEADER];
+    System.arraycopy(datagram, CHUNK_HEADER, chunk, 0, chunk.length);
+    synchronized (chunks) {
+      byte[][] parts = chunks.computeIfAbsent(id, k -> new byte[count][]);
+      if (sequence >= parts.length) {
+        return null;
+      }
+      parts[sequence] = chunk;
+      int size = 0;
+      for (byte[] part : parts) {
+        if (part == null) {
+          return null;
+        }
+        size += part.length;
+      }
+      chunks.remove(id);
+      ByteBuffer message = ByteBuffer.allocate(size);
+      for (byte[] part : parts) {
+        message.put(part);
+      }
+      return message.array();
+    }
+  }
+
+  /**
+   * Message received by the sink.
+   */
+  public static class Received {
+    private final String json;
+    private final long receivedNanos;
+
+    Received(String json, long receivedNanos) {
+      this.json = json;
+      this.receivedNanos = receivedNanos;
+    }
+
+    public String getJson() {
+      return json;
+    }
+
+    /**
+     * Gets receive time as {@link System#nanoTime()}.
+     *
+     * @return the receive time.
+     */
+    public long getReceivedNanos() {
+      return receivedNanos;
+    }
+  }
+}
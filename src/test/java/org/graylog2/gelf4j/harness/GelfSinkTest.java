@@ -0,0 +1,97 @@
+package org.graylog2.gelf4j.harness;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import com.jsoniter.output.JsonStream;
+import org.graylog2.gelf4j.transmitters.TcpTransmitter;
+import org.graylog2.gelf4j.transmitters.UdpTransmitter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GelfSink} decoding against real transmitters.
+ */
+public class GelfSinkTest {
+
+  @Before
+  public void init() {
+    registerEncoders();
+  }
+
+  // Random text does not compress well, so compressed message is still chunked.
+  private static String randomText(int length) {
+    Random random = new Random(42);
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append((char) ('a' + random.nextInt(26)));
+    }
+    return text.toString();
+  }
+
+  @Test
+  public void receiveTcpMessages() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      TcpTransmitter transmitter = new TcpTransmitter("localhost", sink.getPort(), 1000, true, -1);
+      transmitter.transmit(payload("first"));
+      transmitter.transmit(payload("second"));
+      transmitter.close();
+      assertTrue(sink.poll(5, TimeUnit.SECONDS).getJson().contains("\"short_message\":\"first\""));
+      assertTrue(sink.poll(5, TimeUnit.SECONDS).getJson().contains("\"short_message\":\"second\""));
+    }
+  }
+
+  @Test
+  public void reassembleCompressedChunks() throws Exception {
+    String message = randomText(30000);
+    try (GelfSink sink = GelfSink.udp()) {
+      UdpTransmitter transmitter =
+          new UdpTransmitter("localhost", sink.getPort(), -1, true, 5, 0);
+      transmitter.open();
+      transmitter.transmit(payload(message));
+      transmitter.close();
+      GelfSink.Received received = sink.poll(5, TimeUnit.SECONDS);
+      assertNotNull(received);
+      assertEquals(JsonStream.serialize(payload(message)), received.getJson());
+      assertEquals(0, sink.getIncomplete());
+    }
+  }
+
+  @Test
+  public void reassembleGzipChunksOutOfOrder() throws Exception {
+    byte[] json = JsonStream.serialize(payload(randomText(5000))).getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(json);
+    }
+    byte[] data = compressed.toByteArray();
+    int half = data.length / 2;
+    try (GelfSink sink = GelfSink.udp(); DatagramSocket socket = new DatagramSocket()) {
+      for (int sequence : new int[] {1, 0}) {
+        int start = sequence * half;
+        int end = sequence == 0 ? half : data.length;
+        ByteBuffer chunk = ByteBuffer.allocate(12 + end - start);
+        chunk.put((byte) 0x1e).put((byte) 0x0f).putLong(7L).put((byte) sequence).put((byte) 2);
+        chunk.put(data, start, end - start);
+        socket.send(new DatagramPacket(chunk.array(), chunk.capacity(),
+            InetAddress.getLoopbackAddress(), sink.getPort()));
+      }
+      GelfSink.Received received = sink.poll(5, TimeUnit.SECONDS);
+      assertNotNull(received);
+      assertEquals(new String(json, StandardCharsets.UTF_8), received.getJson());
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package org.graylog2.gelf4j.harness;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of {@link LoadScenario}: delivery rate, latency distribution and CPU time spent by
+ * producer thread per event.
+ *
+ * @author Andrey Minov
+ */
+public class LoadReport {
+  private final int sent;
+  private final int delivered;
+  private final long[] latencies;
+  private final long cpuNanosPerEvent;
+
+  LoadReport(int sent, int delivered, long[] latencies, long cpuNanosPerEvent) {
+    this.sent = sent;
+    this.delivered = delivered;
+    this.latencies = latencies;
+    this.cpuNanosPerEvent = cpuNanosPerEvent;
+    Arrays.sort(this.latencies);
+  }
+
+  public int getSent() {
+    return sent;
+  }
+
+  public int getDelivered() {
+    return delivered;
+  }
+
+  public double getDeliveryRatio() {
+    return sent == 0 ? 1 : (double) delivered / sent;
+  }
+
+  /**
+   * Gets latency from append to receive at given percentile.
+   *
+   * @param percentile the percentile from 0 to 100.
+   * @return the latency in nanoseconds or 0 in case nothing is delivered.
+   */
+  public long getLatency(double percentile) {
+    if (latencies.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+    return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+  }
+
+  public long getCpuNanosPerEvent() {
+    return cpuNanosPerEvent;
+  }
+
+  private static String micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+  }
+
+  @Override
+  public String toString() {
+    return String.format("delivered %d/%d (%.2f%%), latency p50 %s p99 %s max %s, cpu %s/event",
+        delivered, sent, getDeliveryRatio() * 100, micros(getLatency(50)),
+        micros(getLatency(99)), micros(getLatency(100)), micros(cpuNanosPerEvent));
+  }
+}
@@ -0,0 +1,114 @@
+package org.graylog2.gelf4j.harness;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+
+/**
+ * Load scenario driving appender at fixed rate into {@link GelfSink}.
+ * <p/>
+ * Every event carries its sequence number in short message, so sink side can match it with send
+ * time. Number of events and rate can be overridden by <code>gelf4j.load.events</code> and
+ * <code>gelf4j.load.rate</code> system properties for longer runs.
+ *
+ * @author Andrey Minov
+ */
+public class LoadScenario {
+  private static final String PREFIX = "event-";
+  private static final String SHORT_MESSAGE = "\"short_message\":\"" + PREFIX;
+
+  private final Appender appender;
+  private final int events;
+  private final int rate;
+  private final int padding;
+
+  /**
+   * Instantiates a new load scenario.
+   *
+   * @param appender the started appender under test.
+   * @param events   the number of events to send.
+   * @param rate     the number of events per second.
+   * @param padding  the number of characters added to every message.
+   */
+  public LoadScenario(Appender appender, int events, int rate, int padding) {
+    this.appender = appender;
+    this.events = Integer.getInteger("gelf4j.load.events", events);
+    this.rate = Integer.getInteger("gelf4j.load.rate", rate);
+    this.padding = padding;
+  }
+
+  private static int sequenceOf(String json) {
+    int start = json.indexOf(SHORT_MESSAGE);
+    if (start < 0) {
+      return -1;
+    }
+    int sequence = 0;
+    for (int i = start + SHORT_MESSAGE.length(); i < json.length(); i++) {
+      char c = json.charAt(i);
+      if (c < '0' || c > '9') {
+        break;
+      }
+      sequence = sequence * 10 + c - '0';
+    }
+    return sequence;
+  }
+
+  private LogEvent event(int sequence, String suffix) {
+    return Log4jLogEvent.newBuilder()
+        .setLoggerName("load")
+        .setLevel(Level.INFO)
+        .setTimeMillis(System.currentTimeMillis())
+        .setMessage(new SimpleMessage(PREFIX + sequence + suffix))
+        .build();
+  }
+
+  /**
+   * Send events and wait until they are received.
+   *
+   * @param sink      the sink appender sends to.
+   * @param timeoutMs the time to wait for delivery after the last event is sent.
+   * @return the report of the run.
+   * @throws InterruptedException in case thread is interrupted.
+   */
+  public LoadReport run(GelfSink sink, long timeoutMs) throws InterruptedException {
+    char[] pad = new char[padding];
+    Arrays.fill(pad, 'p');
+    String suffix = " " + new String(pad);
+    long[] sent = new long[events];
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    long cpuStart = threads.getCurrentThreadCpuTime();
+    long start = System.nanoTime();
+    for (int i = 0; i < events; i++) {
+      long next = start + i * interval;
+      for (long now = System.nanoTime(); now < next; now = System.nanoTime()) {
+        LockSupport.parkNanos(next - now);
+      }
+      sent[i] = System.nanoTime();
+      appender.append(event(i, suffix));
+    }
+    long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+    sink.await(events, timeoutMs);
+
+    boolean[] seen = new boolean[events];
+    long[] latencies = new long[events];
+    int delivered = 0;
+    GelfSink.Received received;
+    while ((received = sink.poll(0, TimeUnit.MILLISECONDS)) != null) {
+      int sequence = sequenceOf(received.getJson());
+      if (sequence >= 0 && sequence < events && !seen[sequence]) {
+        seen[sequence] = true;
+        latencies[delivered++] = received.getReceivedNanos() - sent[sequence];
+      }
+    }
+    return new LoadReport(events, delivered, Arrays.copyOf(latencies, delivered), cpu / events);
+  }
+}
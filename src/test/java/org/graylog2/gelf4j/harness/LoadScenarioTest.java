@@ -0,0 +1,72 @@
+package org.graylog2.gelf4j.harness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.logging.Logger;
+
+import org.graylog2.gelf4j.appenders.Log4j2GelfAppender;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Load scenarios of {@link Log4j2GelfAppender} against {@link GelfSink} on loopback.
+ * Reports are logged, so longer runs can be compared with <code>gelf4j.load.*</code> properties.
+ */
+@Category(Measurement.class)
+public class LoadScenarioTest {
+  private static final Logger LOG = Logger.getLogger(LoadScenarioTest.class.getName());
+  private static final int EVENTS = 2000;
+  private static final int RATE = 5000;
+  private static final long TIMEOUT_MS = 10000;
+
+  private static Log4j2GelfAppender appender(String type, int port, int queueSize) {
+    Log4j2GelfAppender appender = Log4j2GelfAppender.newBuilder()
+        .setName("load-" + type)
+        .setType(type)
+        .setHostname("localhost")
+        .setPort(port)
+        .setQueueSize(queueSize)
+        .build();
+    appender.start();
+    return appender;
+  }
+
+  private static LoadReport run(String name, GelfSink sink, Log4j2GelfAppender appender,
+                                int padding) throws InterruptedException {
+    try {
+      LoadReport report = new LoadScenario(appender, EVENTS, RATE, padding).run(sink, TIMEOUT_MS);
+      LOG.info(name + ": " + report);
+      assertEquals(0, sink.getMalformed());
+      return report;
+    } finally {
+      appender.stop();
+    }
+  }
+
+  @Test
+  public void tcpDeliversEverything() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      LoadReport report = run("tcp", sink, appender("tcp", sink.getPort(), 0), 0);
+      assertEquals(report.getSent(), report.getDelivered());
+    }
+  }
+
+  @Test
+  public void tcpQueuedDeliversEverything() throws Exception {
+    try (GelfSink sink = GelfSink.tcp()) {
+      LoadReport report = run("tcp queued", sink, appender("tcp", sink.getPort(), 1024), 0);
+      assertEquals(report.getSent(), report.getDelivered());
+    }
+  }
+
+  @Test
+  public void udpChunkedLoss() throws Exception {
+    try (GelfSink sink = GelfSink.udp()) {
+      // Padding makes every message two chunks.
+      LoadReport report = run("udp chunked", sink, appender("udp", sink.getPort(), 0), 10000);
+      // Loopback is not lossless under pressure, but almost all messages must arrive.
+      assertTrue(report.toString(), report.getDeliveryRatio() > 0.9);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package org.graylog2.gelf4j.harness;
+
+/**
+ * JUnit category of harness scenarios measuring time, throughput or allocations. Their numbers
+ * depend on the machine, so they are excluded from the default build and run with
+ * <code>mvn test -Pharness</code>.
+ */
+public interface Measurement {
+}
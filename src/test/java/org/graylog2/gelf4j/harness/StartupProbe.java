@@ -0,0 +1,52 @@
+package org.graylog2.gelf4j.harness;
+
+import java.lang.management.ManagementFactory;
+
+import com.jsoniter.output.JsonStream;
+import org.graylog2.gelf4j.appenders.Log4j2GelfAppender;
+import org.graylog2.gelf4j.message.Payload;
+
+/**
+ * Entry point run in fresh JVM by {@link StartupTimeTest}. Prints JVM uptime when main is entered,
+ * time of appender class initialization, which sets up jsoniter encoders, time of the first
+ * encoded payload and time of appender start with given open mode, each as
+ * <code>name nanos</code> line.
+ * <p/>
+ * Arguments: open mode, TCP port on localhost and socket timeout in milliseconds.
+ *
+ * @author Andrey Minov
+ */
+public class StartupProbe {
+  private static final String APPENDER = "org.graylog2.gelf4j.appenders.Log4j2GelfAppender";
+
+  public static void main(String[] args) throws Exception {
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    System.out.println("jvm " + uptime * 1_000_000);
+
+    long start = System.nanoTime();
+    Class.forName(APPENDER);
+    System.out.println("init " + (System.nanoTime() - start));
+
+    start = System.nanoTime();
+    Payload payload = new Payload();
+    payload.setVersion("1.1");
+    payload.setHost("localhost");
+    payload.setShortMessage("startup");
+    JsonStream.serialize(payload);
+    System.out.println("encode " + (System.nanoTime() - start));
+
+    start = System.nanoTime();
+    Log4j2GelfAppender appender = Log4j2GelfAppender.newBuilder()
+        .setName("startup")
+        .setType("tcp")
+        .setHostname("localhost")
+        .setPort(Integer.parseInt(args[1]))
+        .setSoTimeout(Integer.parseInt(args[2]))
+        .setOpenMode(args[0])
+        .build();
+    appender.start();
+    System.out.println("start " + (System.nanoTime() - start));
+    // Connection might be still opened in background, do not wait for it.
+    System.exit(0);
+  }
+}
@@ -0,0 +1,103 @@
+package org.graylog2.gelf4j.harness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Startup time of {@link org.graylog2.gelf4j.appenders.Log4j2GelfAppender} in fresh JVM for every
+ * open mode while server does not accept connections, so connect waits for the socket timeout.
+ * Reports JVM uptime at main, appender class initialization including jsoniter setup, the first
+ * encoded payload and start.
+ */
+@Category(Measurement.class)
+public class StartupTimeTest {
+  private static final Logger LOG = Logger.getLogger(StartupTimeTest.class.getName());
+  private static final int SO_TIMEOUT_MS = 2000;
+  private static final long PROBE_TIMEOUT_SEC = 60;
+
+  private static ServerSocket server;
+  private static final List<Socket> backlog = new ArrayList<>();
+
+  // Listener with full backlog drops new SYNs, so connect hangs like to unreachable host.
+  @BeforeClass
+  public static void saturate() throws IOException {
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    for (int i = 0; i < 4; i++) {
+      Socket socket = new Socket();
+      backlog.add(socket);
+      try {
+        socket.connect(server.getLocalSocketAddress(), 200);
+      } catch (SocketTimeoutException e) {
+        break;
+      }
+    }
+  }
+
+  @AfterClass
+  public static void release() throws IOException {
+    for (Socket socket : backlog) {
+      socket.close();
+    }
+    server.close();
+  }
+
+  private static Map<String, Long> probe(String mode) throws Exception {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+        StartupProbe.class.getName(), mode, String.valueOf(server.getLocalPort()),
+        String.valueOf(SO_TIMEOUT_MS)).redirectErrorStream(true).start();
+    Map<String, Long> phases = new HashMap<>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(" ");
+        if (parts.length == 2 && parts[1].matches("\\d+")) {
+          phases.put(parts[0], TimeUnit.NANOSECONDS.toMillis(Long.parseLong(parts[1])));
+        }
+      }
+    }
+    assertTrue(process.waitFor(PROBE_TIMEOUT_SEC, TimeUnit.SECONDS));
+    assertEquals(0, process.exitValue());
+    LOG.info("startup " + mode + ": jvm " + phases.get("jvm") + " ms, init "
+             + phases.get("init") + " ms, first encode " + phases.get("encode")
+             + " ms, start " + phases.get("start") + " ms");
+    return phases;
+  }
+
+  @Test
+  public void eagerBlockingWaitsForConnect() throws Exception {
+    assertTrue(probe("eager-blocking").get("start") >= SO_TIMEOUT_MS / 2);
+  }
+
+  @Test
+  public void eagerAsyncDoesNotWait() throws Exception {
+    assertTrue(probe("eager-async").get("start") < SO_TIMEOUT_MS / 2);
+  }
+
+  @Test
+  public void lazyDoesNotWait() throws Exception {
+    assertTrue(probe("lazy").get("start") < SO_TIMEOUT_MS / 2);
+  }
+}
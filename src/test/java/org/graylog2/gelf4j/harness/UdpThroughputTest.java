@@ -0,0 +1,78 @@
+package org.graylog2.gelf4j.harness;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.DatagramSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.transmitters.UdpTransmitter;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Benchmark of datagrams per second per core sent by {@link UdpTransmitter} for single datagram
+ * and chunked messages. Receiver does not read, so only send path is measured. Number of messages
+ * can be overridden by <code>gelf4j.udp.messages</code> system property for longer runs.
+ */
+@Category(Measurement.class)
+public class UdpThroughputTest {
+  private static final Logger LOG = Logger.getLogger(UdpThroughputTest.class.getName());
+  private static final int MESSAGES = Integer.getInteger("gelf4j.udp.messages", 20000);
+
+  static {
+    registerEncoders();
+  }
+
+  private static void run(String name, int messageSize, int chunks) throws Exception {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < messageSize; i++) {
+      message.append('m');
+    }
+    Payload payload = payload(message);
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    try (DatagramSocket receiver = new DatagramSocket(0)) {
+      UdpTransmitter transmitter =
+          new UdpTransmitter("localhost", receiver.getLocalPort(), -1, false, 5, 8192);
+      transmitter.open();
+      try {
+        for (int i = 0; i < MESSAGES; i++) {
+          transmitter.transmit(payload);
+        }
+        long sentBefore = transmitter.getDatagrams();
+        long droppedBefore = transmitter.getTelemetry().getDropped();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+          transmitter.transmit(payload);
+        }
+        long cpu = Math.max(1, threads.getCurrentThreadCpuTime() - cpuStart);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        long datagrams = transmitter.getDatagrams() - sentBefore;
+        LOG.info(name + ": " + datagrams * TimeUnit.SECONDS.toNanos(1) / cpu
+                 + " datagrams per core second, "
+                 + datagrams * TimeUnit.SECONDS.toNanos(1) / elapsed
+                 + " datagrams per second, " + transmitter.getTelemetry());
+        long dropped = transmitter.getTelemetry().getDropped() - droppedBefore;
+        assertEquals((long) MESSAGES * chunks, datagrams + dropped);
+      } finally {
+        transmitter.close();
+      }
+    }
+  }
+
+  @Test
+  public void singleDatagram() throws Exception {
+    run("udp single", 200, 1);
+  }
+
+  @Test
+  public void chunked() throws Exception {
+    run("udp chunked", 20000, 3);
+  }
+}
@@ -0,0 +1,74 @@
+package org.graylog2.gelf4j.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PayloadPool} reuse, capacity and shrinking.
+ */
+public class PayloadPoolTest {
+
+  @Test
+  public void reuseReleasedPayload() {
+    PayloadPool pool = new PayloadPool(4, 1024);
+    Payload payload = pool.acquire();
+    payload.setShortMessage("message");
+    payload.addAdditionalField("thread", "main");
+    pool.release(payload);
+    assertEquals(1, pool.getPooled());
+    assertTrue(pool.getRetainedBytes() > 0);
+
+    Payload reused = pool.acquire();
+    assertSame(payload, reused);
+    assertEquals(0, reused.getShortMessage().length());
+    assertEquals(0, reused.getAdditionalFields().size());
+    assertEquals(0, pool.getPooled());
+    assertEquals(0, pool.getRetainedBytes());
+    assertNotSame(reused, pool.acquire());
+  }
+
+  @Test
+  public void boundedCapacity() {
+    PayloadPool pool = new PayloadPool(2, 1024);
+    List<Payload> payloads = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      payloads.add(pool.acquire());
+    }
+    payloads.forEach(pool::release);
+    // Thread uses only its stripe of the pool.
+    assertTrue(pool.getPooled() >= 1 && pool.getPooled() <= 2);
+  }
+
+  @Test
+  public void shrinkBigBuffers() {
+    PayloadPool pool = new PayloadPool(1, 1024);
+    Payload payload = pool.acquire();
+    StringBuilder trace = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      trace.append('t');
+    }
+    payload.setFullMessage(trace);
+    payload.setShortMessageBuffer(new byte[16]);
+    payload.addAdditionalField("trace", trace);
+    assertTrue(payload.getRetainedSize() > 20000);
+
+    pool.release(payload);
+    assertTrue(payload.getFullMessage().capacity() * 2 <= 1024);
+    assertNull(payload.getShortMessageBuffer());
+    assertTrue(pool.getRetainedBytes() < 1024);
+    assertEquals(payload.getRetainedSize(), pool.getRetainedBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectEmptyPool() {
+    new PayloadPool(0, 1024);
+  }
+}
@@ -1,8 +1,9 @@
 package org.graylog2.gelf4j.message;
 
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
 import static org.junit.Assert.assertEquals;
 
-import com.jsoniter.output.EncodingMode;
 import com.jsoniter.output.JsonStream;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,22 +18,24 @@ public class PayloadTest {
       "{\"version\":\"1.1\",\"host\":\"localhost\",\"short_message\":\"DEBUG 0816-0930:37,740"
       + " Schedule timeout with id 10000229 for 300000ms [TTTT]\","
       + "\"full_message\":\"DEBUG 0816-0930:37,740 Schedule timeout"
-      + " with id 10000229 for 300000ms [TTTT]\",\"timestamp\":1.502882757222E9,\"level\":7,"
-      + "\"facility\":\"appender\",\"line\":122,\"file\":\"Message.java\",\"_application\":"
-      + "\"cool-java-application\",\"_thread\":\"TTTT\",\"_version\":\"1.0.1\"}";
+      + " with id 10000229 for 300000ms [TTTT]\",\"timestamp\":1502882757.222,\"level\":7,"
+      + "\"facility\":\"appender\",\"line\":122,\"file\":\"Message.java\",\"_thread\":\"TTTT\","
+      + "\"_application\":\"cool-java-application\",\"_version\":\"1.0.1\"}";
+  // Overridden field keeps its position.
+  private static final String EXPECTED_TYPED =
+      "\"_thread\":\"TTTT\",\"_application\":\"cool-java-application\",\"_version\":\"1.0.2\","
+      + "\"_line\":122,\"_latency\":0.25,\"_cached\":true,\"_empty\":null,\"_zip\":\"01234\","
+      + "\"_ratio\":-1.5}";
 
   private Payload payload;
 
   @Before
   public void initPayload() {
-    payload = new Payload();
-    payload.setVersion("1.1");
-    payload.setHost("localhost");
-    payload.setShortMessage(
+    payload = payload(
         "DEBUG 0816-0930:37,740 Schedule timeout with id 10000229 for 300000ms [TTTT]");
     payload.setFullMessage(
         "DEBUG 0816-0930:37,740 Schedule timeout with id 10000229 for 300000ms [TTTT]");
-    payload.setTimestamp(TIME / 1000d);
+    payload.setTimestampMillis(TIME);
     payload.setLevel(7);
     payload.setFacility("appender");
     payload.setFile("Message.java");
@@ -41,13 +44,63 @@ public class PayloadTest {
     payload.addAdditionalField("application", "cool-java-application");
     payload.addAdditionalField("version", "1.0.1");
     //
-    JsonStream.setMode(EncodingMode.DYNAMIC_MODE);
-    JsonStream.registerNativeEncoder(Payload.class, new PayloadEncoder());
-    JsonStream.registerNativeEncoder(StringBuilder.class, new StringBuilderEncoder());
+    registerEncoders();
   }
 
   @Test
   public void jsoniterSerialize() {
     assertEquals(EXPECTED, JsonStream.serialize(payload));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void typedAdditionalFields() {
+    payload.addAdditionalField("line", 122);
+    payload.addAdditionalField("latency", 0.25d);
+    payload.addAdditionalField("cached", true);
+    payload.addAdditionalField("empty", (Object) null);
+    payload.getAdditionalFields().putInferred("zip", "01234");
+    payload.getAdditionalFields().putInferred("ratio", "-1.5");
+    payload.addAdditionalField("version", "1.0.2");
+    String json = JsonStream.serialize(payload);
+    assertEquals(EXPECTED_TYPED, json.substring(json.indexOf("\"_thread\"")));
+  }
+
+  @Test
+  public void manyFieldsAreIndexed() {
+    AdditionalFields fields = new AdditionalFields();
+    for (int round = 0; round < 2; round++) {
+      fields.clear();
+      for (int i = 0; i < 100; i++) {
+        fields.put("key" + i, (long) i);
+      }
+      fields.put("key42", "override");
+      assertEquals(100, fields.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i, fields.indexOf("key" + i));
+      }
+      assertEquals("override", fields.getString(42).toString());
+      assertEquals(-1, fields.indexOf("key100"));
+    }
+  }
+
+  @Test
+  public void timestampFraction() {
+    payload.setTimestampMillis(1502882757005L);
+    assertEquals(1502882757.005, payload.getTimestamp(), 1e-6);
+    assertTimestamp("1502882757.005");
+    payload.setTimestampMillis(1502882757000L);
+    assertTimestamp("1502882757.000");
+    payload.setTimestampMicros(1502882757L, 12_345_678);
+    assertTimestamp("1502882757.012345");
+    payload.setTimestamp(TIME / 1000d);
+    assertTimestamp("1502882757.222");
+    payload.setTimestamp(1502882757.25025);
+    assertTimestamp("1502882757.250250");
+  }
+
+  private void assertTimestamp(String expected) {
+    String json = JsonStream.serialize(payload);
+    int start = json.indexOf("\"timestamp\":") + "\"timestamp\":".length();
+    assertEquals(expected, json.substring(start, json.indexOf(',', start)));
+  }
+}
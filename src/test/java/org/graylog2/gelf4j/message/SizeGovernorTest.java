@@ -0,0 +1,112 @@
+package org.graylog2.gelf4j.message;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SizeGovernor} truncation.
+ */
+public class SizeGovernorTest {
+  private static final int MAX_SIZE = 2048;
+
+  private Payload payload;
+  private SizeGovernor governor;
+
+  @Before
+  public void init() {
+    registerEncoders();
+    payload = new Payload();
+    payload.setVersion("1.1");
+    payload.setHost("localhost");
+    payload.addAdditionalField("thread", "main");
+    governor = new SizeGovernor(MAX_SIZE);
+  }
+
+  private static String stackTrace() {
+    StringBuilder trace = new StringBuilder("java.lang.IllegalStateException: outer\n");
+    for (int i = 0; i < 100; i++) {
+      trace.append("\tat org.example.Service.call").append(i).append("(Service.java:").append(i)
+           .append(")\n");
+    }
+    trace.append("Caused by: java.io.IOException: root cause\n");
+    for (int i = 0; i < 100; i++) {
+      trace.append("\tat org.example.Client.read").append(i).append("(Client.java:").append(i)
+           .append(")\n");
+    }
+    return trace.toString();
+  }
+
+  @Test
+  public void smallPayloadIsNotTouched() throws IOException {
+    payload.setShortMessage("short");
+    payload.setFullMessage("trace");
+    byte[] bytes = governor.serialize(payload);
+    assertFalse(new String(bytes, StandardCharsets.UTF_8).contains("_truncated"));
+    assertEquals(0, governor.getTruncated());
+  }
+
+  @Test
+  public void truncateStackTraceFrames() throws IOException {
+    payload.setShortMessage("failure");
+    payload.setFullMessage(stackTrace());
+    byte[] bytes = governor.serialize(payload);
+    String json = new String(bytes, StandardCharsets.UTF_8);
+    assertTrue(bytes.length <= MAX_SIZE);
+    assertTrue(json.contains("\"short_message\":\"failure\""));
+    assertTrue(json.contains("outer\\n\\tat org.example.Service.call0(Service.java:0)"));
+    // Cause is kept with its top frames.
+    assertTrue(json.contains("Caused by: java.io.IOException: root cause\\n\\tat org.example.Client.read0"));
+    assertTrue(json.contains("frames truncated"));
+    assertTrue(json.endsWith("\"_truncated\":true}"));
+    assertEquals(1, governor.getTruncated());
+  }
+
+  @Test
+  public void truncateShortMessageAtCharacterBoundary() throws IOException {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      message.append("é😀");
+    }
+    payload.setShortMessage(message);
+    payload.setFullMessage(stackTrace());
+    byte[] bytes = governor.serialize(payload);
+    assertTrue(bytes.length <= MAX_SIZE);
+    assertEquals("", payload.getFullMessage().toString());
+    String json = new String(bytes, StandardCharsets.UTF_8);
+    assertFalse(json.contains("�"));
+    assertFalse(Character.isHighSurrogate(
+        payload.getShortMessage().charAt(payload.getShortMessage().length() - 1)));
+    assertEquals(1, governor.getTruncated());
+  }
+
+  @Test
+  public void truncateShortMessageBuffer() throws IOException {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      message.append("é");
+    }
+    payload.setShortMessageBuffer(message.toString().getBytes(StandardCharsets.UTF_8));
+    byte[] bytes = governor.serialize(payload);
+    assertTrue(bytes.length <= MAX_SIZE);
+    assertFalse(new String(bytes, StandardCharsets.UTF_8).contains("�"));
+  }
+
+  @Test(expected = IOException.class)
+  public void failLoudlyWhenFieldsDoNotFit() throws IOException {
+    payload.setShortMessage("short");
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < MAX_SIZE; i++) {
+      value.append('x');
+    }
+    payload.addAdditionalField("huge", value);
+    governor.serialize(payload);
+  }
+}
@@ -0,0 +1,90 @@
+package org.graylog2.gelf4j.message;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.jsoniter.output.JsonStream;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TemplateCache} and encoding of payload template.
+ */
+public class TemplateCacheTest {
+
+  @Before
+  public void init() {
+    registerEncoders();
+  }
+
+  @Test
+  public void encodeOnce() {
+    TemplateCache cache = new TemplateCache(16);
+    byte[] encoded = cache.encode("User \"{}\" logged in from {}");
+    assertEquals("\"User \\\"{}\\\" logged in from {}\"",
+        new String(encoded, StandardCharsets.UTF_8));
+    assertSame(encoded, cache.encode(new String("User \"{}\" logged in from {}")));
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    TemplateCache cache = new TemplateCache(2);
+    byte[] first = cache.encode("first {}");
+    byte[] second = cache.encode("second {}");
+    cache.encode("first {}");
+    cache.encode("third {}");
+    assertEquals(2, cache.size());
+    assertSame(first, cache.encode("first {}"));
+    assertNotSame(second, cache.encode("second {}"));
+  }
+
+  @Test
+  public void concurrentReadsStayBounded() throws Exception {
+    TemplateCache cache = new TemplateCache(16);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            String template = "template " + (i % 32) + " {}";
+            assertEquals("\"" + template + "\"",
+                new String(cache.encode(template), StandardCharsets.UTF_8));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(16, cache.size());
+  }
+
+  @Test
+  public void serializeTemplateWithArguments() {
+    Payload payload = payload("User alice logged in from 10.0.0.1");
+    payload.setTemplate(new TemplateCache(16).encode("User {} logged in from {}"));
+    payload.addAdditionalField("arg0", (Object) "alice");
+    payload.addAdditionalField("arg1", (Object) 42);
+    String json = JsonStream.serialize(payload);
+    assertTrue(json, json.endsWith(
+        "\"_template\":\"User {} logged in from {}\",\"_arg0\":\"alice\",\"_arg1\":42}"));
+
+    Payload copy = new Payload();
+    copy.copyFrom(payload);
+    assertEquals(json, JsonStream.serialize(copy));
+  }
+}
@@ -0,0 +1,205 @@
+package org.graylog2.gelf4j.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graylog2.gelf4j.appenders.TestPayloads;
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.transmitters.PayloadTransmitter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PriorityLaneTransmitter} admission, eviction and draining.
+ *
+ * @author Andrey Minov
+ */
+public class PriorityLaneTransmitterTest {
+
+  private BlockingTransmitter delegate;
+  private PriorityLaneTransmitter transmitter;
+
+  private static Payload payload(int level, String message) {
+    Payload payload = TestPayloads.payload(message);
+    payload.setLevel(level);
+    return payload;
+  }
+
+  @Before
+  public void init() throws Exception {
+    delegate = new BlockingTransmitter();
+    transmitter = new PriorityLaneTransmitter(4, 2, OverflowPolicy.EVICT_LOWER, delegate);
+    transmitter.open();
+    // Occupy I/O thread so the following events stay in the queue.
+    transmitter.transmit(payload(7, "blocker"));
+    assertTrue(delegate.started.await(5, TimeUnit.SECONDS));
+  }
+
+  @After
+  public void destroy() throws IOException {
+    delegate.release.countDown();
+    transmitter.close();
+  }
+
+  @Test
+  public void testReservedCapacity() throws Exception {
+    transmitter.transmit(payload(7, "debug-1"));
+    transmitter.transmit(payload(7, "debug-2"));
+    transmitter.transmit(payload(7, "debug-3"));
+    transmitter.transmit(payload(3, "error-1"));
+    transmitter.transmit(payload(3, "error-2"));
+    assertEquals(2, transmitter.getDepth(7));
+    assertEquals(1, transmitter.getDropped(7));
+
+    transmitter.transmit(payload(3, "error-3"));
+    assertEquals(1, transmitter.getDepth(7));
+    assertEquals(3, transmitter.getDepth(3));
+    assertEquals(2, transmitter.getDropped(7));
+    assertEquals(0, transmitter.getDropped(3));
+  }
+
+  @Test
+  public void testEvictLowerPriority() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      transmitter.transmit(payload(3, "error-" + i));
+    }
+    transmitter.transmit(payload(0, "emergency"));
+    transmitter.transmit(payload(6, "info"));
+
+    assertEquals(3, transmitter.getDepth(3));
+    assertEquals(1, transmitter.getDepth(0));
+    assertEquals(1, transmitter.getDropped(3));
+    assertEquals(1, transmitter.getDropped(6));
+  }
+
+  @Test
+  public void testDrainMostSevereFirst() throws Exception {
+    transmitter.transmit(payload(6, "info"));
+    transmitter.transmit(payload(3, "error"));
+    delegate.release.countDown();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (transmitter.getSent() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, transmitter.getSent());
+    assertEquals("error", delegate.messages.get(1));
+    assertEquals("info", delegate.messages.get(2));
+  }
+
+  @Test
+  public void testShutdownDeliversQueued() throws Exception {
+    transmitter.transmit(payload(6, "info"));
+    transmitter.transmit(payload(3, "error"));
+    delegate.release.countDown();
+
+    assertEquals(0, transmitter.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(3, transmitter.getSent());
+    // New events are not admitted after shutdown.
+    transmitter.transmit(payload(3, "late"));
+    assertEquals(1, transmitter.getDropped(3));
+    assertEquals(3, delegate.messages.size());
+  }
+
+  @Test
+  public void testShutdownTimeout() throws Exception {
+    transmitter.transmit(payload(6, "info"));
+    transmitter.transmit(payload(3, "error"));
+
+    // I/O thread is still blocked by the first event.
+    assertEquals(2, transmitter.shutdown(100, TimeUnit.MILLISECONDS));
+    assertEquals(0, transmitter.getDepth(6));
+    assertEquals(0, transmitter.getDepth(3));
+  }
+
+  @Test
+  public void testShutdownStopsStalledBatch() throws Exception {
+    StalledTransmitter stalled = new StalledTransmitter();
+    PriorityLaneTransmitter queued =
+        new PriorityLaneTransmitter(16, 0, OverflowPolicy.DISCARD, stalled);
+    // Events queued before I/O thread starts are taken as one batch.
+    for (int i = 0; i < 6; i++) {
+      queued.transmit(payload(0, "emergency-" + i));
+    }
+    queued.open();
+    assertTrue(stalled.started.await(5, TimeUnit.SECONDS));
+
+    // First payload is in flight, the rest of the batch is not sent.
+    assertEquals(5, queued.shutdown(100, TimeUnit.MILLISECONDS));
+    assertEquals(1, stalled.transmits.get());
+    assertEquals(1, stalled.opens.get());
+    assertEquals(0, stalled.afterShutdown.get());
+    Thread.sleep(100);
+    assertEquals(1, stalled.transmits.get());
+    assertEquals(1, queued.getFailed());
+  }
+
+  private static class BlockingTransmitter implements PayloadTransmitter {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void transmit(Payload payload) throws Exception {
+      messages.add(payload.getShortMessage().toString());
+      started.countDown();
+      release.await();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+
+  // Sends nothing until interrupted, as blocking socket write to stalled server.
+  private static class StalledTransmitter implements PayloadTransmitter {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger transmits = new AtomicInteger();
+    private final AtomicInteger opens = new AtomicInteger();
+    private final AtomicInteger afterShutdown = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    @Override
+    public void open() {
+      opens.incrementAndGet();
+      if (shutdown) {
+        afterShutdown.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void transmit(Payload payload) throws Exception {
+      transmits.incrementAndGet();
+      if (shutdown) {
+        afterShutdown.incrementAndGet();
+      }
+      started.countDown();
+      Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Override
+    public void flush() {
+      if (shutdown) {
+        afterShutdown.incrementAndGet();
+      }
+    }
+
+    @Override
+    public long shutdown(long timeout, TimeUnit unit) {
+      shutdown = true;
+      return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
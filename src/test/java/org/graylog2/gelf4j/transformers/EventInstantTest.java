@@ -0,0 +1,26 @@
+package org.graylog2.gelf4j.transformers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EventInstant} fallback.
+ */
+public class EventInstantTest {
+
+  @Test
+  public void fallbackToMillisecondsOnOldLog4j2() {
+    // Library is built with Log4j2 without precise event time.
+    assertFalse(EventInstant.isSupported());
+    Payload payload = new Payload();
+    EventInstant.setTimestamp(Log4jLogEvent.newBuilder().setTimeMillis(1502882757222L).build(),
+        payload);
+    assertEquals(1502882757L, payload.getTimestampSeconds());
+    assertEquals(222, payload.getTimestampFraction());
+    assertEquals(3, payload.getTimestampDigits());
+  }
+}
@@ -0,0 +1,91 @@
+package org.graylog2.gelf4j.transformers;
+
+import static org.graylog2.gelf4j.Constants.FILE_ATTRIBUTE;
+import static org.graylog2.gelf4j.Constants.LINE_ATTRIBUTE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.EnhancedPatternLayout;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.graylog2.gelf4j.appenders.TestConfigurations;
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Log4j1PayloadTransformer} message rendering.
+ */
+public class Log4j1PayloadTransformerTest {
+  private static final String PATTERN = "%d{ISO8601} %-5p [%t] %c{1} - %m%n";
+
+  private final Log4j1PayloadTransformer transformer =
+      new Log4j1PayloadTransformer(TestConfigurations.defaults());
+
+  private static LoggingEvent event(Object message) {
+    Logger logger = Logger.getLogger("org.example.Service");
+    return new LoggingEvent(Logger.class.getName(), logger, Level.INFO, message, null);
+  }
+
+  private static LoggingEvent eventAt(String line) {
+    Logger logger = Logger.getLogger("org.example.Service");
+    LocationInfo location = new LocationInfo("Service.java", "org.example.Service", "serve", line);
+    return new LoggingEvent(Logger.class.getName(), logger, System.currentTimeMillis(), Level.INFO,
+        "message", "main", null, null, location, null);
+  }
+
+  private String shortMessage(Layout layout, LoggingEvent event) {
+    Payload payload = transformer.makeMessage(layout, event);
+    return payload.getShortMessage().toString();
+  }
+
+  @Test
+  public void patternLayoutMatchesLayoutFormat() {
+    PatternLayout layout = new PatternLayout(PATTERN);
+    LoggingEvent event = event("Request served in 12 ms");
+    assertEquals(layout.format(event), shortMessage(layout, event));
+    // Converters are reused for the next event.
+    LoggingEvent next = event("Request served in 7 ms");
+    assertEquals(layout.format(next), shortMessage(layout, next));
+  }
+
+  @Test
+  public void changedPatternIsParsedAgain() {
+    PatternLayout layout = new PatternLayout(PATTERN);
+    LoggingEvent event = event("message");
+    shortMessage(layout, event);
+    layout.setConversionPattern("%p: %m");
+    assertEquals("INFO: message", shortMessage(layout, event));
+  }
+
+  @Test
+  public void otherLayoutsFormatThemselves() {
+    EnhancedPatternLayout layout = new EnhancedPatternLayout("%c{1.} %m");
+    LoggingEvent event = event("message");
+    assertEquals(layout.format(event), shortMessage(layout, event));
+  }
+
+  @Test
+  public void renderedMessageWithoutLayout() {
+    assertEquals("42", shortMessage(null, event(42)));
+  }
+
+  @Test
+  public void lineIsSentAsNumber() {
+    Log4j1PayloadTransformer locating =
+        new Log4j1PayloadTransformer(TestConfigurations.withLocation());
+    AdditionalFields fields = locating.makeMessage(null, eventAt("42")).getAdditionalFields();
+    int line = fields.indexOf(LINE_ATTRIBUTE);
+    assertEquals(AdditionalFields.LONG, fields.getType(line));
+    assertEquals(42, fields.getLong(line));
+
+    // Unknown line is omitted rather than sent as '?' string.
+    fields = locating.makeMessage(null, eventAt(LocationInfo.NA)).getAdditionalFields();
+    assertEquals(-1, fields.indexOf(LINE_ATTRIBUTE));
+    assertTrue(fields.indexOf(FILE_ATTRIBUTE) >= 0);
+  }
+}
@@ -0,0 +1,67 @@
+package org.graylog2.gelf4j.transformers;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.jsoniter.output.JsonStream;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.graylog2.gelf4j.appenders.FieldFilter;
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.graylog2.gelf4j.message.Payload;
+import org.graylog2.gelf4j.utils.Validations;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Log4j2ContextDataWriter} streaming of context data.
+ */
+public class Log4j2ContextDataWriterTest {
+  private static final String EXPECTED =
+      "{\"version\":\"1.1\",\"host\":\"localhost\",\"short_message\":\"message\","
+      + "\"_thread\":\"main\",\"_attempt\":3,\"_ratio\":0.5,\"_user\":\"john\"}";
+
+  private Payload payload;
+  private SortedArrayStringMap contextData;
+
+  @Before
+  public void init() {
+    registerEncoders();
+    payload = payload("message");
+    payload.addAdditionalField("thread", "main");
+    contextData = new SortedArrayStringMap();
+    contextData.putValue("user", "john");
+    contextData.putValue("attempt", 3);
+    contextData.putValue("ratio", 0.5d);
+    // Explicit field takes precedence over context data.
+    contextData.putValue("thread", "other");
+    payload.setContextData(new Log4j2ContextDataWriter(FieldFilter.ALLOW_ALL), contextData);
+  }
+
+  @Test
+  public void streamContextData() {
+    assertTrue(Validations.checkValid(payload));
+    assertEquals(EXPECTED, JsonStream.serialize(payload));
+    assertEquals(1, payload.getAdditionalFields().size());
+  }
+
+  @Test
+  public void copyMaterializesContextData() {
+    Payload copy = new Payload();
+    copy.copyFrom(payload);
+    contextData.clear();
+    AdditionalFields fields = copy.getAdditionalFields();
+    assertEquals(4, fields.size());
+    assertEquals(AdditionalFields.LONG, fields.getType(fields.indexOf("attempt")));
+    assertEquals("main", fields.getString(fields.indexOf("thread")).toString());
+    assertEquals(EXPECTED, JsonStream.serialize(copy));
+  }
+
+  @Test
+  public void rejectInvalidContextName() {
+    contextData.putValue("bad name", "value");
+    assertFalse(Validations.checkValid(payload));
+  }
+}
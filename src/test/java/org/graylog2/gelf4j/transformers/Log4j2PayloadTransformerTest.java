@@ -0,0 +1,53 @@
+package org.graylog2.gelf4j.transformers;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.MapMessage;
+import org.graylog2.gelf4j.appenders.LoggingConfiguration;
+import org.graylog2.gelf4j.appenders.TestConfigurations;
+import org.graylog2.gelf4j.message.AdditionalFields;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Log4j2PayloadTransformer} map message fields.
+ */
+public class Log4j2PayloadTransformerTest {
+
+  private static LogEvent mapEvent() {
+    MapMessage message = new MapMessage();
+    message.put("user", "john");
+    message.put("attempt", "3");
+    return Log4jLogEvent.newBuilder().setLoggerName("org.example.Service").setLevel(Level.INFO)
+        .setMessage(message).build();
+  }
+
+  private static AdditionalFields fields(LoggingConfiguration configuration) {
+    return new Log4j2PayloadTransformer(configuration).makeMessage(null, mapEvent(), false)
+        .getAdditionalFields();
+  }
+
+  @Test
+  public void mapValuesAreNotLoggedByDefault() {
+    AdditionalFields fields = fields(TestConfigurations.defaults());
+    assertEquals(-1, fields.indexOf("user"));
+    assertEquals(-1, fields.indexOf("attempt"));
+  }
+
+  @Test
+  public void mapValuesAsStrings() {
+    AdditionalFields fields = fields(TestConfigurations.withMapValues(false));
+    assertEquals("john", fields.getString(fields.indexOf("user")).toString());
+    assertEquals(AdditionalFields.STRING, fields.getType(fields.indexOf("attempt")));
+  }
+
+  @Test
+  public void mapValuesWithInferredTypes() {
+    AdditionalFields fields = fields(TestConfigurations.withMapValues(true));
+    int attempt = fields.indexOf("attempt");
+    assertEquals(AdditionalFields.LONG, fields.getType(attempt));
+    assertEquals(3, fields.getLong(attempt));
+  }
+}
@@ -0,0 +1,83 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.zip.Deflater;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AdaptiveCompression} decisions.
+ *
+ * @author Andrey Minov
+ */
+public class AdaptiveCompressionTest {
+
+  private AdaptiveCompression compression;
+
+  @Before
+  public void init() {
+    compression = new AdaptiveCompression(5);
+  }
+
+  @Test
+  public void testSmallMessagesSkipped() {
+    assertEquals(-1, compression.decide(AdaptiveCompression.MIN_SIZE - 1));
+  }
+
+  @Test
+  public void testCountedWhenSent() {
+    int size = 2000;
+    assertEquals(5, compression.decide(size));
+    compression.record(size, 2100, 1000);
+    // Compressed bytes are not smaller, so message is sent as is.
+    compression.sent(size, size);
+    assertEquals(0, compression.getCompressed());
+    assertEquals(1, compression.getSkipped());
+    compression.sent(size, 400);
+    assertEquals(1, compression.getCompressed());
+  }
+
+  @Test
+  public void testIncompressibleBucketSkipped() {
+    int size = 2000;
+    assertEquals(5, compression.decide(size));
+    compression.record(size, 1990, 1000);
+    for (int i = 1; i < AdaptiveCompression.SAMPLE_INTERVAL; i++) {
+      assertEquals(-1, compression.decide(size));
+    }
+    // Bucket is sampled again to notice change of the payloads.
+    assertEquals(5, compression.decide(size));
+  }
+
+  @Test
+  public void testCompressibleBucketCompressed() {
+    int size = 2000;
+    compression.decide(size);
+    compression.record(size, 400, 1000);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(5, compression.decide(size));
+    }
+    assertEquals(0.2, compression.getRatio(AdaptiveCompression.bucketOf(size)), 0.001);
+  }
+
+  @Test
+  public void testChunkedAlwaysCompressed() {
+    int size = 20000;
+    compression.decide(size);
+    compression.record(size, 19000, 1000);
+    assertEquals(5, compression.decide(size));
+    compression.record(size, 8000, 1000);
+    compression.sent(size, 8000);
+    assertEquals(1, compression.getChunksAvoided());
+  }
+
+  @Test
+  public void testExpensiveBucketUsesFastLevel() {
+    int size = 2000;
+    compression.decide(size);
+    compression.record(size, 400, size * 100L);
+    assertEquals(Deflater.BEST_SPEED, compression.decide(size));
+  }
+}
@@ -0,0 +1,76 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FanOutTransmitter}.
+ */
+public class FanOutTransmitterTest {
+
+  @Test
+  public void failingSinkDoesNotStopOthers() throws Exception {
+    IOException first = new IOException("first");
+    IOException second = new IOException("second");
+    RecordingSink failing = new RecordingSink(first, 1);
+    RecordingSink healthy = new RecordingSink(null, 2);
+    RecordingSink broken = new RecordingSink(second, 3);
+    FanOutTransmitter transmitter =
+        new FanOutTransmitter(Arrays.asList(failing, healthy, broken));
+    Payload payload = payload("message");
+    try {
+      transmitter.transmit(payload);
+      fail("Failure of sink must be reported");
+    } catch (IOException e) {
+      assertSame(first, e);
+      assertSame(second, e.getSuppressed()[0]);
+    }
+    assertEquals(1, healthy.received.size());
+    assertSame(payload, healthy.received.get(0));
+    assertEquals(6, transmitter.shutdown(1, TimeUnit.SECONDS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectNoSinks() {
+    new FanOutTransmitter(new ArrayList<PayloadTransmitter>());
+  }
+
+  private static class RecordingSink implements PayloadTransmitter {
+    private final IOException failure;
+    private final long undelivered;
+    private final List<Payload> received = new ArrayList<>();
+
+    RecordingSink(IOException failure, long undelivered) {
+      this.failure = failure;
+      this.undelivered = undelivered;
+    }
+
+    @Override
+    public void transmit(Payload payload) throws Exception {
+      if (failure != null) {
+        throw failure;
+      }
+      received.add(payload);
+    }
+
+    @Override
+    public long shutdown(long timeout, TimeUnit unit) {
+      return undelivered;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
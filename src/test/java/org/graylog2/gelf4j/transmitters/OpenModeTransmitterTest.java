@@ -0,0 +1,89 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog2.gelf4j.concurrent.BackgroundThreadFactory;
+import org.graylog2.gelf4j.concurrent.ThreadMode;
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OpenModeTransmitter}.
+ */
+public class OpenModeTransmitterTest {
+
+  private static OpenModeTransmitter transmitter(OpenMode mode, int bufferSize,
+                                                 SlowOpenSink sink) {
+    return new OpenModeTransmitter(mode, bufferSize, sink,
+        new BackgroundThreadFactory("test-connect", ThreadMode.PLATFORM));
+  }
+
+  @Test
+  public void asyncBuffersUntilOpen() throws Exception {
+    SlowOpenSink sink = new SlowOpenSink();
+    OpenModeTransmitter transmitter = transmitter(OpenMode.EAGER_ASYNC, 2, sink);
+    transmitter.open();
+    for (int i = 0; i < 3; i++) {
+      transmitter.transmit(payload("m" + i));
+    }
+    assertEquals(0, sink.received.size());
+    assertEquals(2, transmitter.getBuffered());
+    assertEquals(1, transmitter.getDropped());
+
+    sink.opened.countDown();
+    assertEquals(0, transmitter.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(2, sink.received.size());
+    assertEquals("m0", sink.received.get(0));
+    assertEquals("m1", sink.received.get(1));
+  }
+
+  @Test
+  public void lazyDoesNotOpen() throws Exception {
+    SlowOpenSink sink = new SlowOpenSink();
+    OpenModeTransmitter transmitter = transmitter(OpenMode.LAZY, 2, sink);
+    transmitter.open();
+    transmitter.transmit(payload("m0"));
+    assertEquals(0, sink.opens);
+    assertEquals(1, sink.received.size());
+  }
+
+  @Test
+  public void parse() {
+    assertEquals(OpenMode.EAGER_BLOCKING, OpenMode.parse(null));
+    assertEquals(OpenMode.EAGER_ASYNC, OpenMode.parse("eager-async"));
+    assertEquals(OpenMode.LAZY, OpenMode.parse("LAZY"));
+  }
+
+  private static class SlowOpenSink implements PayloadTransmitter {
+    private final CountDownLatch opened = new CountDownLatch(1);
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private volatile int opens;
+
+    @Override
+    public void open() throws IOException {
+      opens++;
+      try {
+        assertTrue(opened.await(5, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    @Override
+    public void transmit(Payload payload) {
+      received.add(payload.getShortMessage().toString());
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
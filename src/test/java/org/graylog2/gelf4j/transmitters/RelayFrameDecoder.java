@@ -0,0 +1,102 @@
+package org.graylog2.gelf4j.transmitters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reference decoder of {@link Framing#VARINT} frames as relay reads them from the stream.
+ * Every frame is read by its length prefix, no scanning for delimiters is needed.
+ *
+ * @author Andrey Minov
+ */
+class RelayFrameDecoder {
+  private final DataInputStream in;
+  private final Deque<String> pending = new ArrayDeque<>();
+  private final Inflater inflater = new Inflater();
+
+  RelayFrameDecoder(InputStream in) {
+    this.in = new DataInputStream(in);
+  }
+
+  private static int readVarint(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int next = in.readUnsignedByte();
+      value |= (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  private static int readVarint(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int next = buffer.get() & 0xFF;
+      value |= (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Read next message from the stream.
+   *
+   * @return the message or null in case stream is closed.
+   * @throws IOException when frame is malformed.
+   */
+  String next() throws IOException {
+    while (pending.isEmpty()) {
+      int flags = in.read();
+      if (flags < 0) {
+        return null;
+      }
+      byte[] body = new byte[readVarint(in)];
+      in.readFully(body);
+      if ((flags & Framing.FLAG_DEFLATE) != 0) {
+        body = inflate(body);
+      }
+      if ((flags & Framing.FLAG_BATCH) != 0) {
+        ByteBuffer batch = ByteBuffer.wrap(body);
+        while (batch.hasRemaining()) {
+          int length = readVarint(batch);
+          pending.add(new String(body, batch.position(), length, StandardCharsets.UTF_8));
+          batch.position(batch.position() + length);
+        }
+      } else {
+        pending.add(new String(body, StandardCharsets.UTF_8));
+      }
+    }
+    return pending.poll();
+  }
+
+  private byte[] inflate(byte[] data) throws IOException {
+    inflater.reset();
+    inflater.setInput(data);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+    byte[] chunk = new byte[4096];
+    try {
+      while (!inflater.finished()) {
+        int size = inflater.inflate(chunk);
+        if (size == 0 && inflater.needsInput()) {
+          throw new IOException("Truncated compressed frame");
+        }
+        out.write(chunk, 0, size);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,75 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.graylog2.gelf4j.format.PayloadFormatter;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SocketTelemetry} and send buffer auto-tuning.
+ */
+public class SocketTelemetryTest {
+
+  @Test
+  public void growWithinBounds() {
+    SocketTelemetry telemetry = new SocketTelemetry("tcp://localhost:1", 16384, 50000);
+    assertEquals(32768, telemetry.grow());
+    assertEquals(50000, telemetry.grow());
+    assertEquals(0, telemetry.grow());
+    assertEquals(2, telemetry.getGrowths());
+    assertEquals(50000, telemetry.getRequestedSendBufferSize());
+  }
+
+  @Test
+  public void growFromEffectiveSize() {
+    SocketTelemetry telemetry = new SocketTelemetry("udp://localhost:1", -1, 1 << 20);
+    telemetry.connected(212992);
+    assertEquals(425984, telemetry.grow());
+  }
+
+  @Test
+  public void noTuningByDefault() {
+    SocketTelemetry telemetry = new SocketTelemetry("tcp://localhost:1", 8192, 0);
+    assertEquals(0, telemetry.grow());
+    assertEquals(8192, telemetry.getRequestedSendBufferSize());
+  }
+
+  @Test
+  public void stalledTcpGrowsBuffer() throws Exception {
+    byte[] frame = new byte[64 * 1024];
+    PayloadFormatter formatter = payload -> frame;
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("localhost", 0));
+      int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+      TcpTransmitter transmitter = new TcpTransmitter("localhost", port, 200, false, 8192,
+          Framing.NULL_DELIMITED, FrameCompression.NONE, 1, 0, formatter, 1 << 20);
+      transmitter.open();
+      // Server accepts but never reads, so writes stall once socket buffers are full.
+      try (SocketChannel ignored = server.accept()) {
+        for (int i = 0; i < 1000; i++) {
+          transmitter.transmit(payload("message"));
+        }
+        fail("Writes to server which does not read must time out");
+      } catch (SocketTimeoutException e) {
+        // Expected.
+      } finally {
+        transmitter.close();
+      }
+      SocketTelemetry telemetry = transmitter.getTelemetry();
+      assertEquals(1, telemetry.getConnects());
+      assertTrue(telemetry.toString(), telemetry.getStalls() > 0);
+      assertTrue(telemetry.toString(), telemetry.getStallNanos() > 0);
+      assertTrue(telemetry.toString(), telemetry.getPartialWrites() > 0);
+      assertTrue(telemetry.toString(), telemetry.getGrowths() > 0);
+      assertTrue(telemetry.toString(), telemetry.getSendBufferSize() > 8192);
+    }
+  }
+}
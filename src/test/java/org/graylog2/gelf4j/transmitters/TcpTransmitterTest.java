@@ -1,8 +1,11 @@
 package org.graylog2.gelf4j.transmitters;
 
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -70,6 +73,19 @@ public class TcpTransmitterTest {
     verify(socketChannel.socket(), times(2)).connect(address, 100);
   }
 
+  @Test
+  public void testTransmitAfterClose() throws Exception {
+    transmitter.close();
+    // Deflater is ended on close, so next frame fails fast without new connection.
+    try {
+      transmitter.transmit(new Payload());
+      fail("Closed transmitter must not send");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    verify(socketChannel.socket(), never()).connect(any(SocketAddress.class), anyInt());
+  }
+
   public static class MockSelectorProvider extends SelectorProvider {
     @Override
     public DatagramChannel openDatagramChannel() throws IOException {
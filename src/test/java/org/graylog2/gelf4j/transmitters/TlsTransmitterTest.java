@@ -0,0 +1,203 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TLS payload transmitter test against local TLS server with self-signed certificate.
+ *
+ * @author Andrey Minov
+ */
+public class TlsTransmitterTest {
+  private static final String PASSWORD = "changeit";
+
+  private final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+  private SSLServerSocket serverSocket;
+  private TlsTransmitter transmitter;
+
+  @Before
+  public void init() throws Exception {
+    registerEncoders();
+
+    String keyStore = getClass().getResource("/gelf-test.jks").getPath();
+    SSLContext serverContext = SslContextFactory.create(keyStore, PASSWORD, null, null);
+    serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory()
+        .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(this::accept, "tls-test-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    SSLContext clientContext = SslContextFactory.create(null, null, keyStore, PASSWORD);
+    transmitter = new TlsTransmitter("localhost", serverSocket.getLocalPort(), 2000, -1,
+        clientContext, true);
+  }
+
+  @After
+  public void destroy() throws IOException {
+    transmitter.close();
+    serverSocket.close();
+  }
+
+  @Test
+  public void testBatchedFrames() throws Exception {
+    transmitter.open();
+    for (int i = 0; i < 3; i++) {
+      transmitter.transmit(payload("message-" + i));
+    }
+    transmitter.flush();
+
+    for (int i = 0; i < 3; i++) {
+      String frame = frames.poll(5, TimeUnit.SECONDS);
+      assertNotNull(frame);
+      assertTrue(frame.contains("\"short_message\":\"message-" + i + "\""));
+    }
+  }
+
+  @Test
+  public void testReconnect() throws Exception {
+    transmitter.transmit(payload("first"));
+    transmitter.flush();
+    transmitter.close();
+    transmitter.transmit(payload("second"));
+    transmitter.flush();
+
+    assertTrue(frames.poll(5, TimeUnit.SECONDS).contains("first"));
+    assertTrue(frames.poll(5, TimeUnit.SECONDS).contains("second"));
+    assertEquals(0, frames.size());
+  }
+
+  @Test
+  public void testBufferedFramesLostOnFailure() throws Exception {
+    transmitter.open();
+    for (int i = 0; i < 3; i++) {
+      transmitter.transmit(payload("message-" + i));
+    }
+    // Break the connection under buffered messages.
+    Field channel = TlsTransmitter.class.getDeclaredField("channel");
+    channel.setAccessible(true);
+    ((SocketChannel) channel.get(transmitter)).close();
+    try {
+      transmitter.flush();
+      fail("Flush to closed channel must fail");
+    } catch (IOException e) {
+      assertEquals(1, e.getSuppressed().length);
+      assertTrue(e.getSuppressed()[0].getMessage().startsWith("3 buffered messages"));
+    }
+    assertEquals(3, transmitter.getUndelivered());
+
+    transmitter.transmit(payload("next"));
+    assertEquals(0, transmitter.shutdown(1, TimeUnit.SECONDS));
+    assertTrue(frames.poll(5, TimeUnit.SECONDS).contains("next"));
+    assertEquals(3, transmitter.getUndelivered());
+  }
+
+  @Test
+  public void testShutdownStopsAtTimeout() throws Exception {
+    String keyStore = getClass().getResource("/gelf-test.jks").getPath();
+    SSLContext serverContext = SslContextFactory.create(keyStore, PASSWORD, null, null);
+    CountDownLatch done = new CountDownLatch(1);
+    try (SSLServerSocket stalledServer = (SSLServerSocket) serverContext.getServerSocketFactory()
+        .createServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      // Server completes handshake, but never reads after.
+      Thread acceptor = new Thread(() -> {
+        try (SSLSocket socket = (SSLSocket) stalledServer.accept()) {
+          socket.startHandshake();
+          done.await();
+        } catch (IOException | InterruptedException e) {
+          // Test is finished.
+        }
+      }, "tls-stalled-server");
+      acceptor.setDaemon(true);
+      acceptor.start();
+
+      SSLContext clientContext = SslContextFactory.create(null, null, keyStore, PASSWORD);
+      TlsTransmitter stalled = new TlsTransmitter("localhost", stalledServer.getLocalPort(), 10000,
+          4096, clientContext, true);
+      stalled.open();
+      // Fill socket buffers, so buffered messages cannot be written. Kernel moves data to the
+      // server side buffer in background and accepts small writes when large one is refused, so
+      // buffers are full when not even a byte is written for a while.
+      Field channel = TlsTransmitter.class.getDeclaredField("channel");
+      channel.setAccessible(true);
+      SocketChannel socket = (SocketChannel) channel.get(stalled);
+      for (int idle = 0; idle < 5; idle++) {
+        for (int size = 64 * 1024; size > 0; size /= 4) {
+          ByteBuffer filler = ByteBuffer.allocate(size);
+          while (socket.write(filler) > 0) {
+            filler.clear();
+            idle = 0;
+          }
+        }
+        Thread.sleep(50);
+      }
+      // Messages are larger than space kernel might free later, but fit into plain buffer.
+      StringBuilder message = new StringBuilder();
+      for (int i = 0; i < 4000; i++) {
+        message.append('m');
+      }
+      for (int i = 0; i < 3; i++) {
+        stalled.transmit(payload(message));
+      }
+      long start = System.nanoTime();
+      assertEquals(3, stalled.shutdown(200, TimeUnit.MILLISECONDS));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+      assertEquals(3, stalled.getUndelivered());
+    } finally {
+      done.countDown();
+    }
+  }
+
+  private void accept() {
+    try {
+      while (!serverSocket.isClosed()) {
+        Socket socket = serverSocket.accept();
+        Thread reader = new Thread(() -> read(socket), "tls-test-reader");
+        reader.setDaemon(true);
+        reader.start();
+      }
+    } catch (IOException e) {
+      // Server is closed.
+    }
+  }
+
+  private void read(Socket socket) {
+    try (InputStream in = socket.getInputStream()) {
+      ByteArrayOutputStream frame = new ByteArrayOutputStream();
+      int value;
+      while ((value = in.read()) >= 0) {
+        if (value == 0) {
+          frames.add(frame.toString("UTF-8"));
+          frame.reset();
+        } else {
+          frame.write(value);
+        }
+      }
+    } catch (IOException e) {
+      // Connection is closed.
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TransmitterRegistry} reference counting.
+ */
+public class TransmitterRegistryTest {
+  private static final String KEY = "tcp://localhost:12201";
+
+  private final TransmitterRegistry registry = new TransmitterRegistry();
+  private final List<CountingTransmitter> created = new ArrayList<>();
+
+  private PayloadTransmitter acquire(String settings) {
+    return registry.acquire(KEY, settings, () -> {
+      CountingTransmitter transmitter = new CountingTransmitter();
+      created.add(transmitter);
+      return transmitter;
+    });
+  }
+
+  @Test
+  public void reconfiguredAppenderAdoptsTransmitter() throws Exception {
+    PayloadTransmitter old = acquire("a");
+    old.open();
+    PayloadTransmitter current = acquire("a");
+    current.open();
+    assertEquals(1, created.size());
+    assertEquals(1, created.get(0).opened);
+    assertEquals(2, registry.getReferences(KEY));
+
+    assertEquals(0, old.shutdown(1, TimeUnit.SECONDS));
+    // Repeated release of the same lease is ignored.
+    old.close();
+    assertFalse(created.get(0).closed);
+    current.transmit(new Payload());
+    assertEquals(1, created.get(0).transmitted);
+
+    current.close();
+    assertTrue(created.get(0).closed);
+    assertEquals(0, registry.getReferences(KEY));
+  }
+
+  @Test
+  public void changedSettingsCreateNewTransmitter() throws Exception {
+    PayloadTransmitter old = acquire("a");
+    PayloadTransmitter current = acquire("b");
+    assertEquals(2, created.size());
+    assertEquals(1, registry.getReferences(KEY));
+
+    old.close();
+    assertTrue(created.get(0).closed);
+    assertFalse(created.get(1).closed);
+    assertEquals(1, registry.getReferences(KEY));
+    current.close();
+    assertEquals(0, registry.getReferences(KEY));
+  }
+
+  @Test
+  public void invalidSettingsAreNotRegistered() {
+    assertNull(registry.acquire(KEY, "a", () -> null));
+    assertEquals(0, registry.getReferences(KEY));
+  }
+
+  private static class CountingTransmitter implements PayloadTransmitter {
+    private int opened;
+    private int transmitted;
+    private boolean closed;
+
+    @Override
+    public void open() {
+      opened++;
+    }
+
+    @Override
+    public void transmit(Payload payload) {
+      transmitted++;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
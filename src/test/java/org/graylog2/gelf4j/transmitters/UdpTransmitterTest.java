@@ -0,0 +1,88 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+import com.jsoniter.output.JsonStream;
+import org.graylog2.gelf4j.message.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link UdpTransmitter} chunking.
+ */
+public class UdpTransmitterTest {
+  private DatagramSocket server;
+  private UdpTransmitter transmitter;
+
+  @Before
+  public void init() throws Exception {
+    registerEncoders();
+    server = new DatagramSocket(0);
+    server.setSoTimeout(2000);
+    server.setReceiveBufferSize(1 << 20);
+    transmitter = new UdpTransmitter("localhost", server.getLocalPort(), -1, false, 5, 8192);
+    transmitter.open();
+  }
+
+  @After
+  public void close() throws Exception {
+    transmitter.close();
+    server.close();
+  }
+
+  @Test
+  public void sendExactNumberOfChunks() throws Exception {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      message.append('m');
+    }
+    Payload payload = payload(message);
+    transmitter.transmit(payload);
+
+    byte[] data = new byte[8192];
+    int received = 0;
+    int total = 0;
+    for (int i = 0; i < 3; i++) {
+      DatagramPacket packet = new DatagramPacket(data, data.length);
+      server.receive(packet);
+      assertEquals(0x1e, data[0]);
+      assertEquals(0x0f, data[1]);
+      assertEquals(i, data[10]);
+      total = data[11];
+      received += packet.getLength() - 12;
+    }
+    assertEquals(3, total);
+    assertEquals(JsonStream.serialize(payload).length(), received);
+  }
+
+  @Test
+  public void compressionCountedWhenSent() throws Exception {
+    UdpTransmitter adaptive =
+        new UdpTransmitter("localhost", server.getLocalPort(), -1, true, 5, 8192, true, 0, 0);
+    adaptive.open();
+    try {
+      adaptive.transmit(payload("short"));
+      StringBuilder message = new StringBuilder();
+      for (int i = 0; i < 2000; i++) {
+        message.append('m');
+      }
+      adaptive.transmit(payload(message));
+      DatagramPacket packet = new DatagramPacket(new byte[8192], 8192);
+      server.receive(packet);
+      assertEquals('{', packet.getData()[0]);
+      server.receive(packet);
+      assertTrue(packet.getLength() < 2000);
+      assertEquals(1, adaptive.getAdaptiveCompression().getCompressed());
+      assertEquals(1, adaptive.getAdaptiveCompression().getSkipped());
+    } finally {
+      adaptive.close();
+    }
+  }
+}
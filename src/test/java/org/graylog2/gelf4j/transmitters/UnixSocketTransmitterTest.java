@@ -0,0 +1,158 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link UnixSocketTransmitter} framing against local relay, listening on TCP loopback
+ * for JVM without Unix domain sockets and on socket path for JDK 16+.
+ */
+public class UnixSocketTransmitterTest {
+
+  private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+  private ServerSocket relay;
+  private ServerSocketChannel unixRelay;
+  private Path socketDir;
+  private UnixSocketTransmitter transmitter;
+
+  @Before
+  public void init() {
+    registerEncoders();
+  }
+
+  @After
+  public void destroy() throws IOException {
+    if (transmitter != null) {
+      transmitter.close();
+    }
+    if (relay != null) {
+      relay.close();
+    }
+    if (unixRelay != null) {
+      unixRelay.close();
+    }
+    if (socketDir != null) {
+      Files.deleteIfExists(socketDir.resolve("relay.sock"));
+      Files.deleteIfExists(socketDir);
+    }
+  }
+
+  @Test
+  public void testFallbackNullDelimited() throws Exception {
+    assumeFalse(UnixSocketTransmitter.isUnixDomainSupported());
+    startTcpRelay(Framing.NULL_DELIMITED);
+    transmitter = new UnixSocketTransmitter("/nonexistent/relay.sock", "localhost",
+        relay.getLocalPort(), 1000, Framing.NULL_DELIMITED);
+    sendAndAssert(3);
+  }
+
+  @Test
+  public void testFallbackLengthPrefixed() throws Exception {
+    assumeFalse(UnixSocketTransmitter.isUnixDomainSupported());
+    startTcpRelay(Framing.LENGTH_PREFIXED);
+    transmitter = new UnixSocketTransmitter("/nonexistent/relay.sock", "localhost",
+        relay.getLocalPort(), 1000, Framing.LENGTH_PREFIXED);
+    sendAndAssert(3);
+  }
+
+  @Test
+  public void testUnixSocketPath() throws Exception {
+    assumeTrue(UnixSocketTransmitter.isUnixDomainSupported());
+    socketDir = Files.createTempDirectory("gelf4j");
+    String path = socketDir.resolve("relay.sock").toString();
+    // Library and tests are compiled for Java 8, so JDK 16 API is called by reflection.
+    ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+    SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+        .getMethod("of", String.class).invoke(null, path);
+    unixRelay = (ServerSocketChannel) ServerSocketChannel.class
+        .getMethod("open", ProtocolFamily.class).invoke(null, unix);
+    unixRelay.bind(address);
+    Thread acceptor = new Thread(() -> {
+      try (SocketChannel client = unixRelay.accept()) {
+        read(Channels.newInputStream(client), Framing.LENGTH_PREFIXED);
+      } catch (IOException e) {
+        // Relay is closed.
+      }
+    }, "unix-relay");
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    transmitter = new UnixSocketTransmitter(path, "localhost", 1, 1000, Framing.LENGTH_PREFIXED);
+    sendAndAssert(3);
+  }
+
+  private void startTcpRelay(Framing framing) throws IOException {
+    relay = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(() -> {
+      try (Socket client = relay.accept()) {
+        read(client.getInputStream(), framing);
+      } catch (IOException e) {
+        // Relay is closed.
+      }
+    }, "relay");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  private void read(InputStream stream, Framing framing) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (framing == Framing.LENGTH_PREFIXED) {
+      while (true) {
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        messages.add(new String(body, StandardCharsets.UTF_8));
+      }
+    }
+    ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    int next;
+    while ((next = in.read()) >= 0) {
+      if (next == 0) {
+        messages.add(new String(frame.toByteArray(), StandardCharsets.UTF_8));
+        frame.reset();
+      } else {
+        frame.write(next);
+      }
+    }
+  }
+
+  private void sendAndAssert(int count) throws Exception {
+    transmitter.open();
+    for (int i = 0; i < count; i++) {
+      transmitter.transmit(payload("message " + i));
+    }
+    for (int i = 0; i < count; i++) {
+      String message = messages.poll(5, TimeUnit.SECONDS);
+      assertTrue("Message " + i + " is not received", message != null);
+      assertTrue(message, message.contains("\"short_message\":\"message " + i + "\""));
+    }
+    assertEquals(0, messages.size());
+  }
+}
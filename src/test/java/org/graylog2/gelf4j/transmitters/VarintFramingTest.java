@@ -0,0 +1,118 @@
+package org.graylog2.gelf4j.transmitters;
+
+import static org.graylog2.gelf4j.appenders.TestPayloads.payload;
+import static org.graylog2.gelf4j.appenders.TestPayloads.registerEncoders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog2.gelf4j.format.PayloadFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of varint framing and compression of {@link TcpTransmitter} against local relay
+ * decoding frames with {@link RelayFrameDecoder}.
+ *
+ * @author Andrey Minov
+ */
+public class VarintFramingTest {
+
+  private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+  private ServerSocket relay;
+  private TcpTransmitter transmitter;
+
+  @Before
+  public void init() throws IOException {
+    registerEncoders();
+
+    relay = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(this::relay, "relay");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  @After
+  public void destroy() throws IOException {
+    if (transmitter != null) {
+      transmitter.close();
+    }
+    relay.close();
+  }
+
+  @Test
+  public void testPlainFrames() throws Exception {
+    send(FrameCompression.NONE, 3);
+    assertReceived(3);
+  }
+
+  @Test
+  public void testCompressedFrames() throws Exception {
+    send(FrameCompression.FRAME, 3);
+    assertReceived(3);
+  }
+
+  @Test
+  public void testCompressedBatch() throws Exception {
+    transmitter = new TcpTransmitter("localhost", relay.getLocalPort(), 1000, true, -1,
+        Framing.VARINT, FrameCompression.BATCH, 5, 0, PayloadFormat.GELF, 0);
+    for (int i = 0; i < 3; i++) {
+      transmitter.transmit(payload("message-" + i));
+    }
+    // Batch is sent only on flush.
+    assertNull(messages.poll(200, TimeUnit.MILLISECONDS));
+    transmitter.flush();
+    assertReceived(3);
+  }
+
+  @Test
+  public void testShutdownSendsBatch() throws Exception {
+    transmitter = new TcpTransmitter("localhost", relay.getLocalPort(), 1000, true, -1,
+        Framing.VARINT, FrameCompression.BATCH, 5, 0, PayloadFormat.GELF, 0);
+    for (int i = 0; i < 3; i++) {
+      transmitter.transmit(payload("message-" + i));
+    }
+    // Relay closes connection after end of stream, so shutdown does not wait for timeout.
+    long start = System.nanoTime();
+    assertEquals(0, transmitter.shutdown(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+    assertReceived(3);
+  }
+
+  private void send(FrameCompression compression, int count) throws Exception {
+    transmitter = new TcpTransmitter("localhost", relay.getLocalPort(), 1000, true, -1,
+        Framing.VARINT, compression, 5, 0, PayloadFormat.GELF, 0);
+    for (int i = 0; i < count; i++) {
+      transmitter.transmit(payload("message-" + i));
+    }
+  }
+
+  private void assertReceived(int count) throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      String message = messages.poll(5, TimeUnit.SECONDS);
+      assertTrue(message, message.contains("\"short_message\":\"message-" + i + "\""));
+    }
+    assertEquals(0, messages.size());
+  }
+
+  private void relay() {
+    try (Socket socket = relay.accept()) {
+      RelayFrameDecoder decoder = new RelayFrameDecoder(socket.getInputStream());
+      String message;
+      while ((message = decoder.next()) != null) {
+        messages.add(message);
+      }
+    } catch (IOException e) {
+      // Relay is closed.
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package org.graylog2.gelf4j.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Platform} caller lookup.
+ */
+public class PlatformTest {
+
+  @Test
+  public void findFrameAfterLogger() {
+    StackTraceElement caller = Logger.log();
+    assertEquals(PlatformTest.class.getName(), caller.getClassName());
+    assertEquals("findFrameAfterLogger", caller.getMethodName());
+    assertEquals("PlatformTest.java", caller.getFileName());
+  }
+
+  @Test
+  public void loggerIsNotOnStack() {
+    assertNull(Platform.findCaller("org.example.MissingLogger"));
+  }
+
+  private static class Logger {
+    static StackTraceElement log() {
+      return write();
+    }
+
+    // Nested logger frames are skipped too.
+    private static StackTraceElement write() {
+      return Platform.findCaller(Logger.class.getName());
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package org.graylog2.gelf4j.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for Java 9+ version of {@link Platform} from <code>META-INF/versions/9</code>.
+ * <p/>
+ * Tests run against class directory which is not a multi-release JAR, so baseline class is loaded
+ * by default. Versioned class is loaded here explicitly by own class loader. It is compiled only on
+ * JDK 9+, so tests are skipped on Java 8.
+ */
+public class VersionedPlatformTest {
+  private static final String VERSIONED_CLASS =
+      "META-INF/versions/9/" + Platform.class.getName().replace('.', '/') + ".class";
+
+  private Class<?> platform;
+
+  private static boolean isJava8() {
+    return System.getProperty("java.specification.version").startsWith("1.");
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  @Before
+  public void init() throws Exception {
+    assumeFalse(isJava8());
+    byte[] bytes;
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(VERSIONED_CLASS)) {
+      assertNotNull("Versioned class must be compiled on JDK 9+", in);
+      bytes = read(in);
+    }
+    platform = new ClassLoader(getClass().getClassLoader()) {
+      {
+        defineClass(Platform.class.getName(), bytes, 0, bytes.length);
+      }
+    }.loadClass(Platform.class.getName());
+  }
+
+  @Test
+  public void versionedClassIsLoaded() throws Exception {
+    assertEquals(9, platform.getMethod("version").invoke(null));
+  }
+
+  @Test
+  public void getAcquire() throws Exception {
+    AtomicReference<String> reference = new AtomicReference<>("value");
+    assertEquals("value", platform.getMethod("getAcquire", AtomicReference.class)
+        .invoke(null, reference));
+  }
+
+  @Test
+  public void findFrameAfterLogger() throws Exception {
+    StackTraceElement caller = new Logger(platform).log();
+    assertEquals(VersionedPlatformTest.class.getName(), caller.getClassName());
+    assertEquals("findFrameAfterLogger", caller.getMethodName());
+    assertEquals("VersionedPlatformTest.java", caller.getFileName());
+  }
+
+  @Test
+  public void loggerIsNotOnStack() throws Exception {
+    assertNull(platform.getMethod("findCaller", String.class)
+        .invoke(null, "org.example.MissingLogger"));
+  }
+
+  private static class Logger {
+    private final Method findCaller;
+
+    Logger(Class<?> platform) throws NoSuchMethodException {
+      this.findCaller = platform.getMethod("findCaller", String.class);
+    }
+
+    StackTraceElement log() throws Exception {
+      return write();
+    }
+
+    // Reflection frames are hidden by stack walker, nested logger frames are skipped.
+    private StackTraceElement write() throws Exception {
+      return (StackTraceElement) findCaller.invoke(null, Logger.class.getName());
+    }
+  }
+}